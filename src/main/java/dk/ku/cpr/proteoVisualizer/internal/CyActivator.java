@@ -31,6 +31,11 @@ import dk.ku.cpr.proteoVisualizer.internal.model.StringSpecies;
 import dk.ku.cpr.proteoVisualizer.internal.tasks.AboutTaskFactory;
 import dk.ku.cpr.proteoVisualizer.internal.tasks.ChangeGroupReprTaskFactory;
 import dk.ku.cpr.proteoVisualizer.internal.tasks.CollapseGroupsTaskFactory;
+import dk.ku.cpr.proteoVisualizer.internal.tasks.ExtendStringNetworkTaskFactory;
+import dk.ku.cpr.proteoVisualizer.internal.tasks.ImportProteinGroupsTaskFactory;
+import dk.ku.cpr.proteoVisualizer.internal.tasks.ProteinGroupOverlapTaskFactory;
+import dk.ku.cpr.proteoVisualizer.internal.tasks.BuildOfflineIndexTaskFactory;
+import dk.ku.cpr.proteoVisualizer.internal.tasks.RethresholdNetworkTaskFactory;
 import dk.ku.cpr.proteoVisualizer.internal.tasks.RetrieveStringNetworkTaskFactory;
 import dk.ku.cpr.proteoVisualizer.internal.tasks.ShowRetrieveWindowTaskFactory;
 
@@ -38,6 +43,8 @@ import dk.ku.cpr.proteoVisualizer.internal.tasks.ShowRetrieveWindowTaskFactory;
 public class CyActivator extends AbstractCyActivator {
 	//String JSON_EXAMPLE = "{\"SUID\":1234}";
 
+	private AppManager manager;
+
 	public CyActivator() {
 		super();
 	}
@@ -52,15 +59,18 @@ public class CyActivator extends AbstractCyActivator {
 		// Get a handle on the CyServiceRegistrar
 		CyServiceRegistrar registrar = getService(bc, CyServiceRegistrar.class);
 
-		AppManager manager = new AppManager(registrar);
+		manager = new AppManager(registrar);
 		manager.setGroupSettings();
 
 		// Get our version number
 		Version v = bc.getBundle().getVersion();
 		String version = v.toString(); // The full version
 
-		// load species AND registering the search task factory
-		StringSpecies.loadSpecies(manager);
+		// load species from the last snapshot AND register the search task factory right away,
+		// the species are then loaded from the stringApp as soon as its command is available
+		StringSpecies.loadSpeciesSnapshot(manager);
+		registerServiceListener(bc, new StringSpecies.SpeciesLoader(manager), "addTaskFactory", "removeTaskFactory",
+				TaskFactory.class);
 		
 		{
 			// Register our listeners
@@ -95,6 +105,18 @@ public class CyActivator extends AbstractCyActivator {
 			registerService(bc, retrieveFactory, TaskFactory.class, retrieveProps);
 		}
 		
+		{
+			ImportProteinGroupsTaskFactory importFactory = new ImportProteinGroupsTaskFactory(manager);
+			Properties importProps = new Properties();
+			// command properties
+			importProps.setProperty(COMMAND_NAMESPACE, SharedProperties.APP_COMMAND_NAMESPACE);
+			importProps.setProperty(COMMAND, "import");
+			importProps.setProperty(COMMAND_DESCRIPTION, "Import protein groups from a file and retrieve their STRING network.");
+			importProps.setProperty(COMMAND_LONG_DESCRIPTION, "Import the protein groups of a MaxQuant, DIA-NN or Spectronaut report, or of a file with one protein group per line, and retrieve their STRING network.");
+			importProps.setProperty(COMMAND_SUPPORTS_JSON, "true");
+			registerService(bc, importFactory, TaskFactory.class, importProps);
+		}
+		
 		{
 			CollapseGroupsTaskFactory collapseFactory = new CollapseGroupsTaskFactory(manager);
 			Properties collapseProps = new Properties();
@@ -106,6 +128,64 @@ public class CyActivator extends AbstractCyActivator {
 			registerService(bc, collapseFactory, NetworkTaskFactory.class, collapseProps);
 		}
 
+		{
+			RethresholdNetworkTaskFactory rethresholdFactory = new RethresholdNetworkTaskFactory(manager);
+			Properties rethresholdProps = new Properties();
+			// menu properties
+			rethresholdProps.setProperty(PREFERRED_MENU, SharedProperties.APP_PREFERRED_MENU);
+			rethresholdProps.setProperty(TITLE, "Change confidence cutoff");
+			rethresholdProps.setProperty(MENU_GRAVITY, "4.0");
+			rethresholdProps.setProperty(IN_MENU_BAR, "true");
+			// command properties
+			rethresholdProps.setProperty(COMMAND_NAMESPACE, SharedProperties.APP_COMMAND_NAMESPACE);
+			rethresholdProps.setProperty(COMMAND, "rethreshold");
+			rethresholdProps.setProperty(COMMAND_DESCRIPTION, "Change the confidence cutoff of a retrieved network.");
+			rethresholdProps.setProperty(COMMAND_LONG_DESCRIPTION, "Remove the edges below a higher confidence cutoff from a network retrieved with Proteo Visualizer, or add back the edges removed before for a lower one, without querying STRING again, and update the aggregated edges of the protein groups. The other networks of the same collection are not changed.");
+			rethresholdProps.setProperty(COMMAND_SUPPORTS_JSON, "true");
+			registerService(bc, rethresholdFactory, TaskFactory.class, rethresholdProps);
+		}
+
+		{
+			ProteinGroupOverlapTaskFactory overlapFactory = new ProteinGroupOverlapTaskFactory(manager);
+			Properties overlapProps = new Properties();
+			// menu properties
+			overlapProps.setProperty(PREFERRED_MENU, SharedProperties.APP_PREFERRED_MENU);
+			overlapProps.setProperty(TITLE, "Compute protein group overlap");
+			overlapProps.setProperty(MENU_GRAVITY, "5.0");
+			overlapProps.setProperty(IN_MENU_BAR, "true");
+			// command properties
+			overlapProps.setProperty(COMMAND_NAMESPACE, SharedProperties.APP_COMMAND_NAMESPACE);
+			overlapProps.setProperty(COMMAND, "overlap");
+			overlapProps.setProperty(COMMAND_DESCRIPTION, "Compute the overlap of the protein groups of a retrieved network.");
+			overlapProps.setProperty(COMMAND_LONG_DESCRIPTION, "For each pair of protein groups of a network retrieved with Proteo Visualizer that share proteins, compute the number of shared proteins, the Jaccard index and the overlap coefficient. The values are written to a new table with one row per pair, which replaces the table of the previous run on the network, and to the edges between the two groups. The protein groups are rebuilt from the nodes of the network, so the sizes of the groups only count the accessions matched to a STRING protein.");
+			overlapProps.setProperty(COMMAND_SUPPORTS_JSON, "true");
+			registerService(bc, overlapFactory, TaskFactory.class, overlapProps);
+		}
+
+		{
+			ExtendStringNetworkTaskFactory extendFactory = new ExtendStringNetworkTaskFactory(manager);
+			Properties extendProps = new Properties();
+			// command properties
+			extendProps.setProperty(COMMAND_NAMESPACE, SharedProperties.APP_COMMAND_NAMESPACE);
+			extendProps.setProperty(COMMAND, "extend");
+			extendProps.setProperty(COMMAND_DESCRIPTION, "Add new protein groups to a retrieved network.");
+			extendProps.setProperty(COMMAND_LONG_DESCRIPTION, "Add new protein groups to a network retrieved with Proteo Visualizer. STRING is only queried for the new accessions and their edges to the proteins of the network, and only the new protein groups and the groups connected to them are updated.");
+			extendProps.setProperty(COMMAND_SUPPORTS_JSON, "true");
+			registerService(bc, extendFactory, TaskFactory.class, extendProps);
+		}
+
+		{
+			BuildOfflineIndexTaskFactory offlineIndexFactory = new BuildOfflineIndexTaskFactory(manager);
+			Properties offlineIndexProps = new Properties();
+			// command properties
+			offlineIndexProps.setProperty(COMMAND_NAMESPACE, SharedProperties.APP_COMMAND_NAMESPACE);
+			offlineIndexProps.setProperty(COMMAND, "build offline index");
+			offlineIndexProps.setProperty(COMMAND_DESCRIPTION, "Index the STRING files of a species to retrieve networks offline.");
+			offlineIndexProps.setProperty(COMMAND_LONG_DESCRIPTION, "Index the protein info, aliases and detailed links files downloaded from STRING for one species into memory-mapped files, which are used to retrieve networks without access to the STRING server (option 'offline' of the retrieve and import commands). With the aliases file only, the index is used to resolve the accessions to STRING identifiers before querying STRING.");
+			offlineIndexProps.setProperty(COMMAND_SUPPORTS_JSON, "true");
+			registerService(bc, offlineIndexFactory, TaskFactory.class, offlineIndexProps);
+		}
+
 		{
 			// Register the Change repr factory as a node view task factory (appears on right click)
 			ChangeGroupReprTaskFactory changeRrpr = new ChangeGroupReprTaskFactory(manager);
@@ -158,4 +238,11 @@ public class CyActivator extends AbstractCyActivator {
 		logger.info(versionMessage);
 		System.out.println(versionMessage);
 	}
+
+	@Override
+	public void shutDown() {
+		if (manager != null)
+			manager.shutDown();
+		super.shutDown();
+	}
 }
@@ -1,21 +1,28 @@
 package dk.ku.cpr.proteoVisualizer.internal.model;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.swing.ImageIcon;
 
+import org.cytoscape.application.CyApplicationConfiguration;
 import org.cytoscape.application.CyApplicationManager;
 import org.cytoscape.application.swing.search.NetworkSearchTaskFactory;
 import org.cytoscape.command.AvailableCommands;
 import org.cytoscape.command.CommandExecutorTaskFactory;
+import org.cytoscape.event.CyEventHelper;
 import org.cytoscape.group.CyGroup;
 import org.cytoscape.group.CyGroupManager;
 import org.cytoscape.group.CyGroupSettingsManager;
@@ -27,34 +34,69 @@ import org.cytoscape.group.events.GroupCollapsedEvent;
 import org.cytoscape.group.events.GroupCollapsedListener;
 import org.cytoscape.group.events.GroupEdgesAddedEvent;
 import org.cytoscape.group.events.GroupEdgesAddedListener;
-import org.cytoscape.model.CyColumn;
 import org.cytoscape.model.CyEdge;
 import org.cytoscape.model.CyEdge.Type;
 import org.cytoscape.model.CyNetwork;
+import org.cytoscape.model.CyNetworkManager;
 import org.cytoscape.model.CyNode;
 import org.cytoscape.model.CyTable;
 import org.cytoscape.model.events.SelectedNodesAndEdgesEvent;
 import org.cytoscape.model.events.SelectedNodesAndEdgesListener;
+import org.cytoscape.model.subnetwork.CyRootNetwork;
 import org.cytoscape.model.subnetwork.CySubNetwork;
 import org.cytoscape.property.CyProperty;
 import org.cytoscape.service.util.CyServiceRegistrar;
 import org.cytoscape.view.layout.CyLayoutAlgorithm;
 import org.cytoscape.view.layout.CyLayoutAlgorithmManager;
 import org.cytoscape.view.model.CyNetworkView;
+import org.cytoscape.view.model.CyNetworkViewFactory;
+import org.cytoscape.view.model.CyNetworkViewManager;
 import org.cytoscape.view.model.View;
+import org.cytoscape.view.presentation.property.BasicVisualLexicon;
+import org.cytoscape.view.presentation.property.LineTypeVisualProperty;
+import org.cytoscape.view.presentation.property.values.LineType;
+import org.cytoscape.view.vizmap.VisualMappingFunctionFactory;
+import org.cytoscape.view.vizmap.VisualMappingManager;
+import org.cytoscape.view.vizmap.VisualStyle;
+import org.cytoscape.view.vizmap.mappings.BoundaryRangeValues;
+import org.cytoscape.view.vizmap.mappings.ContinuousMapping;
+import org.cytoscape.view.vizmap.mappings.DiscreteMapping;
 import org.cytoscape.work.SynchronousTaskManager;
 import org.cytoscape.work.TaskIterator;
 import org.cytoscape.work.TaskManager;
 import org.cytoscape.work.TaskObserver;
 import org.cytoscape.work.TunableSetter;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.FrameworkUtil;
 
+import dk.ku.cpr.proteoVisualizer.internal.tasks.ResilientStringCommandExecutor;
+import dk.ku.cpr.proteoVisualizer.internal.tasks.StringCommandExecutor;
+import dk.ku.cpr.proteoVisualizer.internal.tasks.StringCommandTaskExecutor;
 import dk.ku.cpr.proteoVisualizer.internal.tasks.StringPGSearchTaskFactory;
+import dk.ku.cpr.proteoVisualizer.internal.utils.EdgeAttributeAggregator;
+import dk.ku.cpr.proteoVisualizer.internal.utils.GroupEdgeIndex;
+import dk.ku.cpr.proteoVisualizer.internal.utils.LazyMemberEdges;
+import dk.ku.cpr.proteoVisualizer.internal.utils.RequestCoalescer;
+import dk.ku.cpr.proteoVisualizer.internal.utils.StringDbIndex;
+import dk.ku.cpr.proteoVisualizer.internal.utils.StringNetworkCache;
 
 public class AppManager implements GroupAboutToCollapseListener, GroupCollapsedListener, GroupEdgesAddedListener, SelectedNodesAndEdgesListener {
 
 	private CyServiceRegistrar serviceRegistrar;
 	final AvailableCommands availableCommands;
 	final CommandExecutorTaskFactory ceTaskFactory;
+	private StringNetworkCache stringNetworkCache;
+	private Map<File, StringDbIndex> stringDbIndices = new HashMap<File, StringDbIndex>();
+	private boolean searchTaskFactoriesRegistered = false;
+	private ExecutorService executor;
+	private ResilientStringCommandExecutor stringCommandExecutor;
+	private final RequestCoalescer<StringQueryKey, StringNetworkPayload> stringRequestCoalescer = new RequestCoalescer<StringQueryKey, StringNetworkPayload>();
+	// groups with pending copies whose lazy meta edges were removed before another group was collapsed
+	private final Set<CyGroup> lazyGroupsToUpdate = new LinkedHashSet<CyGroup>();
+	// networks whose groups are created and collapsed in bulk, their group events are handled by the task
+	private final Set<CyNetwork> bulkGroupNetworks = ConcurrentHashMap.newKeySet();
+	// networks whose events are not delivered at all during the bulk changes
+	private final Set<CyNetwork> silencedNetworks = ConcurrentHashMap.newKeySet();
 
 	public AppManager(CyServiceRegistrar serviceRegistrar) {
 		this.serviceRegistrar=serviceRegistrar;
@@ -133,6 +175,68 @@ public class AppManager implements GroupAboutToCollapseListener, GroupCollapsedL
 		taskM.execute(ti, to);
 	}
 
+	/**
+	 * Returns the executor running the stages of the retrieval of STRING
+	 * networks. Its threads do not prevent Cytoscape from exiting.
+	 */
+	public synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			executor = Executors.newCachedThreadPool(runnable -> {
+				Thread thread = new Thread(runnable, "Proteo Visualizer worker");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return executor;
+	}
+
+	/**
+	 * Returns the executor of the stringApp commands, with deadlines, retries
+	 * and a circuit breaker shared by all the queries.
+	 */
+	public synchronized ResilientStringCommandExecutor getStringCommandExecutor() {
+		if (stringCommandExecutor == null)
+			setStringCommandExecutor(new StringCommandTaskExecutor(this));
+		return stringCommandExecutor;
+	}
+
+	/**
+	 * Replaces the executor of the stringApp commands, e.g. by a local stub
+	 * command.
+	 */
+	public synchronized void setStringCommandExecutor(StringCommandExecutor delegate) {
+		stringCommandExecutor = new ResilientStringCommandExecutor(delegate, getExecutor());
+		stringCommandExecutor.setTimeout(SharedProperties.STRING_QUERY_TIMEOUT * 1000L);
+		stringCommandExecutor.setMaxRetries(SharedProperties.STRING_QUERY_RETRIES);
+		stringCommandExecutor.setBackoff(SharedProperties.STRING_QUERY_BACKOFF, SharedProperties.STRING_QUERY_MAX_BACKOFF);
+		stringCommandExecutor.setCircuitBreaker(SharedProperties.STRING_QUERY_FAILURE_THRESHOLD,
+				SharedProperties.STRING_QUERY_OPEN_TIME);
+		// the stringApp registers the network of a query that timed out when it is done, nobody will use it
+		stringCommandExecutor.setLateResultHandler(result -> {
+			if (result instanceof CyNetwork) {
+				CyNetworkManager networkManager = getService(CyNetworkManager.class);
+				if (networkManager.networkExists(((CyNetwork) result).getSUID()))
+					networkManager.destroyNetwork((CyNetwork) result);
+			}
+		});
+	}
+
+	/**
+	 * Returns the STRING queries in flight, shared by the identical concurrent
+	 * retrievals.
+	 */
+	public RequestCoalescer<StringQueryKey, StringNetworkPayload> getStringRequestCoalescer() {
+		return stringRequestCoalescer;
+	}
+
+	/** Stops the threads of the app, when the app is stopped. */
+	public synchronized void shutDown() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
 	/**
 	 * Executes a list of tasks in a synchronous way.
 	 * @param ti The list of tasks to execute.
@@ -210,7 +314,49 @@ public class AppManager implements GroupAboutToCollapseListener, GroupCollapsedL
 		groupSettingsManager.setDoubleClickAction(DoubleClickAction.EXPANDCONTRACT);
 	}
 
-	public void registerSearchTaskFactories() {
+	/**
+	 * Starts creating the groups of a network in bulk. Until
+	 * {@link #endBulkGroupChanges(CyNetwork)}, the group events of the network
+	 * are ignored and the caller aggregates the group edges and sets the group
+	 * styles itself. If the network has no view yet, the events of its nodes,
+	 * edges and tables are not delivered at all (e.g. to the other apps), since
+	 * the view created afterwards reads the final network.
+	 */
+	public void startBulkGroupChanges(CyNetwork network) {
+		bulkGroupNetworks.add(network);
+		if (getService(CyNetworkViewManager.class).getNetworkViews(network).isEmpty()) {
+			CyEventHelper eventHelper = getService(CyEventHelper.class);
+			for (Object source : getEventSources(network))
+				eventHelper.silenceEventSource(source);
+			silencedNetworks.add(network);
+		}
+	}
+
+	/**
+	 * Ends the bulk creation of the groups of a network, and delivers the
+	 * pending table and network events at once.
+	 */
+	public void endBulkGroupChanges(CyNetwork network) {
+		bulkGroupNetworks.remove(network);
+		CyEventHelper eventHelper = getService(CyEventHelper.class);
+		eventHelper.flushPayloadEvents();
+		if (silencedNetworks.remove(network)) {
+			for (Object source : getEventSources(network))
+				eventHelper.unsilenceEventSource(source);
+		}
+	}
+
+	// the sources of the events fired while the groups are created: the network, its root network and its tables
+	private static List<Object> getEventSources(CyNetwork network) {
+		return List.of(network, ((CySubNetwork) network).getRootNetwork(), network.getDefaultNetworkTable(),
+				network.getDefaultNodeTable(), network.getDefaultEdgeTable());
+	}
+
+	public synchronized void registerSearchTaskFactories() {
+		// the factories are registered once, either from the species snapshot or when the species are loaded
+		if (searchTaskFactoriesRegistered)
+			return;
+		searchTaskFactoriesRegistered = true;
 		StringPGSearchTaskFactory stringSearch = new StringPGSearchTaskFactory(this, getPVImageIcon());
 		Properties propsSearch = new Properties();
 		registerService(stringSearch, NetworkSearchTaskFactory.class, propsSearch);
@@ -260,20 +406,138 @@ public class AppManager implements GroupAboutToCollapseListener, GroupCollapsedL
 		return getService(CyApplicationManager.class).getCurrentNetwork();
 	}
 
+	/**
+	 * Adds the visual mappings for the protein groups to the current style: group
+	 * nodes are transparent, and (aggregated) edges with a score below the cutoff
+	 * are dashed.
+	 * @param cutoff The confidence cutoff of the network.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void setGroupVisualMappings(double cutoff) {
+		VisualMappingManager vmm = getService(VisualMappingManager.class);
+		VisualStyle currentVS = vmm.getCurrentVisualStyle();
+		
+		// add node transparency for protein group nodes
+		VisualMappingFunctionFactory discreteFactory = 
+                getService(VisualMappingFunctionFactory.class, "(mapping.type=discrete)");
+		DiscreteMapping<String,Integer> dMapping = (DiscreteMapping) currentVS.getVisualMappingFunction(BasicVisualLexicon.NODE_TRANSPARENCY);
+		if (dMapping == null) {
+			dMapping = (DiscreteMapping) discreteFactory.createVisualMappingFunction(SharedProperties.TYPE, String.class, BasicVisualLexicon.NODE_TRANSPARENCY);
+		} 
+		dMapping.putMapValue(SharedProperties.NODE_TYPE_PG, 50);
+		currentVS.addVisualMappingFunction(dMapping);
+		
+		// add visual mapping for edge lines
+		VisualMappingFunctionFactory continuousFactory = getService(VisualMappingFunctionFactory.class,
+				"(mapping.type=continuous)");
+		ContinuousMapping<Double, LineType> cMapping = (ContinuousMapping) continuousFactory
+				.createVisualMappingFunction(SharedProperties.SCORE, Double.class, BasicVisualLexicon.EDGE_LINE_TYPE);
+		cMapping.addPoint(cutoff, new BoundaryRangeValues<LineType>(LineTypeVisualProperty.EQUAL_DASH,
+				LineTypeVisualProperty.SOLID, LineTypeVisualProperty.SOLID));
+		currentVS.addVisualMappingFunction(cMapping);
+	}
+
+	/**
+	 * Returns the version of the installed stringApp, which is part of the keys
+	 * of the cached networks: the networks retrieved with another version (e.g.
+	 * of another STRING release) are not used.
+	 * @return The version, or <code>null</code> if the stringApp is not active.
+	 */
+	public String getStringAppVersion() {
+		Bundle bundle = FrameworkUtil.getBundle(AppManager.class);
+		if (bundle == null || bundle.getBundleContext() == null)
+			return null;
+		for (Bundle other : bundle.getBundleContext().getBundles()) {
+			if (SharedProperties.STRINGAPP_BUNDLE.equals(other.getSymbolicName()) && other.getState() == Bundle.ACTIVE)
+				return other.getVersion().toString();
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the cache of the retrieved STRING networks, stored in the
+	 * configuration directory of the app.
+	 */
+	public synchronized StringNetworkCache getStringNetworkCache() {
+		if (stringNetworkCache == null) {
+			File configDir = getService(CyApplicationConfiguration.class).getAppConfigurationDirectoryLocation(AppManager.class);
+			stringNetworkCache = new StringNetworkCache(new File(configDir, SharedProperties.STRING_CACHE_DIRECTORY),
+					SharedProperties.STRING_CACHE_MAX_SIZE);
+		}
+		return stringNetworkCache;
+	}
+
+	/**
+	 * Returns the default root directory of the offline STRING indices, in the
+	 * configuration directory of the app.
+	 */
+	public File getOfflineIndexDirectory() {
+		File configDir = getService(CyApplicationConfiguration.class).getAppConfigurationDirectoryLocation(AppManager.class);
+		return new File(configDir, SharedProperties.OFFLINE_INDEX_DIRECTORY);
+	}
+
+	/**
+	 * Returns the offline STRING index of a species. The index is opened once and
+	 * kept until it is rebuilt.
+	 * @param root    The root directory of the offline indices, or
+	 *                <code>null</code> for the default one.
+	 * @param taxonID The species.
+	 * @throws IOException If the species was not indexed.
+	 */
+	public synchronized StringDbIndex getStringDbIndex(File root, int taxonID) throws IOException {
+		File directory = StringDbIndex.getDirectory(root == null ? getOfflineIndexDirectory() : root, taxonID)
+				.getAbsoluteFile();
+		StringDbIndex index = stringDbIndices.get(directory);
+		if (index == null) {
+			index = StringDbIndex.open(directory);
+			stringDbIndices.put(directory, index);
+		}
+		return index;
+	}
+
+	/**
+	 * Forgets the opened offline STRING index of the given directory, such that
+	 * it is opened again the next time it is used.
+	 */
+	public synchronized void resetStringDbIndex(File directory) {
+		stringDbIndices.remove(directory.getAbsoluteFile());
+	}
+
+	/**
+	 * Registers a network that was not created by the stringApp (e.g. taken from
+	 * the cache), creates its view with the STRING style and makes it the
+	 * current network view.
+	 * @param network The network to register.
+	 * @return The view of the network.
+	 */
+	public CyNetworkView registerNetwork(CyNetwork network) {
+		getService(CyNetworkManager.class).addNetwork(network);
+		CyNetworkView networkView = getService(CyNetworkViewFactory.class).createNetworkView(network);
+		getService(CyNetworkViewManager.class).addNetworkView(networkView);
+
+		// use the style created by the stringApp, if there is one
+		VisualMappingManager vmm = getService(VisualMappingManager.class);
+		for (VisualStyle style : vmm.getAllVisualStyles()) {
+			if (style.getTitle() != null && style.getTitle().startsWith(SharedProperties.STRING_STYLE_PREFIX)) {
+				vmm.setVisualStyle(style, networkView);
+				style.apply(networkView);
+				break;
+			}
+		}
+		getService(CyApplicationManager.class).setCurrentNetworkView(networkView);
+		return networkView;
+	}
+
 	@Override
 	public void handleEvent(GroupCollapsedEvent e) {
 		CyGroup group = e.getSource();
 		CyNode groupNode = group.getGroupNode();
 		CyNetwork network = e.getNetwork();
+		if (bulkGroupNetworks.contains(network))
+			return;
 
-		// do edge attribute aggregation for the stringdb namespace columns
-		Collection<CyColumn> stringdbCols = network.getDefaultEdgeTable().getColumns(SharedProperties.STRINGDB_NAMESPACE);
-		List<String> edgeColsToAggregate = new ArrayList<String>();
-		for (CyColumn col : stringdbCols) {
-			if (col == null || !col.getType().equals(Double.class)) 
-				continue;
-			edgeColsToAggregate.add(col.getName());
-		}
+		// do edge attribute aggregation for the stringdb namespace columns, with one aggregator for all the edges of the group
+		EdgeAttributeAggregator aggregator = new EdgeAttributeAggregator(network.getDefaultEdgeTable());
 
 		// TODO: do we need to check if string network, and if not ignore the event
 		// CyNetworkView view = getCurrentNetworkView();
@@ -285,7 +549,8 @@ public class AppManager implements GroupAboutToCollapseListener, GroupCollapsedL
 				network.getRow(groupNode).set(SharedProperties.STYLE, "string:");
 			//nodeView.setVisualProperty(BasicVisualLexicon.NODE_TRANSPARENCY, 255);
 			
-			// aggregate edge attributes if not already done
+			// aggregate edge attributes if not already done, the edges of the group are read once
+			GroupEdgeIndex edgeIndex = new GroupEdgeIndex(group.getRootNetwork(), network, getService(CyGroupManager.class));
 			List<CyEdge> groupNodeEdges = network.getAdjacentEdgeList(group.getGroupNode(), Type.ANY);
 			for (CyEdge newEdge : groupNodeEdges) {
 				Boolean edgeTypeMeta = group.getRootNetwork().getRow(newEdge, CyNetwork.HIDDEN_ATTRS).get("__isMetaEdge", Boolean.class);
@@ -302,8 +567,10 @@ public class AppManager implements GroupAboutToCollapseListener, GroupCollapsedL
 				else 
 					neighbor = newEdge.getSource();
 				// aggregate edge attributes 
-				aggregateGroupEdgeAttributes(network, group, newEdge, group.getNodeList(), neighbor, edgeColsToAggregate);
+				aggregateGroupEdgeAttributes(network, group, newEdge, neighbor, edgeIndex, aggregator);
 			}
+			// add the lazy meta edges of the pending copies of the group, and the ones removed before collapsing
+			updateLazyMetaEdges(network, group, aggregator);
 
 		} else {
 			// System.out.println("group expanded");
@@ -311,6 +578,16 @@ public class AppManager implements GroupAboutToCollapseListener, GroupCollapsedL
 			if (network.getDefaultNodeTable().getColumn(SharedProperties.STYLE) != null)
 				network.getRow(groupNode).set(SharedProperties.STYLE, "");
 			//nodeView.setVisualProperty(BasicVisualLexicon.NODE_TRANSPARENCY, 50);
+
+			// the pending copies of the group get their member edges, and the groups with a lazy meta edge
+			// to the group node get new ones to the nodes of the group
+			for (CyNode lazyNeighbor : LazyMemberEdges.removeLazyMetaEdges(group.getRootNetwork(), groupNode)) {
+				CyGroup lazyGroup = getService(CyGroupManager.class).getGroup(lazyNeighbor, network);
+				if (lazyGroup != null)
+					lazyGroupsToUpdate.add(lazyGroup);
+			}
+			LazyMemberEdges.materialize(this, network, group);
+			updateLazyMetaEdges(network, group, aggregator);
 			
 			// aggregate edge attributes if not already done 
 			// get all external edges, includes both meta edges and edges from any node in the group to any other node in the network
@@ -327,9 +604,9 @@ public class AppManager implements GroupAboutToCollapseListener, GroupCollapsedL
 				CyNode source = newEdge.getSource();
 				CyNode target = newEdge.getTarget();
 				if (group.getNodeList().contains(source)) {
-					aggregateGroupEdgeAttributes(network, group, newEdge, new ArrayList<CyNode>(Arrays.asList(source)), target, edgeColsToAggregate);					
+					aggregateGroupEdgeAttributes(network, group, newEdge, new ArrayList<CyNode>(Arrays.asList(source)), target, aggregator);					
 				} else if (group.getNodeList().contains(target)) {
-					aggregateGroupEdgeAttributes(network, group, newEdge, new ArrayList<CyNode>(Arrays.asList(target)), source, edgeColsToAggregate);
+					aggregateGroupEdgeAttributes(network, group, newEdge, new ArrayList<CyNode>(Arrays.asList(target)), source, aggregator);
 				} 
 				//else {
 				//	System.out.println("neither source nor target is a node in the group that was uncollapsed");
@@ -357,12 +634,28 @@ public class AppManager implements GroupAboutToCollapseListener, GroupCollapsedL
 	}
 
 	
-	public void aggregateGroupEdgeAttributes(CyNetwork retrievedNetwork, CyGroup group, CyEdge newEdge, List<CyNode> groupNodes, CyNode neighbor, List<String> edgeColsToAggregate) {
-		CyNetwork rootNetwork = group.getRootNetwork(); 
+	/**
+	 * Updates the lazy meta edges of a group, if it has pending copies, and of
+	 * the groups whose lazy meta edges were removed before.
+	 */
+	private void updateLazyMetaEdges(CyNetwork network, CyGroup group, EdgeAttributeAggregator aggregator) {
+		Set<CyGroup> lazyGroups = new LinkedHashSet<CyGroup>(lazyGroupsToUpdate);
+		lazyGroupsToUpdate.clear();
+		if (LazyMemberEdges.hasPendingCopies(group))
+			lazyGroups.add(group);
+		for (CyGroup lazyGroup : lazyGroups) {
+			if (lazyGroup.isInNetwork(network) && lazyGroup.isCollapsed(network))
+				LazyMemberEdges.updateLazyMetaEdges(this, network, lazyGroup, aggregator);
+		}
+	}
+
+	public void aggregateGroupEdgeAttributes(CyNetwork retrievedNetwork, CyGroup group, CyEdge newEdge, List<CyNode> groupNodes, CyNode neighbor, EdgeAttributeAggregator aggregator) {
+		CyRootNetwork rootNetwork = group.getRootNetwork(); 
 		CyGroupManager groupManager = getService(CyGroupManager.class);
 		// System.out.println(retrievedNetwork.getRow(neighbor).get(CyNetwork.NAME, String.class));
 		// find out which edges we need to average
 		List<CyEdge> edgesToAggregate = new ArrayList<CyEdge>();
+		double cutoff = LazyMemberEdges.getCutoff(retrievedNetwork);
 		int numPossibleEdges = groupNodes.size();
 		if (groupManager.isGroup(neighbor, retrievedNetwork)) {
 			// if the neighbor is a group node, get the edges between nodes of both groups
@@ -371,33 +664,39 @@ public class AppManager implements GroupAboutToCollapseListener, GroupCollapsedL
 			numPossibleEdges *= groupSubNet.getNodeCount();
 			for (CyNode group1Node : groupSubNet.getNodeList()) {
 				for (CyNode group2Node : groupNodes) {
-					edgesToAggregate.addAll(rootNetwork.getConnectingEdgeList(group1Node, group2Node, Type.ANY));
+					edgesToAggregate.addAll(LazyMemberEdges.getConnectingEdges(rootNetwork, group1Node, group2Node, cutoff));
 				}
 			}
 			//System.out.println("edges to average: " + edgesToAverage.size());
 		} else {
 			//System.out.println("found a normal neighbor: " + neighbor);
 			for (CyNode groupNode : groupNodes) {
-				edgesToAggregate.addAll(rootNetwork.getConnectingEdgeList(groupNode, neighbor, Type.ANY));
+				edgesToAggregate.addAll(LazyMemberEdges.getConnectingEdges(rootNetwork, groupNode, neighbor, cutoff));
 			}
 		}
+		setAggregatedEdgeAttributes(retrievedNetwork, newEdge, edgesToAggregate, numPossibleEdges, aggregator);
+	}
+
+	/**
+	 * Aggregates the edges between the nodes of a group and a neighbor into
+	 * their meta edge, with the edges of the group taken from the index.
+	 */
+	public void aggregateGroupEdgeAttributes(CyNetwork retrievedNetwork, CyGroup group, CyEdge newEdge, CyNode neighbor,
+			GroupEdgeIndex edgeIndex, EdgeAttributeAggregator aggregator) {
+		int numPossibleEdges = group.getNodeList().size();
+		if (getService(CyGroupManager.class).isGroup(neighbor, retrievedNetwork))
+			numPossibleEdges *= ((CySubNetwork) neighbor.getNetworkPointer()).getNodeCount();
+		setAggregatedEdgeAttributes(retrievedNetwork, newEdge, edgeIndex.getConnectingEdges(group, neighbor),
+				numPossibleEdges, aggregator);
+	}
+
+	private void setAggregatedEdgeAttributes(CyNetwork retrievedNetwork, CyEdge newEdge, List<CyEdge> edgesToAggregate,
+			int numPossibleEdges, EdgeAttributeAggregator aggregator) {
 		retrievedNetwork.getRow(newEdge).set(SharedProperties.EDGEPOSSIBLE, Integer.valueOf(numPossibleEdges));
 		retrievedNetwork.getRow(newEdge).set(SharedProperties.EDGEEXISTING, Integer.valueOf(edgesToAggregate.size()));
 		// retrievedNetwork.getRow(newEdge).set(SharedProperties.EDGEPROB, Double.valueOf((double)edgesToAggregate.size()/numPossibleEdges));
-		// now get the average and set it for each column
-		for (String col : edgeColsToAggregate) {
-			double averagedValue = 0.0;
-			for (CyEdge edge : edgesToAggregate) {
-				Double edgeValue = rootNetwork.getRow(edge).get(col, Double.class);
-				if (edgeValue != null) 
-					averagedValue += edgeValue.doubleValue();
-			}
-			if (averagedValue != 0.0) {
-				// TODO: shorten to 6 digits precision or not?
-				// for edge attributes, we sum the values from all existing edges and divide by the number of possible edges
-				retrievedNetwork.getRow(newEdge).set(col, Double.valueOf(averagedValue/numPossibleEdges));							
-			}
-		}
+		// now get the average, and the sum, maximum and count, for each column
+		aggregator.aggregate(retrievedNetwork, newEdge, edgesToAggregate, numPossibleEdges);
 		// TODO: Hide this attribute if possible, because we need it but not the user 
 		retrievedNetwork.getRow(newEdge).set(SharedProperties.EDGEAGGREGATED, Boolean.valueOf(true));
 	}
@@ -423,9 +722,21 @@ public class AppManager implements GroupAboutToCollapseListener, GroupCollapsedL
 
 	@Override
 	public void handleEvent(GroupAboutToCollapseEvent e) {
-		// Auto-generated method stub
 		//System.out.println("group about to collapse "
 		//		+ e.getNetwork().getRow(e.getSource().getGroupNode()).get(CyNetwork.NAME, String.class));
+		if (!e.collapsing() || bulkGroupNetworks.contains(e.getNetwork()))
+			return;
+		// the lazy meta edges to the nodes of the group would become meta edges of the group,
+		// they are removed and created again to the group node once it is collapsed
+		CyGroup group = e.getSource();
+		CyNetwork network = e.getNetwork();
+		for (CyNode node : group.getNodeList()) {
+			for (CyNode lazyNeighbor : LazyMemberEdges.removeLazyMetaEdges(group.getRootNetwork(), node)) {
+				CyGroup lazyGroup = getService(CyGroupManager.class).getGroup(lazyNeighbor, network);
+				if (lazyGroup != null)
+					lazyGroupsToUpdate.add(lazyGroup);
+			}
+		}
 	}
 
 
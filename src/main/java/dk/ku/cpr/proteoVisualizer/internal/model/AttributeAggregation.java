@@ -0,0 +1,56 @@
+package dk.ku.cpr.proteoVisualizer.internal.model;
+
+import java.util.List;
+
+/**
+ * How the values of the nodes of a protein group are merged into the value of
+ * its group node.
+ */
+public enum AttributeAggregation {
+	COPY("copy", "the value of the representative node"),
+	CONCAT("concat", "the values joined with the concatenation symbol"),
+	UNION("union", "the distinct values (or list elements)"),
+	MEAN("mean", "the mean over all nodes, missing values count as 0"),
+	MAX("max", "the largest value"),
+	SUM("sum", "the sum of the values");
+
+	private final String name;
+	private final String description;
+
+	AttributeAggregation(String name, String description) {
+		this.name = name;
+		this.description = description;
+	}
+
+	public String getDescription() { return description; }
+
+	public String toString() { return name; }
+
+	/**
+	 * @return <code>true</code> if the values of a column of the given type can
+	 *         be aggregated this way.
+	 */
+	public boolean supports(Class<?> type) {
+		switch (this) {
+		case COPY:
+			return true;
+		case CONCAT:
+			return type.equals(String.class);
+		case UNION:
+			return type.equals(String.class) || type.equals(List.class);
+		case MEAN:
+			return type.equals(Double.class);
+		default:
+			return type.equals(Double.class) || type.equals(Integer.class) || type.equals(Long.class);
+		}
+	}
+
+	public static AttributeAggregation getType(String type) {
+		for (AttributeAggregation aggregation : AttributeAggregation.values()) {
+			if (aggregation.name.equalsIgnoreCase(type)) {
+				return aggregation;
+			}
+		}
+		return null;
+	}
+}
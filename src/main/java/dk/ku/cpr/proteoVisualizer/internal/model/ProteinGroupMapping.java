@@ -0,0 +1,323 @@
+package dk.ku.cpr.proteoVisualizer.internal.model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Compact mapping between protein groups and the proteins (accessions) they
+ * contain.
+ *
+ * Protein groups and proteins are both dictionary-encoded to consecutive int
+ * indices. The members of each protein group, and the protein groups of each
+ * protein, are stored in CSR (compressed sparse row) form: the entries of row
+ * <code>i</code> are <code>members[offsets[i]]</code> to
+ * <code>members[offsets[i+1]-1]</code>. The protein groups of a protein are
+ * sorted by protein group index, i.e. in the order they were added.
+ *
+ * Accessions are looked up through an open-addressing hash table that can
+ * be probed with a span of a larger text, such that known accessions can be
+ * found without creating a string for them.
+ *
+ * Instances are immutable and created with a {@link Builder}.
+ */
+public class ProteinGroupMapping {
+
+	private final String[] proteinGroups;
+	private final String[] proteins;
+	private final HashMap<String, Integer> proteinGroupIndex;
+	private final AccessionIndex proteinIndex;
+
+	// protein group -> proteins
+	private final int[] pgOffsets;
+	private final int[] pgMembers;
+	// protein -> protein groups
+	private final int[] proteinOffsets;
+	private final int[] proteinMembers;
+
+	private ProteinGroupMapping(String[] proteinGroups, String[] proteins, HashMap<String, Integer> proteinGroupIndex,
+			AccessionIndex proteinIndex, int[] pgOffsets, int[] pgMembers) {
+		this.proteinGroups = proteinGroups;
+		this.proteins = proteins;
+		this.proteinGroupIndex = proteinGroupIndex;
+		this.proteinIndex = proteinIndex;
+		this.pgOffsets = pgOffsets;
+		this.pgMembers = pgMembers;
+
+		// build the inverse relation by counting the protein groups of each protein
+		this.proteinOffsets = new int[proteins.length + 1];
+		for (int member : pgMembers) {
+			proteinOffsets[member + 1]++;
+		}
+		for (int i = 0; i < proteins.length; i++) {
+			proteinOffsets[i + 1] += proteinOffsets[i];
+		}
+		this.proteinMembers = new int[pgMembers.length];
+		int[] fill = Arrays.copyOf(proteinOffsets, proteins.length);
+		for (int pg = 0; pg < proteinGroups.length; pg++) {
+			for (int i = pgOffsets[pg]; i < pgOffsets[pg + 1]; i++) {
+				proteinMembers[fill[pgMembers[i]]++] = pg;
+			}
+		}
+	}
+
+	/** @return The number of protein groups. */
+	public int getProteinGroupCount() {
+		return proteinGroups.length;
+	}
+
+	/** @return The number of distinct proteins (accessions). */
+	public int getProteinCount() {
+		return proteins.length;
+	}
+
+	/** @return The name of the protein group with the given index. */
+	public String getProteinGroup(int pg) {
+		return proteinGroups[pg];
+	}
+
+	/** @return The accession of the protein with the given index. */
+	public String getProtein(int protein) {
+		return proteins[protein];
+	}
+
+	/** @return The list of all distinct accessions, in index order. */
+	public List<String> getProteins() {
+		return Arrays.asList(proteins);
+	}
+
+	/** @return The index of the given protein group, or -1 if it is unknown. */
+	public int getProteinGroupIndex(String proteinGroup) {
+		Integer index = proteinGroupIndex.get(proteinGroup);
+		return index == null ? -1 : index.intValue();
+	}
+
+	/** @return The index of the given accession, or -1 if it is unknown. */
+	public int getProteinIndex(String protein) {
+		return proteinIndex.find(protein, 0, protein.length());
+	}
+
+	/**
+	 * @return The index of the accession given by the characters between
+	 *         <code>start</code> (inclusive) and <code>end</code> (exclusive) of
+	 *         the text, or -1 if it is unknown.
+	 */
+	public int getProteinIndex(CharSequence text, int start, int end) {
+		return proteinIndex.find(text, start, end);
+	}
+
+	/** @return The number of proteins in the given protein group. */
+	public int getMemberCount(int pg) {
+		return pgOffsets[pg + 1] - pgOffsets[pg];
+	}
+
+	/** @return The index of the <code>i</code>-th protein of the given protein group. */
+	public int getMember(int pg, int i) {
+		return pgMembers[pgOffsets[pg] + i];
+	}
+
+	/** @return The number of protein groups the given protein belongs to. */
+	public int getGroupCount(int protein) {
+		return proteinOffsets[protein + 1] - proteinOffsets[protein];
+	}
+
+	/** @return The index of the <code>i</code>-th protein group of the given protein. */
+	public int getGroup(int protein, int i) {
+		return proteinMembers[proteinOffsets[protein] + i];
+	}
+
+	/**
+	 * Builds a {@link ProteinGroupMapping} one protein group at a time.
+	 */
+	public static class Builder {
+		private String[] proteinGroups;
+		private String[] proteins;
+		private final HashMap<String, Integer> proteinGroupIndex;
+		private final AccessionIndex proteinIndex;
+		private int[] pgOffsets;
+		private int[] pgMembers;
+		// last protein group each protein was added to, used to skip duplicated accessions
+		private int[] lastGroup;
+
+		private int numProteinGroups;
+		private int numProteins;
+		private int numMembers;
+		private boolean inGroup;
+
+		public Builder() {
+			this.proteinGroups = new String[16];
+			this.proteins = new String[16];
+			this.proteinGroupIndex = new HashMap<String, Integer>();
+			this.proteinIndex = new AccessionIndex();
+			this.pgOffsets = new int[17];
+			this.pgMembers = new int[16];
+			this.lastGroup = new int[16];
+		}
+
+		public boolean containsProteinGroup(String proteinGroup) {
+			return proteinGroupIndex.containsKey(proteinGroup);
+		}
+
+		/**
+		 * Starts a new protein group. The proteins added before the call to
+		 * {@link #endProteinGroup()} are the members of this protein group.
+		 * @param proteinGroup The name of the protein group, which must not be known yet.
+		 */
+		public void beginProteinGroup(String proteinGroup) {
+			if (inGroup)
+				throw new IllegalStateException("The previous protein group was not ended.");
+			if (numProteinGroups == proteinGroups.length) {
+				proteinGroups = Arrays.copyOf(proteinGroups, numProteinGroups * 2);
+				pgOffsets = Arrays.copyOf(pgOffsets, numProteinGroups * 2 + 1);
+			}
+			proteinGroups[numProteinGroups] = proteinGroup;
+			inGroup = true;
+		}
+
+		/**
+		 * Adds a protein to the current protein group. Accessions already in the
+		 * current protein group are ignored.
+		 * @param protein The accession of the protein.
+		 */
+		public void addProtein(String protein) {
+			addProtein(protein, 0, protein.length());
+		}
+
+		/**
+		 * Adds a protein to the current protein group. The accession is given by
+		 * the characters between <code>start</code> (inclusive) and
+		 * <code>end</code> (exclusive) of the text, and a string is only created
+		 * for it if the accession is new.
+		 */
+		public void addProtein(CharSequence text, int start, int end) {
+			int p = proteinIndex.find(text, start, end);
+			if (p < 0) {
+				p = internProtein(text.subSequence(start, end).toString());
+			} else if (lastGroup[p] == numProteinGroups) {
+				return;
+			}
+			lastGroup[p] = numProteinGroups;
+			if (numMembers == pgMembers.length) {
+				pgMembers = Arrays.copyOf(pgMembers, numMembers * 2);
+			}
+			pgMembers[numMembers++] = p;
+		}
+
+		/** @return The number of proteins added to the current protein group so far. */
+		public int getCurrentMemberCount() {
+			return inGroup ? numMembers - pgOffsets[numProteinGroups] : 0;
+		}
+
+		/**
+		 * Ends the current protein group. Protein groups without any protein are
+		 * discarded.
+		 */
+		public void endProteinGroup() {
+			if (!inGroup)
+				throw new IllegalStateException("No protein group was started.");
+			inGroup = false;
+			if (numMembers == pgOffsets[numProteinGroups]) {
+				proteinGroups[numProteinGroups] = null;
+				return;
+			}
+			proteinGroupIndex.put(proteinGroups[numProteinGroups], numProteinGroups);
+			numProteinGroups++;
+			pgOffsets[numProteinGroups] = numMembers;
+		}
+
+		private int internProtein(String protein) {
+			if (numProteins == proteins.length) {
+				proteins = Arrays.copyOf(proteins, numProteins * 2);
+				lastGroup = Arrays.copyOf(lastGroup, numProteins * 2);
+			}
+			proteins[numProteins] = protein;
+			proteinIndex.add(protein, numProteins);
+			return numProteins++;
+		}
+
+		public ProteinGroupMapping build() {
+			if (inGroup)
+				throw new IllegalStateException("The last protein group was not ended.");
+			return new ProteinGroupMapping(Arrays.copyOf(proteinGroups, numProteinGroups),
+					Arrays.copyOf(proteins, numProteins), proteinGroupIndex, proteinIndex,
+					Arrays.copyOf(pgOffsets, numProteinGroups + 1), Arrays.copyOf(pgMembers, numMembers));
+		}
+	}
+
+	/**
+	 * Open-addressing hash table from accession to index. The hash of an
+	 * accession is the same as {@link String#hashCode()}, which allows probing
+	 * the table with a span of characters.
+	 */
+	private static class AccessionIndex {
+		private String[] keys;
+		private int[] values;
+		private int size;
+
+		AccessionIndex() {
+			this.keys = new String[64];
+			this.values = new int[64];
+		}
+
+		int find(CharSequence text, int start, int end) {
+			int mask = keys.length - 1;
+			int slot = mix(hash(text, start, end)) & mask;
+			String key;
+			while ((key = keys[slot]) != null) {
+				if (equals(key, text, start, end))
+					return values[slot];
+				slot = (slot + 1) & mask;
+			}
+			return -1;
+		}
+
+		void add(String key, int value) {
+			if ((size + 1) * 2 > keys.length)
+				rehash(keys.length * 2);
+			insert(key, value);
+			size++;
+		}
+
+		private void insert(String key, int value) {
+			int mask = keys.length - 1;
+			int slot = mix(key.hashCode()) & mask;
+			while (keys[slot] != null)
+				slot = (slot + 1) & mask;
+			keys[slot] = key;
+			values[slot] = value;
+		}
+
+		private void rehash(int capacity) {
+			String[] oldKeys = keys;
+			int[] oldValues = values;
+			keys = new String[capacity];
+			values = new int[capacity];
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != null)
+					insert(oldKeys[i], oldValues[i]);
+			}
+		}
+
+		private static int hash(CharSequence text, int start, int end) {
+			int h = 0;
+			for (int i = start; i < end; i++)
+				h = 31 * h + text.charAt(i);
+			return h;
+		}
+
+		private static int mix(int h) {
+			h *= 0x9E3779B9;
+			return h ^ (h >>> 16);
+		}
+
+		private static boolean equals(String key, CharSequence text, int start, int end) {
+			if (key.length() != end - start)
+				return false;
+			for (int i = 0; i < key.length(); i++) {
+				if (key.charAt(i) != text.charAt(start + i))
+					return false;
+			}
+			return true;
+		}
+	}
+}
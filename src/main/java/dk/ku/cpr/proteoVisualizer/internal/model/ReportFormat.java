@@ -0,0 +1,72 @@
+package dk.ku.cpr.proteoVisualizer.internal.model;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The file formats protein groups can be imported from, together with the
+ * names of the columns containing the protein groups.
+ */
+public enum ReportFormat {
+	AUTO("Detect from header", null),
+	PLAIN("One protein group per line", null),
+	MAXQUANT("MaxQuant proteinGroups.txt", ";", "Majority protein IDs", "Protein IDs"),
+	DIANN("DIA-NN report.pg_matrix.tsv", ";", "Protein.Group", "Protein.Ids"),
+	SPECTRONAUT("Spectronaut report", ";", "PG.ProteinGroups", "PG.ProteinAccessions");
+
+	private final String name;
+	private final String delimiter;
+	private final List<String> columns;
+
+	ReportFormat(String name, String delimiter, String... columns) {
+		this.name = name;
+		this.delimiter = delimiter;
+		this.columns = Arrays.asList(columns);
+	}
+
+	/**
+	 * @return The delimiter of the accessions in a protein group, or
+	 *         <code>null</code> if it has to be given by the user.
+	 */
+	public String getDelimiter() {
+		return delimiter;
+	}
+
+	/** @return The names of the protein group columns, by order of preference. */
+	public List<String> getColumns() {
+		return columns;
+	}
+
+	/** @return <code>true</code> if the file starts with a header line. */
+	public boolean hasHeader() {
+		return !columns.isEmpty();
+	}
+
+	public String toString() {
+		return name;
+	}
+
+	/**
+	 * Finds the format whose protein group column is in the header.
+	 * @param header The column names.
+	 * @return The format, or <code>null</code> if the header matches no format.
+	 */
+	public static ReportFormat detect(List<String> header) {
+		for (ReportFormat format : values()) {
+			for (String column : format.columns) {
+				if (header.contains(column))
+					return format;
+			}
+		}
+		return null;
+	}
+
+	public static ReportFormat getFormat(String format) {
+		for (ReportFormat reportFormat : values()) {
+			if (reportFormat.name.equalsIgnoreCase(format) || reportFormat.name().equalsIgnoreCase(format)) {
+				return reportFormat;
+			}
+		}
+		return null;
+	}
+}
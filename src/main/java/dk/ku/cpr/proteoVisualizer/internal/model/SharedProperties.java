@@ -23,6 +23,11 @@ public final class SharedProperties {
 	/** The namespace of the commands. */
 	public static final String APP_COMMAND_NAMESPACE = "proteovis";
 
+	/** The namespace of the stringApp commands. */
+	public static final String STRINGAPP_NAMESPACE = "string";
+	/** The symbolic name of the stringApp bundle. */
+	public static final String STRINGAPP_BUNDLE = "edu.ucsf.rbvi.stringApp";
+
 	public static final String ABOUT_URI = "https://apps.cytoscape.org/apps/ProteoVisualizer";
 
 
@@ -47,6 +52,24 @@ public final class SharedProperties {
 	
 	// TODO: add more delimiters that make sense?
 	public static String[] pg_delimiters = new String[] {DEFAULT_PG_DELIMITER, "|", ","};
+	// prefixes of the accessions which are not queried, none by default (REV__,CON__ for the MaxQuant decoys and contaminants)
+	public static String DEFAULT_EXCLUDED_PREFIXES = "";
+	// cache of the retrieved STRING networks, in the app configuration directory
+	public static String STRING_CACHE_DIRECTORY = "string-cache";
+	public static long STRING_CACHE_MAX_SIZE = 256L * 1024 * 1024;
+	public static String STRING_STYLE_PREFIX = "STRING style";
+	// species loaded from the stringApp at the last start, in the app configuration directory
+	public static String SPECIES_SNAPSHOT = "species.tsv";
+	// deadline (in seconds) and retries of the STRING queries, and when they fail fast
+	public static int STRING_QUERY_TIMEOUT = 600;
+	public static int STRING_QUERY_RETRIES = 2;
+	public static long STRING_QUERY_BACKOFF = 2000;
+	public static long STRING_QUERY_MAX_BACKOFF = 30000;
+	public static int STRING_QUERY_FAILURE_THRESHOLD = 3;
+	public static long STRING_QUERY_OPEN_TIME = 60000;
+	public static int STRING_CHUNK_PARALLELISM = 4;
+	// default location of the offline STRING indices, in the app configuration directory
+	public static String OFFLINE_INDEX_DIRECTORY = "string-offline";
 	
 	// Node or edge attribute namesspaces
 	public static String PROTEOVIS_NAMESPACE = "proteovis";
@@ -90,6 +113,8 @@ public final class SharedProperties {
 	public static List<String> nodeAttrinbutesNotToCopyString = new ArrayList<String>(Arrays.asList(DESCRIPTION, SEQUENCE));
 	public static List<String> nodeAttrinbutesToSetManually = new ArrayList<String>(Arrays.asList(QUERYTERM, STYLE, TYPE, USE_ENRICHMENT));
 	public static List<String> nodeAttrinbutesToConcatString = new ArrayList<String>(Arrays.asList(CANONICAL, DISPLAY, FULLNAME, DEVLEVEL, FAMILY));
+	// attributes that stay in the node table of the copies of a protein when the other ones are shared
+	public static List<String> nodeAttrinbutesNotToShare = new ArrayList<String>(Arrays.asList(CyRootNetwork.SHARED_NAME, CyNetwork.NAME, QUERYTERM, PROTEINGROUP, MATCHEDID, STYLE, TYPE, USE_ENRICHMENT));
 
 	// Edge information
 	public static String SCORE = STRINGDB_NAMESPACE + NAMESPACE_SEPARATOR + "score";
@@ -98,9 +123,30 @@ public final class SharedProperties {
 	public static String EDGEEXISTING = PROTEOVIS_NAMESPACE + NAMESPACE_SEPARATOR + "# actual edges";
 	public static String EDGEAGGREGATED = PROTEOVIS_NAMESPACE + NAMESPACE_SEPARATOR + "aggregated";
 	public static String EDGESHARED = PROTEOVIS_NAMESPACE + NAMESPACE_SEPARATOR + "# shared proteins";
+	public static String EDGEJACCARD = PROTEOVIS_NAMESPACE + NAMESPACE_SEPARATOR + "jaccard";
+	public static String EDGEOVERLAP = PROTEOVIS_NAMESPACE + NAMESPACE_SEPARATOR + "overlap coefficient";
+	// hidden attributes of the copies whose member edges are not created yet, and of the meta edges standing for them
+	// (the name ends with .SUID such that Cytoscape updates the values when a session is loaded)
+	public static String PENDING_COPY_OF = APP_PREFIX + "pendingCopyOf.SUID";
+	public static String LAZY_META_EDGE = APP_PREFIX + "lazyMetaEdge";
 
 	// Network information 
 	public static String COLLAPSED = PROTEOVIS_NAMESPACE + NAMESPACE_SEPARATOR + "collapsed";
+	public static String CUTOFF = PROTEOVIS_NAMESPACE + NAMESPACE_SEPARATOR + "confidence cutoff";
+	// hidden attribute of the network, the cutoff it was retrieved with is the lowest one it can get back
+	public static String RETRIEVAL_CUTOFF = APP_PREFIX + "retrievalCutoff";
+	public static String NETWORK_TYPE = STRINGDB_NAMESPACE + NAMESPACE_SEPARATOR + "network type";
+	public static String AGGREGATION = PROTEOVIS_NAMESPACE + NAMESPACE_SEPARATOR + "aggregation";
+	// namespace of the node table of the network that backs the attributes shared by the copies of a protein
+	public static String SHARED_ATTRIBUTES_NAMESPACE = APP_PREFIX + "proteinAttributes";
+
+	// Overlap table, with one row per pair of protein groups sharing proteins (and the edge columns above)
+	public static String OVERLAP_TABLE = "protein group overlap";
+	public static String OVERLAP_PAIR = PROTEOVIS_NAMESPACE + NAMESPACE_SEPARATOR + "pair";
+	public static String OVERLAP_GROUP1 = PROTEOVIS_NAMESPACE + NAMESPACE_SEPARATOR + "protein group 1";
+	public static String OVERLAP_GROUP2 = PROTEOVIS_NAMESPACE + NAMESPACE_SEPARATOR + "protein group 2";
+	// hidden attribute of the network, the overlap table of its last run (updated when a session is loaded)
+	public static String OVERLAP_TABLE_SUID = APP_PREFIX + "overlapTable.SUID";
 	
 	// We forbid the class to have instances
 	private SharedProperties() {
@@ -0,0 +1,640 @@
+package dk.ku.cpr.proteoVisualizer.internal.model;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.cytoscape.model.CyColumn;
+import org.cytoscape.model.CyEdge;
+import org.cytoscape.model.CyIdentifiable;
+import org.cytoscape.model.CyNetwork;
+import org.cytoscape.model.CyNetworkFactory;
+import org.cytoscape.model.CyNode;
+import org.cytoscape.model.CyRow;
+import org.cytoscape.model.CyTable;
+
+/**
+ * The raw content of a network retrieved from STRING, i.e. its nodes, edges and
+ * the values of their default table columns, before any protein group
+ * processing.
+ *
+ * A payload can be taken from a network, written to and read from a compact
+ * binary stream, built from scratch with a {@link Builder}, and turned back
+ * into a new network. Only columns of type
+ * String, Integer, Long, Double and Boolean (and lists of them) are kept.
+ */
+public class StringNetworkPayload {
+
+	private static final int MAGIC = 0x50564E31; // "PVN1"
+
+	private static final byte TYPE_STRING = 'S';
+	private static final byte TYPE_INTEGER = 'I';
+	private static final byte TYPE_LONG = 'L';
+	private static final byte TYPE_DOUBLE = 'D';
+	private static final byte TYPE_BOOLEAN = 'B';
+
+	private final TablePayload networkTable;
+	private final TablePayload nodeTable;
+	private final TablePayload edgeTable;
+	private final int[] edgeSources;
+	private final int[] edgeTargets;
+	private final boolean[] edgeDirected;
+
+	private StringNetworkPayload(TablePayload networkTable, TablePayload nodeTable, TablePayload edgeTable,
+			int[] edgeSources, int[] edgeTargets, boolean[] edgeDirected) {
+		this.networkTable = networkTable;
+		this.nodeTable = nodeTable;
+		this.edgeTable = edgeTable;
+		this.edgeSources = edgeSources;
+		this.edgeTargets = edgeTargets;
+		this.edgeDirected = edgeDirected;
+	}
+
+	public int getNodeCount() {
+		return nodeTable.rowCount;
+	}
+
+	public int getEdgeCount() {
+		return edgeSources.length;
+	}
+
+	/**
+	 * Takes the nodes, edges and default table values of the given network.
+	 * @param network The network retrieved from STRING.
+	 * @return The payload of the network.
+	 */
+	public static StringNetworkPayload fromNetwork(CyNetwork network) {
+		List<CyNode> nodes = network.getNodeList();
+		List<CyEdge> edges = network.getEdgeList();
+
+		Map<CyNode, Integer> nodeIndex = new HashMap<CyNode, Integer>();
+		for (int i = 0; i < nodes.size(); i++) {
+			nodeIndex.put(nodes.get(i), i);
+		}
+		int[] sources = new int[edges.size()];
+		int[] targets = new int[edges.size()];
+		boolean[] directed = new boolean[edges.size()];
+		for (int i = 0; i < edges.size(); i++) {
+			CyEdge edge = edges.get(i);
+			sources[i] = nodeIndex.get(edge.getSource());
+			targets[i] = nodeIndex.get(edge.getTarget());
+			directed[i] = edge.isDirected();
+		}
+
+		List<CyNetwork> networkRows = new ArrayList<CyNetwork>();
+		networkRows.add(network);
+		return new StringNetworkPayload(TablePayload.fromTable(network.getDefaultNetworkTable(), networkRows),
+				TablePayload.fromTable(network.getDefaultNodeTable(), nodes),
+				TablePayload.fromTable(network.getDefaultEdgeTable(), edges), sources, targets, directed);
+	}
+
+	/**
+	 * Creates a new network with the nodes, edges and table values of the
+	 * payload. The network is not registered.
+	 * @param networkFactory The factory used to create the network.
+	 * @return The new network.
+	 */
+	public CyNetwork createNetwork(CyNetworkFactory networkFactory) {
+		CyNetwork network = networkFactory.createNetwork();
+
+		List<CyNode> nodes = network.addNodes(nodeTable.rowCount);
+		List<CyEdge> edges = new ArrayList<CyEdge>(edgeSources.length);
+		for (int i = 0; i < edgeSources.length; i++) {
+			edges.add(network.addEdge(nodes.get(edgeSources[i]), nodes.get(edgeTargets[i]), edgeDirected[i]));
+		}
+
+		List<CyNetwork> networkRows = new ArrayList<CyNetwork>();
+		networkRows.add(network);
+		networkTable.toTable(network.getDefaultNetworkTable(), networkRows);
+		nodeTable.toTable(network.getDefaultNodeTable(), nodes);
+		edgeTable.toTable(network.getDefaultEdgeTable(), edges);
+		return network;
+	}
+
+	/**
+	 * @return The value of the node in the given column, or <code>null</code>
+	 *         if the payload has no such column.
+	 */
+	public Object getNodeValue(int node, String column) {
+		int c = nodeTable.names.indexOf(column);
+		return (c < 0) ? null : nodeTable.values.get(c)[node];
+	}
+
+	public int getEdgeSource(int edge) {
+		return edgeSources[edge];
+	}
+
+	public int getEdgeTarget(int edge) {
+		return edgeTargets[edge];
+	}
+
+	/**
+	 * Adds some of the nodes of the payload, with their table values, to an
+	 * existing network.
+	 * @param network The network to extend.
+	 * @param nodes   The indices of the nodes to add.
+	 * @return The added nodes, in the same order.
+	 */
+	public List<CyNode> addNodes(CyNetwork network, int[] nodes) {
+		List<CyNode> added = network.addNodes(nodes.length);
+		nodeTable.toTable(network.getDefaultNodeTable(), added, nodes);
+		return added;
+	}
+
+	/**
+	 * Sets the table values of some of the nodes of the payload to nodes of a
+	 * network again, e.g. once the join key of their virtual columns is set.
+	 * @param network  The network of the nodes.
+	 * @param netNodes The nodes to set.
+	 * @param nodes    The indices of the nodes of the payload, in the same order.
+	 */
+	public void setNodeValues(CyNetwork network, List<CyNode> netNodes, int[] nodes) {
+		nodeTable.toTable(network.getDefaultNodeTable(), netNodes, nodes);
+	}
+
+	/**
+	 * Adds some of the edges of the payload, with their table values, to an
+	 * existing network. The same edge can be added between several pairs of
+	 * nodes.
+	 * @param network The network to extend.
+	 * @param edges   The indices of the edges to add.
+	 * @param sources The source node of each added edge.
+	 * @param targets The target node of each added edge.
+	 * @return The added edges, in the same order.
+	 */
+	public List<CyEdge> addEdges(CyNetwork network, int[] edges, List<CyNode> sources, List<CyNode> targets) {
+		List<CyEdge> added = new ArrayList<CyEdge>(edges.length);
+		for (int i = 0; i < edges.length; i++) {
+			added.add(network.addEdge(sources.get(i), targets.get(i), edgeDirected[edges[i]]));
+		}
+		edgeTable.toTable(network.getDefaultEdgeTable(), added, edges);
+		return added;
+	}
+
+	/**
+	 * Writes the payload to the given stream.
+	 * @throws IOException If the stream cannot be written.
+	 */
+	public void write(DataOutputStream out) throws IOException {
+		out.writeInt(MAGIC);
+		networkTable.write(out);
+		nodeTable.write(out);
+		edgeTable.write(out);
+		out.writeInt(edgeSources.length);
+		for (int i = 0; i < edgeSources.length; i++) {
+			out.writeInt(edgeSources[i]);
+			out.writeInt(edgeTargets[i]);
+			out.writeBoolean(edgeDirected[i]);
+		}
+	}
+
+	/**
+	 * Reads a payload written by {@link #write(DataOutputStream)}.
+	 * @throws IOException If the stream cannot be read or is not a payload.
+	 */
+	public static StringNetworkPayload read(DataInputStream in) throws IOException {
+		if (in.readInt() != MAGIC)
+			throw new IOException("Not a STRING network payload.");
+		TablePayload networkTable = TablePayload.read(in);
+		TablePayload nodeTable = TablePayload.read(in);
+		TablePayload edgeTable = TablePayload.read(in);
+		int numEdges = in.readInt();
+		if (numEdges != edgeTable.rowCount)
+			throw new IOException("Corrupted STRING network payload.");
+		int[] sources = new int[numEdges];
+		int[] targets = new int[numEdges];
+		boolean[] directed = new boolean[numEdges];
+		for (int i = 0; i < numEdges; i++) {
+			sources[i] = in.readInt();
+			targets[i] = in.readInt();
+			directed[i] = in.readBoolean();
+			if (sources[i] < 0 || sources[i] >= nodeTable.rowCount || targets[i] < 0 || targets[i] >= nodeTable.rowCount)
+				throw new IOException("Corrupted STRING network payload.");
+		}
+		return new StringNetworkPayload(networkTable, nodeTable, edgeTable, sources, targets, directed);
+	}
+
+	/**
+	 * Merges the payloads of overlapping queries into one network. The nodes are
+	 * identified by the value of the given column, and the values of a node are
+	 * taken from the first payload containing it. Only one edge is kept between
+	 * two nodes, and the network values are taken from the first payload.
+	 * @param payloads      The payloads to merge.
+	 * @param nodeKeyColumn The node column identifying the nodes, e.g. the STRING
+	 *                      identifier.
+	 * @return The merged payload.
+	 */
+	public static StringNetworkPayload merge(List<StringNetworkPayload> payloads, String nodeKeyColumn) {
+		Map<Object, Integer> nodeIndex = new HashMap<Object, Integer>();
+		Map<Long, Integer> edgeIndex = new HashMap<Long, Integer>();
+		List<int[]> nodeRows = new ArrayList<int[]>();
+		List<int[]> edgeRows = new ArrayList<int[]>();
+		int numNodes = 0;
+		int numEdges = 0;
+		int[] sources = new int[16];
+		int[] targets = new int[16];
+		boolean[] directed = new boolean[16];
+
+		for (StringNetworkPayload payload : payloads) {
+			int keyColumn = payload.nodeTable.names.indexOf(nodeKeyColumn);
+			int[] nodeRow = new int[payload.nodeTable.rowCount];
+			for (int i = 0; i < nodeRow.length; i++) {
+				Object key = (keyColumn < 0) ? null : payload.nodeTable.values.get(keyColumn)[i];
+				Integer known = (key == null) ? null : nodeIndex.get(key);
+				if (known != null) {
+					nodeRow[i] = known;
+				} else {
+					nodeRow[i] = numNodes++;
+					if (key != null)
+						nodeIndex.put(key, nodeRow[i]);
+				}
+			}
+			nodeRows.add(nodeRow);
+
+			int[] edgeRow = new int[payload.edgeSources.length];
+			for (int i = 0; i < edgeRow.length; i++) {
+				int source = nodeRow[payload.edgeSources[i]];
+				int target = nodeRow[payload.edgeTargets[i]];
+				long pair = ((long) Math.min(source, target) << 32) | Math.max(source, target);
+				if (edgeIndex.containsKey(pair)) {
+					edgeRow[i] = -1;
+					continue;
+				}
+				if (numEdges == sources.length) {
+					sources = Arrays.copyOf(sources, numEdges * 2);
+					targets = Arrays.copyOf(targets, numEdges * 2);
+					directed = Arrays.copyOf(directed, numEdges * 2);
+				}
+				sources[numEdges] = source;
+				targets[numEdges] = target;
+				directed[numEdges] = payload.edgeDirected[i];
+				edgeIndex.put(pair, numEdges);
+				edgeRow[i] = numEdges++;
+			}
+			edgeRows.add(edgeRow);
+		}
+
+		List<TablePayload> networkTables = new ArrayList<TablePayload>();
+		List<TablePayload> nodeTables = new ArrayList<TablePayload>();
+		List<TablePayload> edgeTables = new ArrayList<TablePayload>();
+		List<int[]> networkRows = new ArrayList<int[]>();
+		for (StringNetworkPayload payload : payloads) {
+			networkTables.add(payload.networkTable);
+			nodeTables.add(payload.nodeTable);
+			edgeTables.add(payload.edgeTable);
+			networkRows.add(new int[] { networkRows.isEmpty() ? 0 : -1 });
+		}
+		return new StringNetworkPayload(TablePayload.merge(networkTables, networkRows, 1),
+				TablePayload.merge(nodeTables, nodeRows, numNodes), TablePayload.merge(edgeTables, edgeRows, numEdges),
+				Arrays.copyOf(sources, numEdges), Arrays.copyOf(targets, numEdges), Arrays.copyOf(directed, numEdges));
+	}
+
+	/**
+	 * Builds a payload node by node and edge by edge, e.g. from a local copy of
+	 * the STRING database. The columns are created when a value is first set.
+	 */
+	public static class Builder {
+		private final ColumnsBuilder networkColumns = new ColumnsBuilder();
+		private final ColumnsBuilder nodeColumns = new ColumnsBuilder();
+		private final ColumnsBuilder edgeColumns = new ColumnsBuilder();
+		private int numNodes = 0;
+		private int numEdges = 0;
+		private int[] edgeSources = new int[16];
+		private int[] edgeTargets = new int[16];
+		private boolean[] edgeDirected = new boolean[16];
+
+		public void setNetworkValue(String column, Class<?> type, Object value) {
+			networkColumns.set(column, type, 0, value);
+		}
+
+		/** @return The index of the new node. */
+		public int addNode() {
+			return numNodes++;
+		}
+
+		public void setNodeValue(int node, String column, Class<?> type, Object value) {
+			nodeColumns.set(column, type, node, value);
+		}
+
+		/** @return The index of the new edge. */
+		public int addEdge(int source, int target, boolean directed) {
+			if (source < 0 || source >= numNodes || target < 0 || target >= numNodes)
+				throw new IllegalArgumentException("Unknown node.");
+			if (numEdges == edgeSources.length) {
+				edgeSources = Arrays.copyOf(edgeSources, numEdges * 2);
+				edgeTargets = Arrays.copyOf(edgeTargets, numEdges * 2);
+				edgeDirected = Arrays.copyOf(edgeDirected, numEdges * 2);
+			}
+			edgeSources[numEdges] = source;
+			edgeTargets[numEdges] = target;
+			edgeDirected[numEdges] = directed;
+			return numEdges++;
+		}
+
+		public void setEdgeValue(int edge, String column, Class<?> type, Object value) {
+			edgeColumns.set(column, type, edge, value);
+		}
+
+		public StringNetworkPayload build() {
+			return new StringNetworkPayload(networkColumns.build(1), nodeColumns.build(numNodes),
+					edgeColumns.build(numEdges), Arrays.copyOf(edgeSources, numEdges),
+					Arrays.copyOf(edgeTargets, numEdges), Arrays.copyOf(edgeDirected, numEdges));
+		}
+	}
+
+	private static class ColumnsBuilder {
+		private final Map<String, Byte> types = new LinkedHashMap<String, Byte>();
+		private final Map<String, List<Object>> values = new HashMap<String, List<Object>>();
+
+		void set(String column, Class<?> type, int row, Object value) {
+			byte columnType = typeOf(type);
+			if (columnType == 0)
+				throw new IllegalArgumentException("Unsupported column type " + type + ".");
+			Byte knownType = types.putIfAbsent(column, columnType);
+			if (knownType != null && knownType.byteValue() != columnType)
+				throw new IllegalArgumentException("Column " + column + " already has another type.");
+			List<Object> columnValues = values.computeIfAbsent(column, k -> new ArrayList<Object>());
+			while (columnValues.size() <= row)
+				columnValues.add(null);
+			columnValues.set(row, value);
+		}
+
+		TablePayload build(int rowCount) {
+			TablePayload payload = new TablePayload(rowCount);
+			for (String column : types.keySet()) {
+				List<Object> columnValues = values.get(column);
+				payload.names.add(column);
+				payload.types.add(types.get(column));
+				payload.isList.add(false);
+				payload.values.add(Arrays.copyOf(columnValues.toArray(), rowCount));
+			}
+			return payload;
+		}
+	}
+
+	/**
+	 * The values of the columns of a table, stored column by column.
+	 */
+	private static class TablePayload {
+		private final int rowCount;
+		private final List<String> names = new ArrayList<String>();
+		private final List<Byte> types = new ArrayList<Byte>();
+		private final List<Boolean> isList = new ArrayList<Boolean>();
+		private final List<Object[]> values = new ArrayList<Object[]>();
+
+		TablePayload(int rowCount) {
+			this.rowCount = rowCount;
+		}
+
+		static TablePayload fromTable(CyTable table, List<? extends CyIdentifiable> objects) {
+			TablePayload payload = new TablePayload(objects.size());
+			for (CyColumn col : table.getColumns()) {
+				if (col.getName().equals(CyNetwork.SUID) || col.getName().equals(CyNetwork.SELECTED))
+					continue;
+				boolean list = col.getType().equals(List.class);
+				byte type = typeOf(list ? col.getListElementType() : col.getType());
+				if (type == 0)
+					continue;
+				Object[] columnValues = new Object[objects.size()];
+				for (int i = 0; i < objects.size(); i++) {
+					CyRow row = table.getRow(objects.get(i).getSUID());
+					columnValues[i] = row.getRaw(col.getName());
+				}
+				payload.names.add(col.getName());
+				payload.types.add(type);
+				payload.isList.add(list);
+				payload.values.add(columnValues);
+			}
+			return payload;
+		}
+
+		/**
+		 * Merges tables row by row. The i-th row of the t-th table is copied to the
+		 * row <code>rows.get(t)[i]</code> (skipped if -1) unless a previous table
+		 * already set a value there.
+		 */
+		static TablePayload merge(List<TablePayload> tables, List<int[]> rows, int rowCount) {
+			TablePayload merged = new TablePayload(rowCount);
+			for (int t = 0; t < tables.size(); t++) {
+				TablePayload table = tables.get(t);
+				int[] tableRows = rows.get(t);
+				for (int c = 0; c < table.names.size(); c++) {
+					int column = merged.names.indexOf(table.names.get(c));
+					if (column < 0) {
+						column = merged.names.size();
+						merged.names.add(table.names.get(c));
+						merged.types.add(table.types.get(c));
+						merged.isList.add(table.isList.get(c));
+						merged.values.add(new Object[rowCount]);
+					} else if (!merged.types.get(column).equals(table.types.get(c))
+							|| !merged.isList.get(column).equals(table.isList.get(c))) {
+						continue;
+					}
+					Object[] from = table.values.get(c);
+					Object[] to = merged.values.get(column);
+					for (int i = 0; i < from.length; i++) {
+						if (tableRows[i] >= 0 && to[tableRows[i]] == null)
+							to[tableRows[i]] = from[i];
+					}
+				}
+			}
+			return merged;
+		}
+
+		void toTable(CyTable table, List<? extends CyIdentifiable> objects) {
+			toTable(table, objects, null);
+		}
+
+		/**
+		 * Sets the values of the given rows (all of them if <code>null</code>) to
+		 * the objects, creating the missing columns. The virtual columns joined on
+		 * another column than the primary key are skipped for the objects without
+		 * a join key, which would all share the same value.
+		 */
+		void toTable(CyTable table, List<? extends CyIdentifiable> objects, int[] rows) {
+			for (int c = 0; c < names.size(); c++) {
+				String name = names.get(c);
+				Class<?> type = classOf(types.get(c));
+				CyColumn col = table.getColumn(name);
+				if (col == null) {
+					if (isList.get(c))
+						table.createListColumn(name, type, false);
+					else
+						table.createColumn(name, type, false);
+				} else if (col.isPrimaryKey() || col.isImmutable()
+						|| !col.getType().equals(isList.get(c) ? List.class : type)) {
+					// keep the columns created with the network as they are
+					continue;
+				}
+				String joinKey = null;
+				if (col != null && col.getVirtualColumnInfo().isVirtual()
+						&& !col.getVirtualColumnInfo().getTargetJoinKey().equals(table.getPrimaryKey().getName()))
+					joinKey = col.getVirtualColumnInfo().getTargetJoinKey();
+				Object[] columnValues = values.get(c);
+				for (int i = 0; i < objects.size(); i++) {
+					Object value = columnValues[(rows == null) ? i : rows[i]];
+					if (value == null)
+						continue;
+					CyRow row = table.getRow(objects.get(i).getSUID());
+					if (joinKey != null) {
+						Object key = row.getRaw(joinKey);
+						if (key == null || "".equals(key))
+							continue;
+					}
+					row.set(name, value);
+				}
+			}
+		}
+
+		void write(DataOutputStream out) throws IOException {
+			out.writeInt(rowCount);
+			out.writeInt(names.size());
+			for (int c = 0; c < names.size(); c++) {
+				writeString(out, names.get(c));
+				byte type = types.get(c);
+				boolean list = isList.get(c);
+				out.writeByte(type);
+				out.writeBoolean(list);
+				for (Object value : values.get(c)) {
+					if (value == null) {
+						out.writeBoolean(false);
+						continue;
+					}
+					out.writeBoolean(true);
+					if (list) {
+						List<?> valueList = (List<?>) value;
+						out.writeInt(valueList.size());
+						for (Object element : valueList)
+							writeValue(out, type, element);
+					} else {
+						writeValue(out, type, value);
+					}
+				}
+			}
+		}
+
+		static TablePayload read(DataInputStream in) throws IOException {
+			TablePayload payload = new TablePayload(in.readInt());
+			if (payload.rowCount < 0)
+				throw new IOException("Corrupted STRING network payload.");
+			int numColumns = in.readInt();
+			for (int c = 0; c < numColumns; c++) {
+				String name = readString(in);
+				byte type = in.readByte();
+				boolean list = in.readBoolean();
+				if (classOf(type) == null)
+					throw new IOException("Unknown column type in STRING network payload.");
+				Object[] columnValues = new Object[payload.rowCount];
+				for (int i = 0; i < payload.rowCount; i++) {
+					if (!in.readBoolean())
+						continue;
+					if (list) {
+						int size = in.readInt();
+						List<Object> valueList = new ArrayList<Object>(size);
+						for (int j = 0; j < size; j++)
+							valueList.add(readValue(in, type));
+						columnValues[i] = valueList;
+					} else {
+						columnValues[i] = readValue(in, type);
+					}
+				}
+				payload.names.add(name);
+				payload.types.add(type);
+				payload.isList.add(list);
+				payload.values.add(columnValues);
+			}
+			return payload;
+		}
+	}
+
+	private static byte typeOf(Class<?> type) {
+		if (String.class.equals(type))
+			return TYPE_STRING;
+		if (Integer.class.equals(type))
+			return TYPE_INTEGER;
+		if (Long.class.equals(type))
+			return TYPE_LONG;
+		if (Double.class.equals(type))
+			return TYPE_DOUBLE;
+		if (Boolean.class.equals(type))
+			return TYPE_BOOLEAN;
+		return 0;
+	}
+
+	private static Class<?> classOf(byte type) {
+		switch (type) {
+		case TYPE_STRING:
+			return String.class;
+		case TYPE_INTEGER:
+			return Integer.class;
+		case TYPE_LONG:
+			return Long.class;
+		case TYPE_DOUBLE:
+			return Double.class;
+		case TYPE_BOOLEAN:
+			return Boolean.class;
+		default:
+			return null;
+		}
+	}
+
+	private static void writeValue(DataOutputStream out, byte type, Object value) throws IOException {
+		switch (type) {
+		case TYPE_STRING:
+			writeString(out, (String) value);
+			break;
+		case TYPE_INTEGER:
+			out.writeInt((Integer) value);
+			break;
+		case TYPE_LONG:
+			out.writeLong((Long) value);
+			break;
+		case TYPE_DOUBLE:
+			out.writeDouble((Double) value);
+			break;
+		case TYPE_BOOLEAN:
+			out.writeBoolean((Boolean) value);
+			break;
+		}
+	}
+
+	private static Object readValue(DataInputStream in, byte type) throws IOException {
+		switch (type) {
+		case TYPE_STRING:
+			return readString(in);
+		case TYPE_INTEGER:
+			return in.readInt();
+		case TYPE_LONG:
+			return in.readLong();
+		case TYPE_DOUBLE:
+			return in.readDouble();
+		case TYPE_BOOLEAN:
+			return in.readBoolean();
+		default:
+			throw new IOException("Unknown column type in STRING network payload.");
+		}
+	}
+
+	// DataOutputStream.writeUTF is limited to 64 KB, which some descriptions could exceed
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0)
+			throw new IOException("Corrupted STRING network payload.");
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,118 @@
+package dk.ku.cpr.proteoVisualizer.internal.model;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Identifies a STRING protein query by its species, confidence cutoff,
+ * network type, the (sorted) set of queried accessions and the version of the
+ * stringApp answering it. Two queries with the same key retrieve the same
+ * network, regardless of the order of the accessions.
+ */
+public class StringQueryKey {
+
+	private final Integer taxonID;
+	private final String species;
+	private final double cutoff;
+	private final String netType;
+	private final List<String> accessions;
+	private final String version;
+	private final String digest;
+
+	/**
+	 * @param version The version of the stringApp, which queries a given
+	 *                STRING release, <code>null</code> if it is unknown.
+	 */
+	public StringQueryKey(Integer taxonID, String species, double cutoff, String netType,
+			Collection<String> accessions, String version) {
+		this.taxonID = taxonID;
+		this.species = species;
+		this.cutoff = cutoff;
+		this.netType = netType;
+		List<String> sortedAccessions = new ArrayList<String>(accessions);
+		Collections.sort(sortedAccessions);
+		this.accessions = Collections.unmodifiableList(sortedAccessions);
+		this.version = version;
+		this.digest = computeDigest();
+	}
+
+	public Integer getTaxonID() {
+		return taxonID;
+	}
+
+	public String getSpecies() {
+		return species;
+	}
+
+	public double getCutoff() {
+		return cutoff;
+	}
+
+	public String getNetType() {
+		return netType;
+	}
+
+	/** @return The sorted accessions of the query. */
+	public List<String> getAccessions() {
+		return accessions;
+	}
+
+	/** @return The version of the stringApp, <code>null</code> if it is unknown. */
+	public String getVersion() {
+		return version;
+	}
+
+	/** @return The hexadecimal SHA-256 digest of the key, usable as a file name. */
+	public String getDigest() {
+		return digest;
+	}
+
+	private String computeDigest() {
+		MessageDigest md;
+		try {
+			md = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+		// the cutoff is rounded such that 0.4 and 0.40000001 are the same query
+		String settings = taxonID + "\t" + (species == null ? "" : species.toLowerCase(Locale.ROOT)) + "\t"
+				+ String.format(Locale.ROOT, "%.3f", cutoff) + "\t" + netType + "\t" + version + "\n";
+		md.update(settings.getBytes(StandardCharsets.UTF_8));
+		for (String accession : accessions) {
+			md.update(accession.getBytes(StandardCharsets.UTF_8));
+			md.update((byte) '\n');
+		}
+		StringBuilder hex = new StringBuilder();
+		for (byte b : md.digest()) {
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+			hex.append(Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof StringQueryKey))
+			return false;
+		return digest.equals(((StringQueryKey) obj).digest);
+	}
+
+	@Override
+	public int hashCode() {
+		return digest.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return accessions.size() + " accessions, taxon " + taxonID + ", cutoff " + cutoff + ", " + netType + ", stringApp " + version;
+	}
+}
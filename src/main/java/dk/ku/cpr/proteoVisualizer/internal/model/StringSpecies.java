@@ -1,21 +1,38 @@
 package dk.ku.cpr.proteoVisualizer.internal.model;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.apache.log4j.Logger;
+import org.cytoscape.application.CyApplicationConfiguration;
+import org.cytoscape.application.CyUserLog;
 import org.cytoscape.work.FinishStatus;
 import org.cytoscape.work.ObservableTask;
+import org.cytoscape.work.ServiceProperties;
+import org.cytoscape.work.TaskFactory;
 import org.cytoscape.work.TaskObserver;
 
 
 public class StringSpecies implements Comparable<StringSpecies> {
+	private static final Logger logger = Logger.getLogger(CyUserLog.NAME);
 	private static Map<String, StringSpecies> nameToSpeciesMap;
 	private static List<StringSpecies> modelSpecies;
 	private static List<StringSpecies> allSpecies;
 	private static StringSpecies humanSpecies;
+	// fields of the species saved in the snapshot, as given by the stringApp
+	private static final String[] SNAPSHOT_FIELDS = new String[] {"taxonomyId", "scientificName", "abbreviatedName"};
 
 	private Integer taxonID;
 	// TODO: check species names and sync with current version
@@ -44,10 +61,13 @@ public class StringSpecies implements Comparable<StringSpecies> {
 		return retValue;
 	}
 
-	public static List<StringSpecies> readSpecies(List<Map<String, String>> speciesFromTask) throws Exception {
-		modelSpecies = new ArrayList<StringSpecies>();
-		allSpecies = new ArrayList<StringSpecies>();
-		nameToSpeciesMap = new TreeMap<String, StringSpecies>();
+	public static synchronized List<StringSpecies> readSpecies(List<Map<String, String>> speciesFromTask) {
+		// the species can be read again while they are used (e.g. from the snapshot, then from the stringApp),
+		// so the new collections are only published once they are complete
+		List<StringSpecies> modelSpecies = new ArrayList<StringSpecies>();
+		List<StringSpecies> allSpecies = new ArrayList<StringSpecies>();
+		Map<String, StringSpecies> nameToSpeciesMap = new TreeMap<String, StringSpecies>();
+		StringSpecies humanSpecies = StringSpecies.humanSpecies;
 
 		for (Map<String, String> r : speciesFromTask) {
 			StringSpecies species = new StringSpecies(r);
@@ -71,6 +91,10 @@ public class StringSpecies implements Comparable<StringSpecies> {
 		Collections.sort(allSpecies);
 		Collections.sort(modelSpecies);
 
+		StringSpecies.nameToSpeciesMap = nameToSpeciesMap;
+		StringSpecies.modelSpecies = modelSpecies;
+		StringSpecies.allSpecies = allSpecies;
+		StringSpecies.humanSpecies = humanSpecies;
 		return allSpecies;
 	}
 
@@ -124,33 +148,111 @@ public class StringSpecies implements Comparable<StringSpecies> {
 		return this.scientificName;
 	}
 	
-	public static void loadSpecies(final AppManager manager) {
-		LoadSpecies ls = new LoadSpecies(manager);
-		Thread t = new Thread(ls);
-		t.start();
+	/**
+	 * Loads the species from the snapshot saved by the last successful load, such
+	 * that the search factories can be registered without waiting for the
+	 * stringApp.
+	 * @param manager The app manager.
+	 * @return <code>true</code> if the snapshot could be read.
+	 */
+	public static boolean loadSpeciesSnapshot(final AppManager manager) {
+		File snapshot = getSpeciesSnapshot(manager);
+		if (!snapshot.isFile())
+			return false;
+		List<Map<String, String>> speciesData = new ArrayList<Map<String, String>>();
+		try (BufferedReader reader = Files.newBufferedReader(snapshot.toPath(), StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split("\t", -1);
+				if (fields.length != SNAPSHOT_FIELDS.length)
+					continue;
+				Map<String, String> data = new HashMap<String, String>();
+				for (int i = 0; i < fields.length; i++)
+					data.put(SNAPSHOT_FIELDS[i], fields[i]);
+				speciesData.add(data);
+			}
+			if (speciesData.isEmpty())
+				return false;
+			StringSpecies.readSpecies(speciesData);
+		} catch (IOException | NumberFormatException e) {
+			// the species are loaded from the stringApp instead
+			logger.warn("Could not read the species snapshot " + snapshot + ": " + e.getMessage());
+			return false;
+		}
+		manager.registerSearchTaskFactories();
+		return true;
+	}
+
+	private static void saveSpeciesSnapshot(final AppManager manager, List<Map<String, String>> speciesData) throws IOException {
+		File snapshot = getSpeciesSnapshot(manager);
+		List<String> lines = new ArrayList<String>();
+		for (Map<String, String> data : speciesData) {
+			StringBuilder line = new StringBuilder();
+			for (int i = 0; i < SNAPSHOT_FIELDS.length; i++) {
+				String value = data.get(SNAPSHOT_FIELDS[i]);
+				if (i > 0)
+					line.append('\t');
+				line.append(value == null ? "" : value.replace('\t', ' ').replace('\n', ' '));
+			}
+			lines.add(line.toString());
+		}
+		snapshot.getParentFile().mkdirs();
+		Path tmpFile = Files.createTempFile(snapshot.getParentFile().toPath(), "species", ".tmp");
+		Files.write(tmpFile, lines, StandardCharsets.UTF_8);
+		Files.move(tmpFile, snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private static File getSpeciesSnapshot(final AppManager manager) {
+		File configDir = manager.getService(CyApplicationConfiguration.class).getAppConfigurationDirectoryLocation(AppManager.class);
+		return new File(configDir, SharedProperties.SPECIES_SNAPSHOT);
 	}
 
-	static class LoadSpecies implements Runnable, TaskObserver {
+	/**
+	 * Loads the species from the stringApp once its <code>list species</code>
+	 * command is registered, instead of polling for the command. The listener
+	 * is notified of every {@link TaskFactory} registered as a command.
+	 */
+	public static class SpeciesLoader implements TaskObserver {
 		final AppManager manager;
-		LoadSpecies(final AppManager manager) { 
-			this.manager = manager; 
+		private final AtomicBoolean loading;
+
+		public SpeciesLoader(final AppManager manager) {
+			this.manager = manager;
+			this.loading = new AtomicBoolean(false);
 		}
 
-		@Override
-		public void run() {
-			while (!manager.haveCommand("string", "list species")) {
-				try {
-					Thread.sleep(500);
-				} catch (Exception e) {}
-			}
+		public void addTaskFactory(TaskFactory factory, Map<?, ?> props) {
+			if (!SharedProperties.STRINGAPP_NAMESPACE.equals(props.get(ServiceProperties.COMMAND_NAMESPACE))
+					|| !SharedProperties.STRING_CMD_LIST_SPECIES.equals(props.get(ServiceProperties.COMMAND)))
+				return;
+			load();
+		}
+
+		public void removeTaskFactory(TaskFactory factory, Map<?, ?> props) {
+			// Do nothing, we keep the species we have
+		}
 
-			manager.executeCommand("string", "list species", null, this, true);
+		/** Runs the <code>list species</code> command in the background. */
+		public void load() {
+			if (!loading.compareAndSet(false, true))
+				return;
+			// the listener is called by the framework, so the command is executed on another thread
+			Thread t = new Thread(() -> {
+				try {
+					manager.executeCommand(SharedProperties.STRINGAPP_NAMESPACE, SharedProperties.STRING_CMD_LIST_SPECIES,
+							null, this, true);
+				} finally {
+					loading.set(false);
+				}
+			});
+			t.start();
 		}
 
 		@Override
 		public void allFinished(FinishStatus status) {			
 		}
 
+		@SuppressWarnings("unchecked")
 		@Override
 		public void taskFinished(ObservableTask task) {
 			if (task.getClass().getSimpleName().equals("GetSpeciesTask")) {
@@ -160,10 +262,15 @@ public class StringSpecies implements Comparable<StringSpecies> {
 				} catch (Exception e) {
 					throw new RuntimeException("Can't read species information");
 				}
-				// now that species are loaded, register the search factories 
+				try {
+					saveSpeciesSnapshot(manager, res);
+				} catch (IOException e) {
+					// the species are loaded again on the next start
+					logger.warn("Could not save the species snapshot " + getSpeciesSnapshot(manager) + ": " + e.getMessage());
+				}
+				// now that species are loaded, register the search factories (if not done from the snapshot)
 				manager.registerSearchTaskFactories();
 			}
 		}
 	}
 }
-
@@ -0,0 +1,120 @@
+package dk.ku.cpr.proteoVisualizer.internal.tasks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.cytoscape.work.AbstractTask;
+import org.cytoscape.work.ObservableTask;
+import org.cytoscape.work.ProvidesTitle;
+import org.cytoscape.work.TaskMonitor;
+import org.cytoscape.work.TaskMonitor.Level;
+import org.cytoscape.work.Tunable;
+import org.cytoscape.work.json.JSONResult;
+
+import dk.ku.cpr.proteoVisualizer.internal.model.AppManager;
+import dk.ku.cpr.proteoVisualizer.internal.utils.StringDbIndexBuilder;
+
+/**
+ * Indexes the flat files downloaded from STRING for one species, such that
+ * networks can be retrieved without access to the STRING server, or at least
+ * accessions resolved to STRING identifiers before querying it.
+ */
+public class BuildOfflineIndexTask extends AbstractTask implements ObservableTask {
+
+	private AppManager manager;
+
+	@Tunable(description = "Protein info file",
+	         longDescription = "The protein.info file of the species, downloaded from STRING (plain or gzipped). Needed to retrieve networks offline.",
+	         exampleStringValue = "/home/user/9606.protein.info.v12.0.txt.gz",
+	         params = "input=true;fileCategory=unspecified")
+	public File infoFile = null;
+
+	@Tunable(description = "Protein aliases file", required = true,
+	         longDescription = "The protein.aliases file of the species, downloaded from STRING (plain or gzipped).",
+	         exampleStringValue = "/home/user/9606.protein.aliases.v12.0.txt.gz",
+	         params = "input=true;fileCategory=unspecified")
+	public File aliasesFile = null;
+
+	@Tunable(description = "Protein links file",
+	         longDescription = "The protein.links.detailed file of the species, downloaded from STRING (plain or gzipped). Needed to retrieve networks offline. Without it, the index is only used to resolve the accessions before querying STRING.",
+	         exampleStringValue = "/home/user/9606.protein.links.detailed.v12.0.txt.gz",
+	         params = "input=true;fileCategory=unspecified")
+	public File linksFile = null;
+
+	@Tunable(description = "Physical links file",
+	         longDescription = "The protein.physical.links.detailed file of the species, needed to retrieve physical subnetworks offline.",
+	         exampleStringValue = "/home/user/9606.protein.physical.links.detailed.v12.0.txt.gz",
+	         params = "input=true;fileCategory=unspecified")
+	public File physicalLinksFile = null;
+
+	@Tunable(description = "Index directory",
+	         longDescription = "The directory where the indices are stored, one sub-directory per species. By default, the indices are stored in the configuration directory of the app.",
+	         exampleStringValue = "/home/user/string-offline")
+	public File indexDirectory = null;
+
+	private File builtDirectory;
+	private int taxonID;
+	private int proteinCount;
+
+	public BuildOfflineIndexTask(AppManager manager) {
+		this.manager = manager;
+		this.builtDirectory = null;
+	}
+
+	@ProvidesTitle
+	public String getName() {
+		return "Build offline STRING index";
+	}
+
+	@Override
+	public void run(TaskMonitor taskMonitor) throws Exception {
+		taskMonitor.setTitle(this.getName());
+
+		if (aliasesFile == null) {
+			taskMonitor.showMessage(Level.ERROR, "The protein aliases file is required.");
+			return;
+		}
+		if (linksFile != null && infoFile == null) {
+			taskMonitor.showMessage(Level.ERROR, "The protein info file is required to index the links.");
+			return;
+		}
+		File root = (indexDirectory == null) ? manager.getOfflineIndexDirectory() : indexDirectory;
+
+		StringDbIndexBuilder builder = new StringDbIndexBuilder(infoFile, aliasesFile, linksFile, physicalLinksFile);
+		builder.setStatusListener(message -> taskMonitor.setStatusMessage(message));
+		try {
+			builtDirectory = builder.build(root);
+		} catch (IOException e) {
+			taskMonitor.showMessage(Level.ERROR, "Could not build the offline STRING index: " + e.getMessage());
+			return;
+		}
+		manager.resetStringDbIndex(builtDirectory);
+		taxonID = builder.getTaxonID();
+		proteinCount = builder.getProteinCount();
+		taskMonitor.showMessage(Level.INFO, "Indexed " + proteinCount + " proteins of taxon " + taxonID + " in "
+				+ builtDirectory.getAbsolutePath() + ".");
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <R> R getResults(Class<? extends R> type) {
+		if (builtDirectory == null)
+			return null;
+		if (type.equals(String.class)) {
+			return (R) ("Indexed " + proteinCount + " proteins of taxon " + taxonID + " in " + builtDirectory.getAbsolutePath() + ".");
+		} else if (type.equals(JSONResult.class)) {
+			JSONResult res = () -> {
+				return "{\"taxonID\":" + taxonID + ",\"proteins\":" + proteinCount + ",\"directory\":\""
+						+ builtDirectory.getAbsolutePath().replace("\\", "\\\\").replace("\"", "\\\"") + "\"}";
+			};
+			return (R) res;
+		}
+		return null;
+	}
+
+	@Override
+	public List<Class<?>> getResultClasses() {
+		return List.of(String.class, JSONResult.class);
+	}
+}
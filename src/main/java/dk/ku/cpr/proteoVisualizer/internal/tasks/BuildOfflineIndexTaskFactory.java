@@ -0,0 +1,21 @@
+package dk.ku.cpr.proteoVisualizer.internal.tasks;
+
+import org.cytoscape.work.AbstractTaskFactory;
+import org.cytoscape.work.TaskIterator;
+
+import dk.ku.cpr.proteoVisualizer.internal.model.AppManager;
+
+public class BuildOfflineIndexTaskFactory extends AbstractTaskFactory {
+	private AppManager manager;
+
+	public BuildOfflineIndexTaskFactory(AppManager manager) {
+		super();
+		this.manager = manager;
+	}
+
+	@Override
+	public TaskIterator createTaskIterator() {
+		return new TaskIterator(new BuildOfflineIndexTask(this.manager));
+	}
+
+}
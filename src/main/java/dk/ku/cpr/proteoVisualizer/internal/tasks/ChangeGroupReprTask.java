@@ -19,7 +19,9 @@ import org.cytoscape.work.Tunable;
 import org.cytoscape.work.util.ListSingleSelection;
 
 import dk.ku.cpr.proteoVisualizer.internal.model.AppManager;
+import dk.ku.cpr.proteoVisualizer.internal.model.AttributeAggregation;
 import dk.ku.cpr.proteoVisualizer.internal.model.SharedProperties;
+import dk.ku.cpr.proteoVisualizer.internal.utils.GroupAttributeAggregator;
 
 public class ChangeGroupReprTask extends AbstractTask {
 
@@ -97,11 +99,18 @@ public class ChangeGroupReprTask extends AbstractTask {
 		if (network == null || !groupNodesMap.containsKey(groupNodesList.getSelectedValue()))
 			return;
 		CyNode newRepr = groupNodesMap.get(groupNodesList.getSelectedValue());
-		for (String attr : SharedProperties.nodeAttrinbutesToCopyString) {
-			if (network.getDefaultNodeTable().getColumn(attr) == null)
-				continue;
-			network.getRow(groupNode).set(attr,
-					network.getRow(newRepr).get(attr, String.class));					
+		// the columns copied from the representative node, with the aggregation the network was created with
+		String aggregation = null;
+		if (network.getDefaultNetworkTable().getColumn(SharedProperties.AGGREGATION) != null)
+			aggregation = network.getRow(network).get(SharedProperties.AGGREGATION, String.class);
+		Map<String, AttributeAggregation> specs;
+		try {
+			specs = GroupAttributeAggregator.parseSpecs(aggregation);
+		} catch (IllegalArgumentException e) {
+			specs = new HashMap<String, AttributeAggregation>();
+		}
+		for (String attr : new GroupAttributeAggregator(network.getDefaultNodeTable(), specs).getCopiedColumns()) {
+			network.getRow(groupNode).set(attr, network.getRow(newRepr).getRaw(attr));
 		}
 	}
 
@@ -0,0 +1,729 @@
+package dk.ku.cpr.proteoVisualizer.internal.tasks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.log4j.Logger;
+import org.cytoscape.application.CyUserLog;
+import org.cytoscape.command.StringToModel;
+import org.cytoscape.event.CyEventHelper;
+import org.cytoscape.group.CyGroup;
+import org.cytoscape.group.CyGroupFactory;
+import org.cytoscape.group.CyGroupManager;
+import org.cytoscape.model.CyEdge;
+import org.cytoscape.model.CyEdge.Type;
+import org.cytoscape.model.CyNetwork;
+import org.cytoscape.model.CyNode;
+import org.cytoscape.model.subnetwork.CyRootNetwork;
+import org.cytoscape.model.subnetwork.CySubNetwork;
+import org.cytoscape.view.model.CyNetworkView;
+import org.cytoscape.view.model.View;
+import org.cytoscape.work.ContainsTunables;
+import org.cytoscape.work.ProvidesTitle;
+import org.cytoscape.work.TaskMonitor;
+import org.cytoscape.work.TaskMonitor.Level;
+import org.cytoscape.work.Tunable;
+import org.cytoscape.work.util.ListSingleSelection;
+
+import dk.ku.cpr.proteoVisualizer.internal.model.AppManager;
+import dk.ku.cpr.proteoVisualizer.internal.model.ProteinGroupMapping;
+import dk.ku.cpr.proteoVisualizer.internal.model.SharedProperties;
+import dk.ku.cpr.proteoVisualizer.internal.model.StringNetworkPayload;
+import dk.ku.cpr.proteoVisualizer.internal.model.StringSpecies;
+import dk.ku.cpr.proteoVisualizer.internal.utils.LazyMemberEdges;
+import dk.ku.cpr.proteoVisualizer.internal.utils.LongIntHashMap;
+import dk.ku.cpr.proteoVisualizer.internal.utils.SharedNodeAttributes;
+import dk.ku.cpr.proteoVisualizer.internal.utils.StringDbIndex;
+
+/**
+ * Adds new protein groups to a network retrieved with this app, without
+ * retrieving the whole network again. STRING is only queried for the
+ * accessions that are not in the network yet. The edges to the existing
+ * proteins are taken from the offline STRING index of the species if there is
+ * one, otherwise the STRING identifiers of the network are queried together
+ * with the new accessions. Only the new protein groups are created, and only
+ * the groups connected to them are aggregated again.
+ */
+public class ExtendStringNetworkTask extends RetrieveStringNetworkTask {
+	private final Logger logger = Logger.getLogger(CyUserLog.NAME);
+
+	@Tunable(description = "Network", context = "nogui",
+	         longDescription = StringToModel.CY_NETWORK_LONG_DESCRIPTION,
+	         exampleStringValue = StringToModel.CY_NETWORK_EXAMPLE_STRING)
+	public CyNetwork network = null;
+
+	@Tunable(description = "Protein query",
+	         longDescription="Comma separated list of the new protein groups. The protein groups already in the network are ignored. REQUIRED if 'queryFile' is not used.",
+					 exampleStringValue="P04637,P38398;P51587")
+	public String query = null;
+
+	@Tunable(description = "Protein query file",
+	         longDescription="File with one new protein group per line. The protein groups already in the network are ignored. REQUIRED if 'query' is not used.",
+					 exampleStringValue="/home/user/new_protein_groups.txt",
+					 params="input=true;fileCategory=unspecified")
+	public File queryFile = null;
+
+	@Tunable(description = "Protein group delimiter",
+	         longDescription="Delimiter used to separate accessions in the same protein group.",
+					 exampleStringValue=";")
+	public ListSingleSelection<String> delimiterPG;
+
+	@ContainsTunables
+	public QueryTunables queryTunables = new QueryTunables();
+
+	@Tunable(description = "Chunk size",
+	         longDescription="Number of proteins of the network queried together with the new accessions, when there is no offline STRING index of the species. The proteins of large networks are split into chunks, and the new accessions are queried with each chunk. This keeps each query small, but all the proteins of the network are still sent to STRING, so the total cost of the queries is not reduced. Use 0 to send the query at once. Default: 0.",
+					 exampleStringValue="2000")
+	public Integer chunkSize;
+
+	@Tunable(description="Identifier of the species to query. By default, the species of the network.",
+			required=false,
+			tooltip="You can put here the taxon identifier of the species you want to query.",
+			exampleStringValue="9606",
+			gravity=1.0)
+	public Integer taxonID;
+
+	@Tunable(description="Name of the species to query. By default, the species of the network.",
+			required=false,
+			tooltip="You can put here the name of the species you want to query.",
+			exampleStringValue="Homo sapiens",
+			gravity=1.0)
+	public String species;
+
+	// the network before the extension
+	private Set<String> existingProteinGroups;
+	private Map<String, List<CyNode>> existingNodesByStringID;
+	private Map<String, List<CyNode>> existingNodesByAccession;
+	private Map<CyNode, CyGroup> existingGroupForNode;
+
+	// the changes of the network
+	private List<CyNode> addedNodes;
+	private Set<CyNode> nodesToLayOut;
+	private Set<CyGroup> affectedGroups;
+	private Set<CyGroup> expandedGroups;
+	private int numAddedEdges;
+	private int numNewGroups;
+
+	public ExtendStringNetworkTask(AppManager manager) {
+		super(manager);
+		delimiterPG = new ListSingleSelection<String>(SharedProperties.pg_delimiters);
+		delimiterPG.setSelectedValue(SharedProperties.DEFAULT_PG_DELIMITER);
+		this.addedNodes = new ArrayList<CyNode>();
+		this.nodesToLayOut = new HashSet<CyNode>();
+		this.affectedGroups = new LinkedHashSet<CyGroup>();
+		this.expandedGroups = new LinkedHashSet<CyGroup>();
+		this.numAddedEdges = 0;
+		this.numNewGroups = 0;
+	}
+
+	@ProvidesTitle
+	public String getName() {
+		return "Extend STRING Network";
+	}
+
+	@Override
+	public void run(TaskMonitor taskMonitor) throws Exception {
+		taskMonitor.setTitle(this.getName());
+
+		if (network == null)
+			network = manager.getCurrentNetwork();
+		if (network == null || network.getDefaultNetworkTable().getColumn(SharedProperties.COLLAPSED) == null
+				|| network.getDefaultNodeTable().getColumn(SharedProperties.PROTEINGROUP) == null) {
+			taskMonitor.showMessage(Level.ERROR, "The network was not retrieved with Proteo Visualizer.");
+			return;
+		}
+
+		if (query != null) {
+			this.setQuery(query);
+		}
+		if (queryFile != null) {
+			this.setQueryFile(queryFile);
+		}
+		if (delimiterPG != null) {
+			this.setDelimiter(delimiterPG.getSelectedValue());
+		}
+		queryTunables.applyTo(this);
+		if (chunkSize != null) {
+			this.setChunkSize(chunkSize.intValue());
+		}
+
+		// the new proteins are retrieved with the settings of the network
+		Double cutoff = getNetworkValue(SharedProperties.CUTOFF, Double.class);
+		if (cutoff != null)
+			this.setCutoff(cutoff.doubleValue());
+		Boolean collapsed = getNetworkValue(SharedProperties.COLLAPSED, Boolean.class);
+		this.setCollapsed(collapsed != null && collapsed.booleanValue());
+		String netType = getNetworkValue(SharedProperties.NETWORK_TYPE, String.class);
+		if (netType != null)
+			this.setNetType(netType);
+		if (taxonID != null || species != null) {
+			this.setTaxonID(taxonID);
+			this.setSpecies(species);
+		} else {
+			String netSpecies = getNetworkSpecies();
+			if (netSpecies != null) {
+				StringSpecies stringSpecies = StringSpecies.getSpecies(netSpecies);
+				this.setSpecies(netSpecies);
+				this.setTaxonID(stringSpecies == null ? null : stringSpecies.getTaxonID());
+			}
+		}
+		String aggregation = getNetworkValue(SharedProperties.AGGREGATION, String.class);
+		if (aggregation != null)
+			this.setAggregation(aggregation);
+		String netName = getNetworkValue(CyNetwork.NAME, String.class);
+		this.setNetworkName(netName == null ? "" : netName);
+		// the query depends on the network, so it is neither cached nor shared
+		this.setUseCache(false);
+
+		super.run(taskMonitor);
+
+		taskMonitor.setStatusMessage("Added " + this.addedNodes.size() + " proteins, " + this.numAddedEdges
+				+ " edges and " + this.numNewGroups + " protein groups.");
+	}
+
+	private <T> T getNetworkValue(String column, Class<T> type) {
+		if (network.getDefaultNetworkTable().getColumn(column) == null)
+			return null;
+		return network.getRow(network).get(column, type);
+	}
+
+	// the species of the network, or of its first protein if the network does not have one
+	private String getNetworkSpecies() {
+		String netSpecies = getNetworkValue(SharedProperties.SPECIES, String.class);
+		if (netSpecies != null || network.getDefaultNodeTable().getColumn(SharedProperties.SPECIES) == null)
+			return netSpecies;
+		for (CyNode node : network.getNodeList()) {
+			netSpecies = network.getRow(node).get(SharedProperties.SPECIES, String.class);
+			if (netSpecies != null && !netSpecies.isEmpty())
+				return netSpecies;
+		}
+		return null;
+	}
+
+	/**
+	 * Reads the new protein groups, and collects the protein groups, proteins
+	 * and groups already in the network.
+	 * @return The protein groups that are not in the network yet.
+	 */
+	@Override
+	protected ProteinGroupMapping parseStage(TaskMonitor taskMonitor) {
+		ProteinGroupMapping mapping = super.parseStage(taskMonitor);
+		this.retrievedNetwork = network;
+
+		// the protein nodes are the nodes of the network and the members of its groups
+		CyGroupManager groupManager = manager.getService(CyGroupManager.class);
+		this.existingGroupForNode = new HashMap<CyNode, CyGroup>();
+		Set<CyNode> groupNodes = new HashSet<CyNode>();
+		for (CyGroup group : groupManager.getGroupSet(network)) {
+			groupNodes.add(group.getGroupNode());
+			for (CyNode node : group.getNodeList())
+				this.existingGroupForNode.put(node, group);
+		}
+		Set<CyNode> proteinNodes = new LinkedHashSet<CyNode>();
+		for (CyNode node : network.getNodeList()) {
+			if (!groupNodes.contains(node))
+				proteinNodes.add(node);
+		}
+		proteinNodes.addAll(this.existingGroupForNode.keySet());
+
+		this.existingProteinGroups = new HashSet<String>();
+		this.existingNodesByStringID = new HashMap<String, List<CyNode>>();
+		this.existingNodesByAccession = new HashMap<String, List<CyNode>>();
+		boolean hasStringID = network.getDefaultNodeTable().getColumn(SharedProperties.STRINGID) != null;
+		boolean hasMatchedID = network.getDefaultNodeTable().getColumn(SharedProperties.MATCHEDID) != null;
+		for (CyNode node : proteinNodes) {
+			String pg = network.getRow(node).get(SharedProperties.PROTEINGROUP, String.class);
+			if (pg != null && !pg.isEmpty())
+				this.existingProteinGroups.add(pg);
+			String stringID = hasStringID ? network.getRow(node).get(SharedProperties.STRINGID, String.class) : null;
+			if (stringID != null)
+				this.existingNodesByStringID.computeIfAbsent(stringID, k -> new ArrayList<CyNode>()).add(node);
+			String accession = hasMatchedID ? network.getRow(node).get(SharedProperties.MATCHEDID, String.class) : null;
+			if (accession != null && !accession.isEmpty())
+				this.existingNodesByAccession.computeIfAbsent(accession, k -> new ArrayList<CyNode>()).add(node);
+		}
+
+		// keep the new protein groups only
+		ProteinGroupMapping.Builder builder = new ProteinGroupMapping.Builder();
+		for (int pgIndex = 0; pgIndex < mapping.getProteinGroupCount(); pgIndex++) {
+			String pg = mapping.getProteinGroup(pgIndex);
+			if (this.existingProteinGroups.contains(pg))
+				continue;
+			builder.beginProteinGroup(pg);
+			for (int i = 0; i < mapping.getMemberCount(pgIndex); i++)
+				builder.addProtein(mapping.getProtein(mapping.getMember(pgIndex, i)));
+			builder.endProteinGroup();
+		}
+		ProteinGroupMapping newMapping = builder.build();
+		if (newMapping.getProteinGroupCount() == 0)
+			throw new StageException("All the protein groups are already in the network.");
+		taskMonitor.setStatusMessage((mapping.getProteinGroupCount() - newMapping.getProteinGroupCount())
+				+ " of the protein groups are already in the network.");
+		this.protected_pgMapping = newMapping;
+		return newMapping;
+	}
+
+	/**
+	 * Resolves the accessions that are not in the network yet.
+	 * @return The query of the new accessions, empty if there is none.
+	 */
+	@Override
+	protected String resolveStage(TaskMonitor taskMonitor, ProteinGroupMapping mapping) {
+		checkCancelled();
+		taskMonitor.setProgress(0.1);
+		List<String> newProteins = new ArrayList<String>();
+		for (String protein : mapping.getProteins()) {
+			if (!this.existingNodesByAccession.containsKey(protein))
+				newProteins.add(protein);
+		}
+		taskMonitor.setStatusMessage(newProteins.size() + " of the " + mapping.getProteinCount()
+				+ " accessions of the new protein groups are not in the network yet.");
+		if (newProteins.isEmpty())
+			return "";
+		return resolveProteins(taskMonitor, newProteins);
+	}
+
+	/**
+	 * Queries the new accessions, with the edges to the proteins of the network
+	 * from the offline STRING index if there is one. Otherwise the new
+	 * accessions are queried together with the STRING identifiers of the
+	 * network, by chunks of identifiers if the chunk size is set.
+	 */
+	@Override
+	protected CompletableFuture<StringNetworkPayload> fetchStage(TaskMonitor taskMonitor, String query) {
+		checkCancelled();
+		taskMonitor.setProgress(0.2);
+		if (query.isEmpty())
+			return CompletableFuture.completedFuture(null);
+		return CompletableFuture.supplyAsync(() -> fetchExtension(taskMonitor, query), manager.getExecutor());
+	}
+
+	private StringNetworkPayload fetchExtension(TaskMonitor taskMonitor, String query) {
+		List<String> existingIDs = new ArrayList<String>(this.existingNodesByStringID.keySet());
+		if (this.protected_offline) {
+			List<String> terms = new ArrayList<String>(Arrays.asList(query.split(",")));
+			terms.addAll(existingIDs);
+			try {
+				StringDbIndex index = manager.getStringDbIndex(this.protected_offlineDirectory, getQueryTaxonID());
+				return index.query(terms, this.protected_species, this.protected_cutoff, this.protected_netType,
+						this.protected_netName);
+			} catch (IOException e) {
+				throw new StageException("Could not use the offline STRING index: " + e.getMessage());
+			}
+		}
+
+		StringDbIndex index = getLinksIndex();
+		if (index != null) {
+			StringNetworkPayload payload = fetchQueries(Arrays.asList(query), taskMonitor::setStatusMessage);
+			taskMonitor.setStatusMessage("Adding the edges to the proteins of the network from the offline STRING index.");
+			return addIndexEdges(index, payload, existingIDs);
+		}
+
+		int size = (this.protected_chunkSize > 0) ? this.protected_chunkSize : Math.max(1, existingIDs.size());
+		List<String> queries = new ArrayList<String>();
+		for (int i = 0; i < existingIDs.size(); i += size)
+			queries.add(query + "," + String.join(",", existingIDs.subList(i, Math.min(existingIDs.size(), i + size))));
+		if (queries.isEmpty())
+			queries.add(query);
+		return fetchQueries(queries, taskMonitor::setStatusMessage);
+	}
+
+	/**
+	 * @return The offline STRING index of the species, if it exists and can
+	 *         answer queries, otherwise <code>null</code>.
+	 */
+	private StringDbIndex getLinksIndex() {
+		Integer taxonID = getQueryTaxonID();
+		if (taxonID == null)
+			return null;
+		try {
+			StringDbIndex index = manager.getStringDbIndex(this.protected_offlineDirectory, taxonID);
+			return index.hasLinks() ? index : null;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Adds the edges between the new proteins of the payload and the existing
+	 * proteins, from the offline STRING index. The nodes and the edges between
+	 * the new proteins are the ones retrieved from STRING.
+	 */
+	private StringNetworkPayload addIndexEdges(StringDbIndex index, StringNetworkPayload payload,
+			List<String> existingIDs) {
+		List<String> terms = new ArrayList<String>();
+		for (int node = 0; node < payload.getNodeCount(); node++) {
+			Object stringID = payload.getNodeValue(node, SharedProperties.STRINGID);
+			if (stringID != null)
+				terms.add(stringID.toString());
+		}
+		terms.addAll(existingIDs);
+		try {
+			StringNetworkPayload indexPayload = index.query(terms, this.protected_species, this.protected_cutoff,
+					this.protected_netType, this.protected_netName);
+			// the values of the retrieved payload are kept for the nodes and edges in both
+			return StringNetworkPayload.merge(Arrays.asList(payload, indexPayload), SharedProperties.STRINGID);
+		} catch (IOException e) {
+			throw new StageException("Could not use the offline STRING index: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Adds the new proteins to the network, with their edges to each other and
+	 * to the existing proteins (and their copies). The collapsed groups of the
+	 * existing proteins connected to them are expanded first.
+	 */
+	@Override
+	protected CyNetwork buildStage(TaskMonitor taskMonitor, StringNetworkPayload payload) {
+		checkCancelled();
+		taskMonitor.setProgress(0.5);
+		CyRootNetwork rootNetwork = ((CySubNetwork) network).getRootNetwork();
+		ProteinGroupMapping mapping = this.protected_pgMapping;
+
+		// the existing proteins that are connected to a new protein, or duplicated for a new protein group
+		Set<CyNode> touchedNodes = new HashSet<CyNode>();
+		List<CyNode> payloadNodes = new ArrayList<CyNode>();
+		List<List<CyNode>> existingPayloadNodes = new ArrayList<List<CyNode>>();
+		List<Integer> newPayloadNodes = new ArrayList<Integer>();
+		if (payload != null) {
+			for (int node = 0; node < payload.getNodeCount(); node++) {
+				Object stringID = payload.getNodeValue(node, SharedProperties.STRINGID);
+				List<CyNode> existing = (stringID == null) ? null : this.existingNodesByStringID.get(stringID);
+				existingPayloadNodes.add(existing);
+				payloadNodes.add(null);
+				if (existing == null) {
+					newPayloadNodes.add(node);
+					continue;
+				}
+				// a new accession of a protein that is already in the network, with all its copies
+				Object queryTerm = payload.getNodeValue(node, SharedProperties.QUERYTERM);
+				if (queryTerm != null && mapping.getProteinIndex(queryTerm.toString()) >= 0)
+					this.existingNodesByAccession.putIfAbsent(queryTerm.toString(), new ArrayList<CyNode>(existing));
+			}
+			for (int edge = 0; edge < payload.getEdgeCount(); edge++) {
+				List<CyNode> sources = existingPayloadNodes.get(payload.getEdgeSource(edge));
+				List<CyNode> targets = existingPayloadNodes.get(payload.getEdgeTarget(edge));
+				if (sources != null && targets == null)
+					touchedNodes.addAll(sources);
+				else if (sources == null && targets != null)
+					touchedNodes.addAll(targets);
+			}
+		}
+		for (String protein : mapping.getProteins()) {
+			List<CyNode> nodes = this.existingNodesByAccession.get(protein);
+			if (nodes == null)
+				continue;
+			// the new copies get the edges of the protein and identity edges to all its copies,
+			// so the copies and the neighbors have to be in the network
+			for (CyNode node : nodes) {
+				touchedNodes.add(node);
+				for (CyEdge edge : rootNetwork.getAdjacentEdgeList(node, Type.ANY)) {
+					if (!LazyMemberEdges.isMetaEdge(rootNetwork, edge))
+						touchedNodes.add(edge.getSource().equals(node) ? edge.getTarget() : edge.getSource());
+				}
+			}
+		}
+
+		// expand the collapsed groups of these proteins
+		for (CyNode node : touchedNodes) {
+			CyGroup group = this.existingGroupForNode.get(node);
+			if (group != null)
+				this.affectedGroups.add(group);
+		}
+		for (CyGroup group : this.affectedGroups) {
+			if (group.isCollapsed(network)) {
+				group.expand(network);
+				this.expandedGroups.add(group);
+			}
+		}
+		if (payload == null)
+			return network;
+
+		// add the new proteins
+		int[] nodes = new int[newPayloadNodes.size()];
+		for (int i = 0; i < nodes.length; i++)
+			nodes[i] = newPayloadNodes.get(i);
+		List<CyNode> added = payload.addNodes(network, nodes);
+		// the shared attributes can only be set once the matched ID is known
+		if (SharedNodeAttributes.isShared(network.getDefaultNodeTable())) {
+			for (CyNode node : added)
+				network.getRow(node).set(SharedProperties.MATCHEDID,
+						network.getRow(node).get(SharedProperties.QUERYTERM, String.class));
+			payload.setNodeValues(network, added, nodes);
+		}
+		for (int i = 0; i < nodes.length; i++)
+			payloadNodes.set(nodes[i], added.get(i));
+		this.addedNodes.addAll(added);
+		this.nodesToLayOut.addAll(added);
+
+		// add the edges of the new proteins, to every copy of the existing proteins
+		List<Integer> edges = new ArrayList<Integer>();
+		List<CyNode> edgeSources = new ArrayList<CyNode>();
+		List<CyNode> edgeTargets = new ArrayList<CyNode>();
+		for (int edge = 0; edge < payload.getEdgeCount(); edge++) {
+			int source = payload.getEdgeSource(edge);
+			int target = payload.getEdgeTarget(edge);
+			if (payloadNodes.get(source) == null && payloadNodes.get(target) == null)
+				continue;
+			List<CyNode> sourceNodes = (payloadNodes.get(source) != null) ? Arrays.asList(payloadNodes.get(source))
+					: existingPayloadNodes.get(source);
+			List<CyNode> targetNodes = (payloadNodes.get(target) != null) ? Arrays.asList(payloadNodes.get(target))
+					: existingPayloadNodes.get(target);
+			for (CyNode sourceNode : sourceNodes) {
+				for (CyNode targetNode : targetNodes) {
+					edges.add(edge);
+					edgeSources.add(sourceNode);
+					edgeTargets.add(targetNode);
+				}
+			}
+		}
+		int[] edgeIndices = new int[edges.size()];
+		for (int i = 0; i < edgeIndices.length; i++)
+			edgeIndices[i] = edges.get(i);
+		List<CyEdge> addedEdges = payload.addEdges(network, edgeIndices, edgeSources, edgeTargets);
+		this.numAddedEdges = addedEdges.size();
+
+		// the edges from the members of a group are external edges of the group
+		Map<CyGroup, List<CyEdge>> groupEdges = new LinkedHashMap<CyGroup, List<CyEdge>>();
+		for (CyEdge edge : addedEdges) {
+			for (CyNode node : Arrays.asList(edge.getSource(), edge.getTarget())) {
+				CyGroup group = this.existingGroupForNode.get(node);
+				if (group != null)
+					groupEdges.computeIfAbsent(group, k -> new ArrayList<CyEdge>()).add(edge);
+			}
+		}
+		for (CyGroup group : groupEdges.keySet())
+			group.addEdges(groupEdges.get(group));
+		taskMonitor.setStatusMessage("Added " + added.size() + " proteins and " + addedEdges.size()
+				+ " edges to the network.");
+		return network;
+	}
+
+	/**
+	 * Creates the new protein groups. The proteins that are already in the
+	 * network are duplicated for each new protein group, and the groups that
+	 * were expanded to add the new edges are collapsed again.
+	 * @return The new groups and the existing groups connected to them.
+	 */
+	@Override
+	protected List<CyGroup> groupStage(TaskMonitor taskMonitor) {
+		checkCancelled();
+		taskMonitor.setProgress(0.6);
+		taskMonitor.setStatusMessage("Creating the new protein groups.");
+		createProteinGroupColumns();
+		ProteinGroupMapping mapping = this.protected_pgMapping;
+
+		// the node of each protein, either a new one or one already in the network, and its existing copies
+		CyNode[] proteinNodes = new CyNode[mapping.getProteinCount()];
+		boolean[] existing = new boolean[mapping.getProteinCount()];
+		List<List<CyNode>> existingCopies = new ArrayList<List<CyNode>>();
+		for (CyNode node : this.addedNodes) {
+			String queryTerm = network.getRow(node).get(SharedProperties.QUERYTERM, String.class);
+			if (queryTerm == null)
+				continue;
+			int protein = mapping.getProteinIndex(queryTerm);
+			if (protein >= 0)
+				proteinNodes[protein] = node;
+			network.getRow(node).set(SharedProperties.MATCHEDID, queryTerm);
+		}
+		CyRootNetwork rootNetwork = ((CySubNetwork) network).getRootNetwork();
+		for (int protein = 0; protein < mapping.getProteinCount(); protein++) {
+			List<CyNode> nodes = this.existingNodesByAccession.get(mapping.getProtein(protein));
+			existingCopies.add((nodes == null) ? Collections.emptyList() : nodes);
+			if (proteinNodes[protein] != null || nodes == null)
+				continue;
+			// the protein node is the copy that has its member edges, i.e. that is not pending
+			proteinNodes[protein] = nodes.get(0);
+			for (CyNode node : nodes) {
+				if (LazyMemberEdges.getPendingProtein(rootNetwork, node) == null) {
+					proteinNodes[protein] = node;
+					break;
+				}
+			}
+			existing[protein] = true;
+		}
+		if (this.resolvedQueryTerms == null && !this.protected_offline && this.unmatchedProteins.isEmpty()) {
+			for (int protein = 0; protein < mapping.getProteinCount(); protein++) {
+				if (proteinNodes[protein] == null)
+					this.unmatchedProteins.add(mapping.getProtein(protein));
+			}
+			if (!this.unmatchedProteins.isEmpty())
+				logger.warn(this.unmatchedProteins.size() + " of " + mapping.getProteinCount()
+						+ " accessions were not found in STRING.");
+		}
+
+		// the i-th copy of a protein node is used for the i-th new protein group of the protein,
+		// the proteins already in the network keep their node for their existing protein group
+		CyNode[][] proteinNodeCopies = new CyNode[mapping.getProteinCount()][];
+		Map<CyNode, CyNode> originalNodes = new HashMap<CyNode, CyNode>();
+		for (int protein = 0; protein < mapping.getProteinCount(); protein++) {
+			if (proteinNodes[protein] == null)
+				continue;
+			CyNode[] copies = new CyNode[mapping.getGroupCount(protein)];
+			int first = 0;
+			if (!existing[protein])
+				copies[first++] = proteinNodes[protein];
+			List<CyNode> newCopies = duplicateProteinNode(proteinNodes[protein], copies.length - first);
+			for (int i = first; i < copies.length; i++) {
+				copies[i] = newCopies.get(i - first);
+				originalNodes.put(copies[i], proteinNodes[protein]);
+			}
+			// the new copies are connected to the protein node, and to its other copies as well
+			String identityName = getIdentityEdgeName(proteinNodes[protein]);
+			for (CyNode existingCopy : existingCopies.get(protein)) {
+				if (existingCopy.equals(proteinNodes[protein]))
+					continue;
+				for (CyNode newCopy : newCopies)
+					addIdentityEdge(existingCopy, newCopy, identityName);
+			}
+			proteinNodeCopies[protein] = copies;
+			this.nodesToLayOut.addAll(Arrays.asList(copies));
+		}
+		manager.getService(CyEventHelper.class).flushPayloadEvents();
+		// the edges of the copies to the members of a group are external edges of the group
+		Map<CyGroup, List<CyEdge>> groupEdges = new LinkedHashMap<CyGroup, List<CyEdge>>();
+		for (CyNode copy : originalNodes.keySet()) {
+			for (CyEdge edge : network.getAdjacentEdgeList(copy, Type.ANY)) {
+				CyGroup group = this.existingGroupForNode.get(edge.getSource().equals(copy) ? edge.getTarget() : edge.getSource());
+				if (group != null)
+					groupEdges.computeIfAbsent(group, k -> new ArrayList<CyEdge>()).add(edge);
+			}
+		}
+		for (CyGroup group : groupEdges.keySet())
+			group.addEdges(groupEdges.get(group));
+
+		CyGroupFactory groupFactory = manager.getService(CyGroupFactory.class);
+		manager.setGroupSettings();
+		List<CyGroup> groups = new ArrayList<CyGroup>();
+		List<List<CyNode>> groupMembers = new ArrayList<List<CyNode>>();
+		List<CyNode> reprNodes = new ArrayList<CyNode>();
+		int[] nextProteinNodeCopy = new int[mapping.getProteinCount()];
+		// the protein group of each new copy, and the node standing for each new protein group
+		int[][] proteinCopyGroups = new int[mapping.getProteinCount()][];
+		CyNode[] proteinGroupNodes = new CyNode[mapping.getProteinGroupCount()];
+		for (int pgIndex = 0; pgIndex < mapping.getProteinGroupCount(); pgIndex++) {
+			checkCancelled();
+			String pg = mapping.getProteinGroup(pgIndex);
+			List<CyNode> nodesForGroup = new ArrayList<CyNode>();
+			for (int i = 0; i < mapping.getMemberCount(pgIndex); i++) {
+				int protein = mapping.getMember(pgIndex, i);
+				if (proteinNodeCopies[protein] == null)
+					continue;
+				if (proteinCopyGroups[protein] == null)
+					proteinCopyGroups[protein] = new int[proteinNodeCopies[protein].length];
+				proteinCopyGroups[protein][nextProteinNodeCopy[protein]] = pgIndex;
+				CyNode proteinNode = proteinNodeCopies[protein][nextProteinNodeCopy[protein]++];
+				nodesForGroup.add(proteinNode);
+				network.getRow(proteinNode).set(SharedProperties.PROTEINGROUP, pg);
+				network.getRow(proteinNode).set(SharedProperties.QUERYTERM, pg);
+			}
+			if (nodesForGroup.size() <= 1) {
+				if (nodesForGroup.size() == 1) {
+					network.getRow(nodesForGroup.get(0)).set(SharedProperties.USE_ENRICHMENT, true);
+					proteinGroupNodes[pgIndex] = nodesForGroup.get(0);
+				}
+				continue;
+			}
+			CyGroup pgGroup = createProteinGroup(groupFactory, pg, nodesForGroup, nodesForGroup.get(0));
+			groups.add(pgGroup);
+			groupMembers.add(nodesForGroup);
+			reprNodes.add(nodesForGroup.get(0));
+			this.nodesToLayOut.add(pgGroup.getGroupNode());
+			proteinGroupNodes[pgIndex] = pgGroup.getGroupNode();
+		}
+		this.numNewGroups = groups.size();
+		manager.getService(CyGroupManager.class).addGroups(groups);
+		aggregateProteinGroupAttributes(groups, groupMembers, reprNodes);
+
+		// count the proteins shared by the protein groups, as for a new network: every pair of copies of
+		// a protein adds one to the pair of their protein groups, the existing protein groups (a group or
+		// a single node) are numbered after the new ones, and only the pairs with a new one are counted
+		List<CyNode> existingOwners = new ArrayList<CyNode>();
+		Map<CyNode, Integer> existingOwnerIndex = new HashMap<CyNode, Integer>();
+		LongIntHashMap groupsSharedProteins = new LongIntHashMap();
+		for (int protein = 0; protein < mapping.getProteinCount(); protein++) {
+			if (proteinCopyGroups[protein] == null)
+				continue;
+			List<Integer> copyGroups = new ArrayList<Integer>();
+			for (int pgIndex : proteinCopyGroups[protein])
+				copyGroups.add(pgIndex);
+			int numNewCopyGroups = copyGroups.size();
+			for (CyNode existingCopy : existingCopies.get(protein)) {
+				CyGroup group = this.existingGroupForNode.get(existingCopy);
+				CyNode owner = (group != null) ? group.getGroupNode() : existingCopy;
+				copyGroups.add(existingOwnerIndex.computeIfAbsent(owner, k -> {
+					existingOwners.add(k);
+					return mapping.getProteinGroupCount() + existingOwners.size() - 1;
+				}));
+			}
+			for (int i = 0; i < numNewCopyGroups; i++) {
+				for (int j = i + 1; j < copyGroups.size(); j++) {
+					if (!copyGroups.get(i).equals(copyGroups.get(j)))
+						groupsSharedProteins.addTo(LongIntHashMap.pairKey(copyGroups.get(i), copyGroups.get(j)), 1);
+				}
+			}
+		}
+
+		if (this.protected_collapsed) {
+			for (CyGroup group : groups)
+				group.collapse(network);
+		}
+		for (CyGroup group : this.expandedGroups)
+			group.collapse(network);
+		// the meta edges of the affected groups that stay expanded are aggregated again when collapsed
+		for (CyGroup group : this.affectedGroups) {
+			if (group.isCollapsed(network))
+				continue;
+			for (CyEdge edge : rootNetwork.getAdjacentEdgeList(group.getGroupNode(), Type.ANY)) {
+				if (LazyMemberEdges.isMetaEdge(rootNetwork, edge))
+					rootNetwork.getRow(edge).set(SharedProperties.EDGEAGGREGATED, Boolean.FALSE);
+			}
+		}
+
+		// save the shared proteins on the edges between the protein groups that share proteins
+		groupsSharedProteins.forEach((groupPair, sharedProteins) -> {
+			CyNode node1 = getProteinGroupNode(LongIntHashMap.pairFirst(groupPair), proteinGroupNodes, existingOwners);
+			CyNode node2 = getProteinGroupNode(LongIntHashMap.pairSecond(groupPair), proteinGroupNodes, existingOwners);
+			if (node1 == null || node2 == null || !network.containsNode(node1) || !network.containsNode(node2))
+				return;
+			for (CyEdge edge : network.getConnectingEdgeList(node1, node2, Type.ANY))
+				network.getRow(edge).set(SharedProperties.EDGESHARED, sharedProteins);
+		});
+
+		List<CyGroup> groupsToAggregate = new ArrayList<CyGroup>(groups);
+		groupsToAggregate.addAll(this.affectedGroups);
+		return groupsToAggregate;
+	}
+
+	// the node of a new protein group, or of an existing one if the index is after the new ones
+	private static CyNode getProteinGroupNode(int index, CyNode[] proteinGroupNodes, List<CyNode> existingOwners) {
+		return (index < proteinGroupNodes.length) ? proteinGroupNodes[index]
+				: existingOwners.get(index - proteinGroupNodes.length);
+	}
+
+	/**
+	 * Only the new nodes are laid out, the existing nodes keep their position.
+	 */
+	@Override
+	protected Set<View<CyNode>> getNodeViewsToLayOut(CyNetworkView networkView) {
+		Set<View<CyNode>> nodeViews = new HashSet<View<CyNode>>();
+		for (CyNode node : this.nodesToLayOut) {
+			View<CyNode> nodeView = networkView.getNodeView(node);
+			if (nodeView != null)
+				nodeViews.add(nodeView);
+		}
+		return nodeViews;
+	}
+
+}
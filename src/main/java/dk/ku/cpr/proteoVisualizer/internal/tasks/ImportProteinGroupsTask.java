@@ -0,0 +1,83 @@
+package dk.ku.cpr.proteoVisualizer.internal.tasks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.cytoscape.work.ContainsTunables;
+import org.cytoscape.work.ProvidesTitle;
+import org.cytoscape.work.TaskMonitor;
+import org.cytoscape.work.Tunable;
+import org.cytoscape.work.util.ListSingleSelection;
+
+import dk.ku.cpr.proteoVisualizer.internal.model.AppManager;
+import dk.ku.cpr.proteoVisualizer.internal.model.ReportFormat;
+import dk.ku.cpr.proteoVisualizer.internal.model.SharedProperties;
+
+public class ImportProteinGroupsTask extends RetrieveStringNetworkTask {
+
+	@Tunable(description = "Protein groups file", required = true, 
+	         longDescription="Tab-separated report (MaxQuant proteinGroups.txt, DIA-NN report.pg_matrix.tsv, Spectronaut report) or file with one protein group per line.",
+					 exampleStringValue="/home/user/proteinGroups.txt",
+					 params="input=true;fileCategory=unspecified")
+	public File file = null;
+
+	@Tunable(description = "File format", 
+	         longDescription="Format of the file. By default, the format is detected from the header of the file.",
+					 exampleStringValue="Detect from header")
+	public ListSingleSelection<String> format;
+
+	@Tunable(description = "Protein group column", 
+	         longDescription="Name of the column containing the protein groups. By default, the protein group column of the file format is used.",
+					 exampleStringValue="Protein IDs")
+	public String column = null;
+
+	@Tunable(description = "Protein group delimiter", 
+	         longDescription="Delimiter used to separate accessions in the same protein group, if the file format does not define it.",
+					 exampleStringValue=";")
+	public ListSingleSelection<String> delimiterPG;
+
+	@ContainsTunables
+	public QueryTunables queryTunables = new QueryTunables();
+
+	@ContainsTunables
+	public NewNetworkTunables networkTunables = new NewNetworkTunables();
+
+	public ImportProteinGroupsTask(AppManager manager) {
+		super(manager);
+		List<String> formats = new ArrayList<String>();
+		for (ReportFormat reportFormat : ReportFormat.values()) {
+			formats.add(reportFormat.toString());
+		}
+		format = new ListSingleSelection<String>(formats);
+		format.setSelectedValue(ReportFormat.AUTO.toString());
+		delimiterPG = new ListSingleSelection<String>(SharedProperties.pg_delimiters);
+		delimiterPG.setSelectedValue(SharedProperties.DEFAULT_PG_DELIMITER);
+	}
+
+	@ProvidesTitle
+	public String getName() {
+		return "Import protein groups and retrieve STRING Network";
+	}
+
+	@Override
+	public void run(TaskMonitor taskMonitor) throws Exception {
+		if (file != null) {
+			this.setQueryFile(file);
+		}
+		if (format != null) {
+			this.setReportFormat(ReportFormat.getFormat(format.getSelectedValue()));
+		}
+		if (column != null) {
+			this.setPGColumn(column);
+		}
+		if (delimiterPG != null) {
+			this.setDelimiter(delimiterPG.getSelectedValue());
+		}
+		queryTunables.applyTo(this);
+		networkTunables.applyTo(this);
+
+		super.run(taskMonitor);
+	}
+
+}
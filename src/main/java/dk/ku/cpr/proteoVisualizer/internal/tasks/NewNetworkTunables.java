@@ -0,0 +1,123 @@
+package dk.ku.cpr.proteoVisualizer.internal.tasks;
+
+import java.util.Arrays;
+
+import org.cytoscape.work.Tunable;
+import org.cytoscape.work.util.ListSingleSelection;
+
+import dk.ku.cpr.proteoVisualizer.internal.model.NetworkType;
+
+/**
+ * The tunables of the commands that retrieve a new network: the STRING query
+ * and how the network and its protein groups are created.
+ */
+public class NewNetworkTunables {
+
+	@Tunable(description = "Use cached networks", 
+	         longDescription="By default this is set to true and causes the app to reuse the network retrieved earlier for the same query, species, cutoff and network type instead of querying STRING again.",
+					 exampleStringValue="true")
+	public Boolean useCache;
+
+	@Tunable(description = "Chunk size", 
+	         longDescription="Number of proteins per chunk when very large queries are split. Every pair of chunks is queried, such that no interaction between two chunks is lost, and the chunks are merged into one network. Use 0 to send the query at once. Default: 0.",
+					 exampleStringValue="2000")
+	public Integer chunkSize;
+
+	@Tunable(description = "Share protein attributes", 
+	         longDescription="Store the STRING attributes of each protein once, in a table keyed by the matched ID, and show them in the node table through virtual columns. The copies of the proteins that belong to several protein groups then only keep their own identity columns (name, query term, protein group, matched ID, style and node type), which saves memory for highly ambiguous protein groups. Default: false.",
+					 exampleStringValue="false")
+	public Boolean sharedAttributes;
+
+	@Tunable(description = "Create member edges on expand", 
+	         longDescription="Only create the copies of the proteins that belong to several protein groups and their identity edges, and create the edges of the copies when their group is expanded. The edges of the collapsed groups are aggregated from the edges of the original proteins. This option is only used if the groups are collapsed. Default: false.",
+					 exampleStringValue="false")
+	public Boolean lazyEdges;
+
+	@Tunable(description = "Attribute aggregation", 
+	         longDescription="How the node attributes of a protein group are merged into its group node, as a comma-separated list of column=aggregation, where the aggregation is one of copy (from the representative node), concat, union, mean, max or sum. The given columns override the defaults, which copy the identifiers, concatenate the names, merge the structures and average the compartment, tissue and interactor scores. Default: none.",
+					 exampleStringValue="tissue::liver=max,my::annotation=union")
+	public String aggregation;
+
+	@Tunable(description = "Collapse groups", 
+	         longDescription="By default this is set to true and causes the app to collapse all groups.",
+					 exampleStringValue="true")
+	public Boolean collapse;
+
+	@Tunable(description = "New network name", 
+	         longDescription="Name for the network to be created",
+					 exampleStringValue="String Network")
+	public String newNetName = "";
+
+	@Tunable(description="Identifier of the species to query. REQUIRED if 'species' is not used.",
+			required=false,
+			tooltip="You can put here the taxon identifier of the species you want to query.",
+			exampleStringValue="9606",
+			gravity=1.0)
+	public Integer taxonID;
+
+	@Tunable(description="Name of the species to query. REQUIRED if 'taxonID' is not used.",
+			required=false,
+			tooltip="You can put here the name of the species you want to query.",
+			exampleStringValue="Homo sapiens",
+			gravity=1.0)
+	public String species;
+
+	@Tunable(description="Confidence (score) cutoff.",
+			required=false,
+			tooltip="Enter a value between 0.0 and 1.0 defining the confidence score the STRING network should have. Default: 0.40.",
+			exampleStringValue="0.4",
+			gravity=1.0)
+	public Double cutoff;
+
+	@Tunable(description="Network type to choose from.",
+			required=false,
+			tooltip="Choose one of the two network types (full STRING network or physical subnetwork) the STRING network should have. Default: full STRING network.",
+			exampleStringValue="full STRING network",
+			gravity=1.0)
+	public ListSingleSelection<String> netType;
+
+	public NewNetworkTunables() {
+		netType = new ListSingleSelection<String>(
+				Arrays.asList(NetworkType.FUNCTIONAL.toString(), NetworkType.PHYSICAL.toString()));
+		netType.setSelectedValue(NetworkType.FUNCTIONAL.toString());
+	}
+
+	/**
+	 * Sets the given values to the task.
+	 */
+	public void applyTo(RetrieveStringNetworkTask task) {
+		if (useCache != null) {
+			task.setUseCache(useCache);
+		}
+		if (chunkSize != null) {
+			task.setChunkSize(chunkSize.intValue());
+		}
+		if (sharedAttributes != null) {
+			task.setSharedAttributes(sharedAttributes);
+		}
+		if (lazyEdges != null) {
+			task.setLazyMemberEdges(lazyEdges);
+		}
+		if (aggregation != null) {
+			task.setAggregation(aggregation);
+		}
+		if (collapse != null) {
+			task.setCollapsed(collapse);
+		}
+		if (newNetName != null) {
+			task.setNetworkName(newNetName);
+		}
+		if (taxonID != null) {
+			task.setTaxonID(taxonID);
+		}
+		if (species != null) {
+			task.setSpecies(species);
+		}
+		if (cutoff != null) {
+			task.setCutoff(cutoff.doubleValue());
+		}
+		if (netType != null) {
+			task.setNetType(netType.getSelectedValue());
+		}
+	}
+}
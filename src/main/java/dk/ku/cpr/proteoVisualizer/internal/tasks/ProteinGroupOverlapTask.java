@@ -0,0 +1,200 @@
+package dk.ku.cpr.proteoVisualizer.internal.tasks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.cytoscape.command.StringToModel;
+import org.cytoscape.group.CyGroup;
+import org.cytoscape.group.CyGroupManager;
+import org.cytoscape.model.CyEdge;
+import org.cytoscape.model.CyEdge.Type;
+import org.cytoscape.model.CyNetwork;
+import org.cytoscape.model.CyNode;
+import org.cytoscape.model.CyRow;
+import org.cytoscape.model.CyTable;
+import org.cytoscape.model.CyTableFactory;
+import org.cytoscape.model.CyTableManager;
+import org.cytoscape.work.AbstractTask;
+import org.cytoscape.work.ObservableTask;
+import org.cytoscape.work.ProvidesTitle;
+import org.cytoscape.work.TaskMonitor;
+import org.cytoscape.work.TaskMonitor.Level;
+import org.cytoscape.work.Tunable;
+import org.cytoscape.work.json.JSONResult;
+
+import dk.ku.cpr.proteoVisualizer.internal.model.AppManager;
+import dk.ku.cpr.proteoVisualizer.internal.model.ProteinGroupMapping;
+import dk.ku.cpr.proteoVisualizer.internal.model.SharedProperties;
+import dk.ku.cpr.proteoVisualizer.internal.utils.ProteinGroupOverlap;
+
+/**
+ * Computes how much the protein groups of a network retrieved with this app
+ * overlap. For each pair of protein groups sharing proteins, the number of
+ * shared proteins, the Jaccard index and the overlap coefficient are written
+ * to a table (one row per pair) and to the edges between the nodes of the two
+ * groups.
+ *
+ * The protein groups are rebuilt from the nodes of the network, so only the
+ * accessions matched to a STRING protein count for the size of a group.
+ */
+public class ProteinGroupOverlapTask extends AbstractTask implements ObservableTask {
+
+	private AppManager manager;
+
+	@Tunable(description = "Network", context = "nogui",
+	         longDescription = StringToModel.CY_NETWORK_LONG_DESCRIPTION,
+	         exampleStringValue = StringToModel.CY_NETWORK_EXAMPLE_STRING)
+	public CyNetwork network = null;
+
+	private int numPairs;
+	private CyTable overlapTable;
+
+	public ProteinGroupOverlapTask(AppManager manager) {
+		this.manager = manager;
+		this.numPairs = 0;
+		this.overlapTable = null;
+	}
+
+	@ProvidesTitle
+	public String getName() {
+		return "Compute protein group overlap";
+	}
+
+	@Override
+	public void run(TaskMonitor taskMonitor) throws Exception {
+		taskMonitor.setTitle(this.getName());
+
+		if (network == null)
+			network = manager.getCurrentNetwork();
+		if (network == null || network.getDefaultNodeTable().getColumn(SharedProperties.PROTEINGROUP) == null) {
+			taskMonitor.showMessage(Level.ERROR, "The network was not retrieved with Proteo Visualizer.");
+			return;
+		}
+
+		// the protein nodes are the nodes of the network and the members of its groups
+		CyGroupManager groupManager = manager.getService(CyGroupManager.class);
+		Map<String, CyNode> nodeForProteinGroup = new HashMap<String, CyNode>();
+		Set<CyNode> groupNodes = new HashSet<CyNode>();
+		Set<CyNode> proteinNodes = new LinkedHashSet<CyNode>();
+		for (CyGroup group : groupManager.getGroupSet(network)) {
+			groupNodes.add(group.getGroupNode());
+			proteinNodes.addAll(group.getNodeList());
+			String pg = network.getRow(group.getGroupNode()).get(SharedProperties.PROTEINGROUP, String.class);
+			if (pg != null && !pg.isEmpty())
+				nodeForProteinGroup.put(pg, group.getGroupNode());
+		}
+		for (CyNode node : network.getNodeList()) {
+			if (!groupNodes.contains(node))
+				proteinNodes.add(node);
+		}
+
+		// the accessions of each protein group, the copies of a protein have the same one
+		boolean hasStringID = network.getDefaultNodeTable().getColumn(SharedProperties.STRINGID) != null;
+		boolean hasMatchedID = network.getDefaultNodeTable().getColumn(SharedProperties.MATCHEDID) != null;
+		Map<String, List<String>> proteinsForProteinGroup = new LinkedHashMap<String, List<String>>();
+		for (CyNode node : proteinNodes) {
+			CyRow row = network.getRow(node);
+			String pg = row.get(SharedProperties.PROTEINGROUP, String.class);
+			if (pg == null || pg.isEmpty())
+				continue;
+			String accession = hasMatchedID ? row.get(SharedProperties.MATCHEDID, String.class) : null;
+			if ((accession == null || accession.isEmpty()) && hasStringID)
+				accession = row.get(SharedProperties.STRINGID, String.class);
+			if (accession == null || accession.isEmpty())
+				continue;
+			proteinsForProteinGroup.computeIfAbsent(pg, k -> new ArrayList<String>()).add(accession);
+			// the protein groups with a single node have no group node
+			nodeForProteinGroup.putIfAbsent(pg, node);
+		}
+		ProteinGroupMapping.Builder builder = new ProteinGroupMapping.Builder();
+		for (Map.Entry<String, List<String>> entry : proteinsForProteinGroup.entrySet()) {
+			builder.beginProteinGroup(entry.getKey());
+			for (String accession : entry.getValue())
+				builder.addProtein(accession);
+			builder.endProteinGroup();
+		}
+		ProteinGroupMapping mapping = builder.build();
+		if (cancelled)
+			return;
+
+		ProteinGroupOverlap overlap = ProteinGroupOverlap.compute(mapping);
+		this.numPairs = overlap.getPairCount();
+		taskMonitor.setStatusMessage("Pairs of protein groups sharing proteins: " + numPairs);
+		if (cancelled)
+			return;
+
+		// replace the table of a previous run
+		CyTableManager tableManager = manager.getService(CyTableManager.class);
+		CyTable hiddenTable = network.getTable(CyNetwork.class, CyNetwork.HIDDEN_ATTRS);
+		if (hiddenTable.getColumn(SharedProperties.OVERLAP_TABLE_SUID) == null)
+			hiddenTable.createColumn(SharedProperties.OVERLAP_TABLE_SUID, Long.class, false);
+		Long previousSUID = network.getRow(network, CyNetwork.HIDDEN_ATTRS).get(SharedProperties.OVERLAP_TABLE_SUID, Long.class);
+		if (previousSUID != null && tableManager.getTable(previousSUID.longValue()) != null)
+			tableManager.deleteTable(previousSUID.longValue());
+		String title = network.getRow(network).get(CyNetwork.NAME, String.class) + " - " + SharedProperties.OVERLAP_TABLE;
+		overlapTable = manager.getService(CyTableFactory.class).createTable(title, SharedProperties.OVERLAP_PAIR,
+				Long.class, true, true);
+		overlapTable.createColumn(SharedProperties.OVERLAP_GROUP1, String.class, false);
+		overlapTable.createColumn(SharedProperties.OVERLAP_GROUP2, String.class, false);
+		overlapTable.createColumn(SharedProperties.EDGESHARED, Integer.class, false);
+		overlapTable.createColumn(SharedProperties.EDGEJACCARD, Double.class, false);
+		overlapTable.createColumn(SharedProperties.EDGEOVERLAP, Double.class, false);
+
+		manager.createIntegerColumnIfNeeded(network.getDefaultEdgeTable(), Integer.class, SharedProperties.EDGESHARED, 0);
+		manager.createDoubleColumnIfNeeded(network.getDefaultEdgeTable(), Double.class, SharedProperties.EDGEJACCARD, null);
+		manager.createDoubleColumnIfNeeded(network.getDefaultEdgeTable(), Double.class, SharedProperties.EDGEOVERLAP, null);
+
+		for (int pair = 0; pair < numPairs; pair++) {
+			String pg1 = mapping.getProteinGroup(overlap.getGroup1(pair));
+			String pg2 = mapping.getProteinGroup(overlap.getGroup2(pair));
+			Integer shared = Integer.valueOf(overlap.getSharedCount(pair));
+			Double jaccard = Double.valueOf(overlap.getJaccard(pair));
+			Double overlapCoefficient = Double.valueOf(overlap.getOverlapCoefficient(pair));
+
+			CyRow row = overlapTable.getRow(Long.valueOf(pair));
+			row.set(SharedProperties.OVERLAP_GROUP1, pg1);
+			row.set(SharedProperties.OVERLAP_GROUP2, pg2);
+			row.set(SharedProperties.EDGESHARED, shared);
+			row.set(SharedProperties.EDGEJACCARD, jaccard);
+			row.set(SharedProperties.EDGEOVERLAP, overlapCoefficient);
+
+			// the edges between the two groups, if both are visible
+			CyNode node1 = nodeForProteinGroup.get(pg1);
+			CyNode node2 = nodeForProteinGroup.get(pg2);
+			if (node1 == null || node2 == null || !network.containsNode(node1) || !network.containsNode(node2))
+				continue;
+			for (CyEdge edge : network.getConnectingEdgeList(node1, node2, Type.ANY)) {
+				network.getRow(edge).set(SharedProperties.EDGESHARED, shared);
+				network.getRow(edge).set(SharedProperties.EDGEJACCARD, jaccard);
+				network.getRow(edge).set(SharedProperties.EDGEOVERLAP, overlapCoefficient);
+			}
+		}
+		tableManager.addTable(overlapTable);
+		network.getRow(network, CyNetwork.HIDDEN_ATTRS).set(SharedProperties.OVERLAP_TABLE_SUID, overlapTable.getSUID());
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <R> R getResults(Class<? extends R> type) {
+		if (type.equals(String.class)) {
+			return (R) ("Found " + numPairs + " pairs of protein groups sharing proteins.");
+		} else if (type.equals(JSONResult.class)) {
+			JSONResult res = () -> {
+				return "{\"pairs\":" + numPairs + ",\"table\":" + (overlapTable == null ? "null" : overlapTable.getSUID()) + "}";
+			};
+			return (R) res;
+		}
+		return null;
+	}
+
+	@Override
+	public List<Class<?>> getResultClasses() {
+		return List.of(String.class, JSONResult.class);
+	}
+}
@@ -0,0 +1,82 @@
+package dk.ku.cpr.proteoVisualizer.internal.tasks;
+
+import java.io.File;
+
+import org.cytoscape.work.Tunable;
+
+/**
+ * The tunables of the commands that query STRING with protein groups, i.e.
+ * the filters of the accessions and the settings of the STRING query.
+ */
+public class QueryTunables {
+
+	@Tunable(description = "Excluded accession prefixes", 
+	         longDescription="Comma separated list of prefixes of the accessions to ignore, such as decoys and contaminants (REV__,CON__ for MaxQuant). Default: none, i.e. all accessions are queried.",
+					 exampleStringValue="REV__,CON__")
+	public String excludePrefixes = null;
+
+	@Tunable(description = "Maximum number of proteins per group", 
+	         longDescription="Only the first (leading) accessions of each protein group are queried. Default: 0, i.e. all accessions.",
+					 exampleStringValue="0")
+	public Integer maxProteins;
+
+	@Tunable(description = "Strip isoform suffixes", 
+	         longDescription="Remove the isoform suffix of the accessions (e.g. P12345-2 becomes P12345). Default: false.",
+					 exampleStringValue="false")
+	public Boolean stripIsoforms;
+
+	@Tunable(description = "Resolve accessions locally", 
+	         longDescription="By default this is set to true and causes the app to resolve the accessions to STRING identifiers with the local index of the species, if there is one (see the command 'build offline index'), and to query STRING with the identifiers only.",
+					 exampleStringValue="true")
+	public Boolean resolveLocally;
+
+	@Tunable(description = "Timeout", 
+	         longDescription="Maximum time in seconds to wait for STRING, for each attempt. Default: 600, 0 to wait indefinitely.",
+					 exampleStringValue="600")
+	public Integer timeout;
+
+	@Tunable(description = "Retries", 
+	         longDescription="Number of times the STRING query is retried if it fails or times out. Default: 2.",
+					 exampleStringValue="2")
+	public Integer retries;
+
+	@Tunable(description = "Retrieve offline", 
+	         longDescription="Retrieve the proteins from the offline STRING index of the species (see the command 'build offline index') instead of querying STRING with the stringApp. Default: false.",
+					 exampleStringValue="false")
+	public Boolean offline;
+
+	@Tunable(description = "Offline index directory", 
+	         longDescription="The directory of the local STRING indices, used to retrieve networks offline and to resolve the accessions. By default, the indices stored in the configuration directory of the app are used.",
+					 exampleStringValue="/home/user/string-offline")
+	public File offlineIndex = null;
+
+	/**
+	 * Sets the given values to the task.
+	 */
+	public void applyTo(RetrieveStringNetworkTask task) {
+		if (excludePrefixes != null) {
+			task.setExcludedPrefixes(excludePrefixes);
+		}
+		if (maxProteins != null) {
+			task.setMaxProteins(maxProteins.intValue());
+		}
+		if (stripIsoforms != null) {
+			task.setStripIsoforms(stripIsoforms);
+		}
+		if (resolveLocally != null) {
+			task.setResolveLocally(resolveLocally);
+		}
+		if (timeout != null) {
+			task.setTimeout(timeout.intValue());
+		}
+		if (retries != null) {
+			task.setRetries(retries.intValue());
+		}
+		if (offline != null) {
+			task.setOffline(offline);
+		}
+		if (offlineIndex != null) {
+			task.setOfflineDirectory(offlineIndex);
+		}
+	}
+}
@@ -0,0 +1,340 @@
+package dk.ku.cpr.proteoVisualizer.internal.tasks;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+import org.apache.log4j.Logger;
+import org.cytoscape.application.CyUserLog;
+import org.cytoscape.model.CyNetwork;
+
+/**
+ * Executes the commands of the stringApp with a deadline, retries the failed
+ * calls with a jittered exponential backoff, and fails fast once too many
+ * calls failed in a row (circuit breaker). The latency and the size of the
+ * result of every call are logged and summed up per command.
+ *
+ * Only the transient failures (timeouts, I/O errors and the connection errors
+ * reported by the stringApp) are retried and count towards the circuit
+ * breaker, the other ones are thrown at once. A call that timed out is
+ * interrupted before it is retried, but the stringApp may still finish it: its
+ * result is then handed to the late result handler, e.g. to destroy the
+ * network created by the stringApp.
+ */
+public class ResilientStringCommandExecutor implements StringCommandExecutor {
+
+	private final Logger logger = Logger.getLogger(CyUserLog.NAME);
+
+	// the messages of the stringApp when STRING could not be reached, in lower case
+	private static final String[] TRANSIENT_MESSAGES = new String[] { "connect", "timed out", "timeout",
+			"no answer", "no response", "unknown host", "unreachable", "service unavailable", "bad gateway" };
+
+	private final StringCommandExecutor delegate;
+	private final ExecutorService threads;
+	private final LongSupplier clock;
+
+	private long timeoutMillis = 0;
+	private int maxRetries = 0;
+	private long backoffMillis = 1000;
+	private long maxBackoffMillis = 30000;
+	private int failureThreshold = 3;
+	private long openMillis = 60000;
+	private Consumer<Object> lateResultHandler = result -> {};
+
+	// state of the circuit breaker
+	private int consecutiveFailures = 0;
+	private long openUntil = 0;
+
+	private final Map<String, Metrics> metrics = new HashMap<String, Metrics>();
+
+	/**
+	 * @param delegate The executor of the commands.
+	 * @param threads  The threads waiting for the commands, such that they can
+	 *                 time out.
+	 */
+	public ResilientStringCommandExecutor(StringCommandExecutor delegate, ExecutorService threads) {
+		this(delegate, threads, System::currentTimeMillis);
+	}
+
+	/**
+	 * @param clock The clock of the circuit breaker, in milliseconds.
+	 */
+	public ResilientStringCommandExecutor(StringCommandExecutor delegate, ExecutorService threads, LongSupplier clock) {
+		this.delegate = delegate;
+		this.threads = threads;
+		this.clock = clock;
+	}
+
+	/** @param timeoutMillis The default deadline of a call, 0 for none. */
+	public void setTimeout(long timeoutMillis) {
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	/** @param maxRetries The default number of retries of a failed call. */
+	public void setMaxRetries(int maxRetries) {
+		this.maxRetries = maxRetries;
+	}
+
+	/**
+	 * @param backoffMillis    The delay before the first retry, doubled for each
+	 *                         following retry.
+	 * @param maxBackoffMillis The maximum delay before a retry.
+	 */
+	public void setBackoff(long backoffMillis, long maxBackoffMillis) {
+		this.backoffMillis = backoffMillis;
+		this.maxBackoffMillis = maxBackoffMillis;
+	}
+
+	/**
+	 * @param failureThreshold The number of calls failing in a row after which
+	 *                         the calls fail fast.
+	 * @param openMillis       How long the calls fail fast before a new call is
+	 *                         tried.
+	 */
+	public void setCircuitBreaker(int failureThreshold, long openMillis) {
+		this.failureThreshold = failureThreshold;
+		this.openMillis = openMillis;
+	}
+
+	/**
+	 * @param lateResultHandler Receives the results of the calls that arrive
+	 *                          after their deadline.
+	 */
+	public void setLateResultHandler(Consumer<Object> lateResultHandler) {
+		this.lateResultHandler = lateResultHandler;
+	}
+
+	@Override
+	public <R> R execute(String command, Map<String, Object> args, Class<R> resultType) throws Exception {
+		return execute(command, args, resultType, timeoutMillis, maxRetries);
+	}
+
+	/**
+	 * Executes a stringApp command.
+	 * @param timeoutMillis The deadline of each attempt, 0 for none.
+	 * @param maxRetries    The number of retries if an attempt fails with a
+	 *                      transient failure, see {@link #isTransient}.
+	 * @throws CircuitOpenException If too many calls failed recently.
+	 * @throws Exception            The failure of the last attempt, or the first
+	 *                              failure that is not transient.
+	 */
+	public <R> R execute(String command, Map<String, Object> args, Class<R> resultType, long timeoutMillis,
+			int maxRetries) throws Exception {
+		checkCircuit(command);
+		maxRetries = Math.max(0, maxRetries);
+		Exception failure = null;
+		for (int attempt = 0; attempt <= maxRetries; attempt++) {
+			if (attempt > 0) {
+				long delay = Math.min(maxBackoffMillis, backoffMillis << Math.min(attempt - 1, 20));
+				// full jitter, such that concurrent retries do not hit STRING at the same time
+				Thread.sleep(ThreadLocalRandom.current().nextLong(delay + 1));
+				checkCircuit(command);
+			}
+			long start = System.nanoTime();
+			try {
+				R result = attempt(command, args, resultType, timeoutMillis);
+				long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+				long size = sizeOf(result);
+				recordSuccess(command, latency, size, attempt);
+				logger.info("STRING " + command + ": " + latency + " ms, " + size + " elements"
+						+ (attempt > 0 ? " (attempt " + (attempt + 1) + ")" : "") + ".");
+				return result;
+			} catch (InterruptedException | CancellationException e) {
+				throw e;
+			} catch (Exception e) {
+				long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+				boolean transientFailure = isTransient(e);
+				recordFailure(command, latency, e instanceof TimeoutException, transientFailure);
+				logger.warn("STRING " + command + " failed after " + latency + " ms (attempt " + (attempt + 1) + " of "
+						+ (maxRetries + 1) + "): " + e.getMessage());
+				// e.g. an invalid query fails the same way again
+				if (!transientFailure)
+					throw e;
+				failure = e;
+			}
+		}
+		throw failure;
+	}
+
+	private <R> R attempt(String command, Map<String, Object> args, Class<R> resultType, long timeoutMillis)
+			throws Exception {
+		if (timeoutMillis <= 0)
+			return delegate.execute(command, args, resultType);
+		CompletableFuture<R> future = new CompletableFuture<R>();
+		Future<?> running = threads.submit(() -> {
+			try {
+				future.complete(delegate.execute(command, args, resultType));
+			} catch (Throwable t) {
+				future.completeExceptionally(t);
+			}
+		});
+		try {
+			return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			// the command is stopped before it is retried, if it still answers its result is cleaned up
+			future.thenAccept(this::handleLateResult);
+			running.cancel(true);
+			throw new TimeoutException("No answer after " + timeoutMillis + " ms.");
+		} catch (InterruptedException e) {
+			future.thenAccept(this::handleLateResult);
+			running.cancel(true);
+			throw e;
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception)
+				throw (Exception) e.getCause();
+			throw e;
+		}
+	}
+
+	private void handleLateResult(Object result) {
+		if (result == null)
+			return;
+		logger.info("STRING answered after the deadline, the result is discarded.");
+		try {
+			lateResultHandler.accept(result);
+		} catch (RuntimeException e) {
+			logger.warn("Could not discard the late result of STRING: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if the failure may not happen again, i.e. a
+	 *         timeout, an I/O error (e.g. of the connection to STRING) or a
+	 *         failure of the stringApp to reach STRING. The stringApp reports
+	 *         the latter as plain task errors, they are told apart by their
+	 *         messages.
+	 */
+	static boolean isTransient(Throwable failure) {
+		if (failure instanceof TimeoutException)
+			return true;
+		for (Throwable t = failure; t != null; t = t.getCause()) {
+			if (t instanceof IOException || t instanceof TimeoutException)
+				return true;
+			if (t.getMessage() != null) {
+				String message = t.getMessage().toLowerCase();
+				for (String transientMessage : TRANSIENT_MESSAGES) {
+					if (message.contains(transientMessage))
+						return true;
+				}
+			}
+			if (t.getCause() == t)
+				break;
+		}
+		return false;
+	}
+
+	private synchronized void checkCircuit(String command) throws CircuitOpenException {
+		if (consecutiveFailures >= failureThreshold && clock.getAsLong() < openUntil)
+			throw new CircuitOpenException("STRING " + command + " is not called after " + consecutiveFailures
+					+ " failures in a row, please try again in " + ((openUntil - clock.getAsLong() + 999) / 1000) + " s.");
+	}
+
+	private synchronized void recordSuccess(String command, long latency, long size, int retries) {
+		consecutiveFailures = 0;
+		Metrics m = metrics.computeIfAbsent(command, k -> new Metrics());
+		m.calls++;
+		m.retries += retries;
+		m.totalLatency += latency;
+		m.maxLatency = Math.max(m.maxLatency, latency);
+		m.totalSize += size;
+	}
+
+	private synchronized void recordFailure(String command, long latency, boolean timeout, boolean transientFailure) {
+		if (transientFailure) {
+			consecutiveFailures++;
+			// after the threshold, every failure (e.g. of the trial call) opens the circuit again
+			if (consecutiveFailures >= failureThreshold)
+				openUntil = clock.getAsLong() + openMillis;
+		}
+		Metrics m = metrics.computeIfAbsent(command, k -> new Metrics());
+		m.failures++;
+		if (timeout)
+			m.timeouts++;
+		m.totalLatency += latency;
+		m.maxLatency = Math.max(m.maxLatency, latency);
+	}
+
+	/**
+	 * @return A copy of the metrics of the command, or <code>null</code> if it
+	 *         was never called.
+	 */
+	public synchronized Metrics getMetrics(String command) {
+		Metrics m = metrics.get(command);
+		return (m == null) ? null : m.copy();
+	}
+
+	/** @return <code>true</code> if the calls currently fail fast. */
+	public synchronized boolean isOpen() {
+		return consecutiveFailures >= failureThreshold && clock.getAsLong() < openUntil;
+	}
+
+	/**
+	 * @return The number of nodes and edges of a network, the size of a
+	 *         collection, or 1 for any other result.
+	 */
+	private static long sizeOf(Object result) {
+		if (result == null)
+			return 0;
+		if (result instanceof CyNetwork)
+			return ((CyNetwork) result).getNodeCount() + ((CyNetwork) result).getEdgeCount();
+		if (result instanceof Collection)
+			return ((Collection<?>) result).size();
+		return 1;
+	}
+
+	/**
+	 * The calls of one command: successful calls, failed attempts, latency in
+	 * milliseconds (of all the attempts) and size of the results.
+	 */
+	public static class Metrics {
+		public int calls;
+		public int failures;
+		public int timeouts;
+		public int retries;
+		public long totalLatency;
+		public long maxLatency;
+		public long totalSize;
+
+		Metrics copy() {
+			Metrics m = new Metrics();
+			m.calls = calls;
+			m.failures = failures;
+			m.timeouts = timeouts;
+			m.retries = retries;
+			m.totalLatency = totalLatency;
+			m.maxLatency = maxLatency;
+			m.totalSize = totalSize;
+			return m;
+		}
+
+		@Override
+		public String toString() {
+			int attempts = calls + failures;
+			return calls + " calls, " + failures + " failed attempts (" + timeouts + " timeouts), " + retries
+					+ " retries, " + (attempts == 0 ? 0 : totalLatency / attempts) + " ms on average, " + maxLatency
+					+ " ms at most, " + totalSize + " elements";
+		}
+	}
+
+	/**
+	 * Thrown when the calls fail fast, after too many failures in a row.
+	 */
+	public static class CircuitOpenException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		public CircuitOpenException(String message) {
+			super(message);
+		}
+	}
+}
@@ -0,0 +1,331 @@
+package dk.ku.cpr.proteoVisualizer.internal.tasks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.cytoscape.command.StringToModel;
+import org.cytoscape.group.CyGroup;
+import org.cytoscape.group.CyGroupManager;
+import org.cytoscape.model.CyEdge;
+import org.cytoscape.model.CyEdge.Type;
+import org.cytoscape.model.CyNetwork;
+import org.cytoscape.model.CyNode;
+import org.cytoscape.model.CyTable;
+import org.cytoscape.model.subnetwork.CyRootNetwork;
+import org.cytoscape.model.subnetwork.CySubNetwork;
+import org.cytoscape.work.AbstractTask;
+import org.cytoscape.work.ObservableTask;
+import org.cytoscape.work.ProvidesTitle;
+import org.cytoscape.work.TaskMonitor;
+import org.cytoscape.work.TaskMonitor.Level;
+import org.cytoscape.work.Tunable;
+import org.cytoscape.work.json.JSONResult;
+
+import dk.ku.cpr.proteoVisualizer.internal.model.AppManager;
+import dk.ku.cpr.proteoVisualizer.internal.model.SharedProperties;
+import dk.ku.cpr.proteoVisualizer.internal.utils.EdgeAttributeAggregator;
+import dk.ku.cpr.proteoVisualizer.internal.utils.GroupEdgeIndex;
+import dk.ku.cpr.proteoVisualizer.internal.utils.LazyMemberEdges;
+
+/**
+ * Changes the confidence cutoff of a network retrieved with this app, without
+ * querying STRING again. The edges of the network and of its groups with a
+ * score below a higher cutoff are removed from the network, and the ones
+ * removed before are added back for a lower cutoff (down to the cutoff the
+ * network was retrieved with). Only the meta edges of the protein groups
+ * connected by one of these edges are aggregated again.
+ *
+ * The removed edges are kept in the root network, where the other networks
+ * of the same root can still contain them, and the aggregation of the meta
+ * edges leaves out the edges below the cutoff of the network (see
+ * {@link LazyMemberEdges#isBelowCutoff}).
+ */
+public class RethresholdNetworkTask extends AbstractTask implements ObservableTask {
+
+	private AppManager manager;
+
+	@Tunable(description = "Network", context = "nogui",
+	         longDescription = StringToModel.CY_NETWORK_LONG_DESCRIPTION,
+	         exampleStringValue = StringToModel.CY_NETWORK_EXAMPLE_STRING)
+	public CyNetwork network = null;
+
+	@Tunable(description = "New confidence (score) cutoff", required = true,
+	         tooltip = "Enter a value between 0.0 and 1.0, not lower than the cutoff the network was retrieved with.",
+	         longDescription = "The new confidence cutoff. A higher cutoff removes the edges below it from the network, "
+	         		+ "a lower one adds back the edges removed before. It cannot be lower than the cutoff the network was retrieved with.",
+	         exampleStringValue = "0.7")
+	public Double cutoff = null;
+
+	private int numRemovedEdges;
+	private int numRestoredEdges;
+	private int numUpdatedMetaEdges;
+
+	public RethresholdNetworkTask(AppManager manager) {
+		this.manager = manager;
+		this.numRemovedEdges = 0;
+		this.numRestoredEdges = 0;
+		this.numUpdatedMetaEdges = 0;
+	}
+
+	@ProvidesTitle
+	public String getName() {
+		return "Change confidence cutoff";
+	}
+
+	@Override
+	public void run(TaskMonitor taskMonitor) throws Exception {
+		taskMonitor.setTitle(this.getName());
+
+		if (network == null)
+			network = manager.getCurrentNetwork();
+		if (network == null || network.getDefaultNetworkTable().getColumn(SharedProperties.COLLAPSED) == null
+				|| network.getDefaultEdgeTable().getColumn(SharedProperties.SCORE) == null) {
+			taskMonitor.showMessage(Level.ERROR, "The network was not retrieved with Proteo Visualizer.");
+			return;
+		}
+		if (cutoff == null || cutoff < 0.0 || cutoff > 1.0) {
+			taskMonitor.showMessage(Level.ERROR, "Please enter a confidence cutoff between 0.0 and 1.0.");
+			return;
+		}
+		// the cutoff the network was retrieved with is kept the first time it is changed
+		double currentCutoff = LazyMemberEdges.getCutoff(network);
+		CyTable hiddenNetworkTable = network.getTable(CyNetwork.class, CyNetwork.HIDDEN_ATTRS);
+		if (hiddenNetworkTable.getColumn(SharedProperties.RETRIEVAL_CUTOFF) == null)
+			hiddenNetworkTable.createColumn(SharedProperties.RETRIEVAL_CUTOFF, Double.class, false);
+		Double retrievalCutoff = network.getRow(network, CyNetwork.HIDDEN_ATTRS).get(SharedProperties.RETRIEVAL_CUTOFF, Double.class);
+		if (retrievalCutoff == null) {
+			retrievalCutoff = Double.valueOf(currentCutoff);
+			network.getRow(network, CyNetwork.HIDDEN_ATTRS).set(SharedProperties.RETRIEVAL_CUTOFF, retrievalCutoff);
+		}
+		if (cutoff < retrievalCutoff) {
+			// the edges below this cutoff were never retrieved
+			taskMonitor.showMessage(Level.ERROR, "The network was retrieved with the cutoff " + retrievalCutoff
+					+ ". Please retrieve the network again to use a lower cutoff.");
+			return;
+		}
+
+		CyRootNetwork rootNetwork = ((CySubNetwork) network).getRootNetwork();
+		CyGroupManager groupManager = manager.getService(CyGroupManager.class);
+		Set<CyGroup> groups = groupManager.getGroupSet(network);
+
+		// the edges of the network, including the ones hidden in collapsed groups
+		Set<CyEdge> networkEdges = new HashSet<CyEdge>(network.getEdgeList());
+		Map<CyNode, List<CyNode>> groupNodesForNode = new HashMap<CyNode, List<CyNode>>();
+		Map<CyNode, CyGroup> groupForGroupNode = new HashMap<CyNode, CyGroup>();
+		Set<CyNode> proteinNodes = new HashSet<CyNode>();
+		for (CyGroup group : groups) {
+			networkEdges.addAll(group.getInternalEdgeList());
+			networkEdges.addAll(group.getExternalEdgeList());
+			groupForGroupNode.put(group.getGroupNode(), group);
+			for (CyNode node : group.getNodeList()) {
+				groupNodesForNode.computeIfAbsent(node, k -> new ArrayList<CyNode>()).add(group.getGroupNode());
+				proteinNodes.add(node);
+			}
+		}
+		for (CyNode node : network.getNodeList()) {
+			if (!groupForGroupNode.containsKey(node))
+				proteinNodes.add(node);
+		}
+
+		// the edges below a higher cutoff, meta edges and edges without score (identity, shared proteins) are kept
+		List<CyEdge> edgesToRemove = new ArrayList<CyEdge>();
+		for (CyEdge edge : networkEdges) {
+			if (!LazyMemberEdges.isMetaEdge(rootNetwork, edge) && LazyMemberEdges.isBelowCutoff(rootNetwork, edge, cutoff))
+				edgesToRemove.add(edge);
+		}
+		// the edges removed before that are above a lower cutoff, i.e. the edges of the root network between
+		// the proteins of the network that it does not contain anymore
+		Set<CyEdge> edgesToRestore = new LinkedHashSet<CyEdge>();
+		if (cutoff < currentCutoff) {
+			for (CyNode node : proteinNodes) {
+				for (CyEdge edge : rootNetwork.getAdjacentEdgeList(node, Type.ANY)) {
+					if (networkEdges.contains(edge) || !LazyMemberEdges.isMemberEdge(rootNetwork, edge)
+							|| rootNetwork.getRow(edge).get(SharedProperties.SCORE, Double.class) == null
+							|| LazyMemberEdges.isBelowCutoff(rootNetwork, edge, cutoff))
+						continue;
+					if (proteinNodes.contains(edge.getSource()) && proteinNodes.contains(edge.getTarget()))
+						edgesToRestore.add(edge);
+				}
+			}
+		}
+		taskMonitor.setStatusMessage("Edges to remove: " + edgesToRemove.size() + ", edges to add back: " + edgesToRestore.size());
+
+		// keep track of the edges that leave or are inside a group
+		Map<CyGroup, List<CyEdge>> edgesToRemoveForGroup = new HashMap<CyGroup, List<CyEdge>>();
+		for (CyEdge edge : edgesToRemove) {
+			for (CyGroup group : getGroups(edge, groupNodesForNode, groupForGroupNode))
+				edgesToRemoveForGroup.computeIfAbsent(group, k -> new ArrayList<CyEdge>()).add(edge);
+		}
+		Map<CyGroup, List<CyEdge>> edgesToRestoreForGroup = new HashMap<CyGroup, List<CyEdge>>();
+		for (CyEdge edge : edgesToRestore) {
+			for (CyGroup group : getGroups(edge, groupNodesForNode, groupForGroupNode))
+				edgesToRestoreForGroup.computeIfAbsent(group, k -> new ArrayList<CyEdge>()).add(edge);
+		}
+
+		// remove the edges from the groups and the network only, the root network keeps them
+		for (CyGroup group : edgesToRemoveForGroup.keySet()) {
+			group.removeEdges(edgesToRemoveForGroup.get(group));
+		}
+		network.removeEdges(edgesToRemove);
+		numRemovedEdges = edgesToRemove.size();
+		// and add back the other ones, the collapsed groups create the meta edges they need
+		for (CyEdge edge : edgesToRestore) {
+			if (network.containsNode(edge.getSource()) && network.containsNode(edge.getTarget()))
+				((CySubNetwork) network).addEdge(edge);
+		}
+		for (CyGroup group : edgesToRestoreForGroup.keySet()) {
+			group.addEdges(edgesToRestoreForGroup.get(group));
+		}
+		numRestoredEdges = edgesToRestore.size();
+
+		// the aggregation leaves out the edges below the cutoff of the network
+		if (network.getDefaultNetworkTable().getColumn(SharedProperties.CUTOFF) == null)
+			network.getDefaultNetworkTable().createColumn(SharedProperties.CUTOFF, Double.class, false);
+		network.getRow(network).set(SharedProperties.CUTOFF, cutoff);
+
+		// find the meta edges that aggregate one of these edges, i.e. the meta edges between
+		// the endpoints of the edge or the group nodes of the groups containing them
+		Set<CyEdge> touchedMetaEdges = new LinkedHashSet<CyEdge>();
+		List<CyEdge> changedEdges = new ArrayList<CyEdge>(edgesToRemove);
+		changedEdges.addAll(edgesToRestore);
+		for (CyEdge edge : changedEdges) {
+			List<CyNode> sourceNodes = getNodeAndGroupNodes(edge.getSource(), groupNodesForNode);
+			List<CyNode> targetNodes = getNodeAndGroupNodes(edge.getTarget(), groupNodesForNode);
+			for (CyNode source : sourceNodes) {
+				for (CyNode target : targetNodes) {
+					if (source == edge.getSource() && target == edge.getTarget())
+						continue;
+					for (CyEdge metaEdge : rootNetwork.getConnectingEdgeList(source, target, Type.ANY)) {
+						if (LazyMemberEdges.isMetaEdge(rootNetwork, metaEdge))
+							touchedMetaEdges.add(metaEdge);
+					}
+				}
+			}
+		}
+
+		// aggregate the touched meta edges again, from the remaining edges of each group read once
+		GroupEdgeIndex edgeIndex = new GroupEdgeIndex(rootNetwork, network, groupManager);
+		EdgeAttributeAggregator aggregator = new EdgeAttributeAggregator(network.getDefaultEdgeTable());
+		List<CyEdge> emptyMetaEdges = new ArrayList<CyEdge>();
+		Map<CyGroup, List<CyEdge>> emptyMetaEdgesForGroup = new HashMap<CyGroup, List<CyEdge>>();
+		for (CyEdge metaEdge : touchedMetaEdges) {
+			CyNode source = metaEdge.getSource();
+			CyNode target = metaEdge.getTarget();
+			CyGroup group = groupForGroupNode.get(source);
+			CyNode neighbor = target;
+			if (group == null) {
+				group = groupForGroupNode.get(target);
+				neighbor = source;
+			}
+			if (group == null)
+				continue;
+			if (network.containsEdge(metaEdge)) {
+				// the group is collapsed: aggregate the edges from all group members
+				manager.aggregateGroupEdgeAttributes(network, group, metaEdge, neighbor, edgeIndex, aggregator);
+			} else if (rootNetwork.getDefaultEdgeTable().getColumn(SharedProperties.EDGEAGGREGATED) != null) {
+				// the group is expanded: the edge is aggregated again when the group is collapsed
+				rootNetwork.getRow(metaEdge).set(SharedProperties.EDGEAGGREGATED, Boolean.FALSE);
+			}
+			numUpdatedMetaEdges++;
+			// remove the meta edges that do not aggregate any edge anymore
+			if (edgeIndex.getConnectingEdges(group, neighbor).isEmpty()) {
+				emptyMetaEdges.add(metaEdge);
+				emptyMetaEdgesForGroup.computeIfAbsent(group, k -> new ArrayList<CyEdge>()).add(metaEdge);
+				CyGroup neighborGroup = groupForGroupNode.get(neighbor);
+				if (neighborGroup != null)
+					emptyMetaEdgesForGroup.computeIfAbsent(neighborGroup, k -> new ArrayList<CyEdge>()).add(metaEdge);
+			}
+		}
+		for (CyGroup group : emptyMetaEdgesForGroup.keySet()) {
+			group.removeEdges(emptyMetaEdgesForGroup.get(group));
+		}
+		network.removeEdges(emptyMetaEdges);
+		// the meta edges are only removed from the root network if no other network contains them
+		Set<CyNetwork> ownNetworks = new HashSet<CyNetwork>();
+		ownNetworks.add(network);
+		for (CyGroup group : groups)
+			ownNetworks.add(group.getGroupNetwork());
+		List<CyEdge> unusedMetaEdges = new ArrayList<CyEdge>();
+		for (CyEdge metaEdge : emptyMetaEdges) {
+			if (!isInOtherNetwork(rootNetwork, metaEdge, ownNetworks))
+				unusedMetaEdges.add(metaEdge);
+		}
+		rootNetwork.removeEdges(unusedMetaEdges);
+
+		// the edges of the pending copies are the ones of their protein nodes, which were not touched above
+		for (CyGroup group : groups) {
+			if (!group.isCollapsed(network) || !LazyMemberEdges.hasPendingCopies(group))
+				continue;
+			LazyMemberEdges.updateLazyMetaEdges(manager, network, group, aggregator);
+			for (CyEdge metaEdge : network.getAdjacentEdgeList(group.getGroupNode(), Type.ANY)) {
+				if (!LazyMemberEdges.isMetaEdge(rootNetwork, metaEdge) || LazyMemberEdges.isLazyMetaEdge(rootNetwork, metaEdge))
+					continue;
+				CyNode neighbor = metaEdge.getSource().equals(group.getGroupNode()) ? metaEdge.getTarget() : metaEdge.getSource();
+				manager.aggregateGroupEdgeAttributes(network, group, metaEdge, neighbor, edgeIndex, aggregator);
+			}
+		}
+		taskMonitor.setStatusMessage("Removed " + numRemovedEdges + " edges, added back " + numRestoredEdges
+				+ " edges, updated " + numUpdatedMetaEdges + " aggregated edges (" + emptyMetaEdges.size() + " removed).");
+
+		manager.setGroupVisualMappings(cutoff);
+	}
+
+	// the groups containing one of the endpoints of the edge
+	private static Set<CyGroup> getGroups(CyEdge edge, Map<CyNode, List<CyNode>> groupNodesForNode,
+			Map<CyNode, CyGroup> groupForGroupNode) {
+		Set<CyGroup> groups = new HashSet<CyGroup>();
+		for (CyNode groupNode : groupNodesForNode.getOrDefault(edge.getSource(), Collections.emptyList()))
+			groups.add(groupForGroupNode.get(groupNode));
+		for (CyNode groupNode : groupNodesForNode.getOrDefault(edge.getTarget(), Collections.emptyList()))
+			groups.add(groupForGroupNode.get(groupNode));
+		return groups;
+	}
+
+	private static boolean isInOtherNetwork(CyRootNetwork rootNetwork, CyEdge edge, Set<CyNetwork> excludedNetworks) {
+		for (CySubNetwork subNetwork : rootNetwork.getSubNetworkList()) {
+			if (!excludedNetworks.contains(subNetwork) && subNetwork.containsEdge(edge))
+				return true;
+		}
+		return false;
+	}
+
+	// the node first, followed by the group nodes of the groups it belongs to
+	private static List<CyNode> getNodeAndGroupNodes(CyNode node, Map<CyNode, List<CyNode>> groupNodesForNode) {
+		List<CyNode> nodes = new ArrayList<CyNode>();
+		nodes.add(node);
+		Collection<CyNode> groupNodes = groupNodesForNode.get(node);
+		if (groupNodes != null) {
+			for (CyNode groupNode : new HashSet<CyNode>(groupNodes))
+				nodes.add(groupNode);
+		}
+		return nodes;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <R> R getResults(Class<? extends R> type) {
+		if (type.equals(String.class)) {
+			return (R) ("Removed " + numRemovedEdges + " edges, added back " + numRestoredEdges + " edges and updated "
+					+ numUpdatedMetaEdges + " aggregated edges.");
+		} else if (type.equals(JSONResult.class)) {
+			JSONResult res = () -> {
+				return "{\"removedEdges\":" + numRemovedEdges + ",\"restoredEdges\":" + numRestoredEdges
+						+ ",\"updatedEdges\":" + numUpdatedMetaEdges + "}";
+			};
+			return (R) res;
+		}
+		return null;
+	}
+
+	@Override
+	public List<Class<?>> getResultClasses() {
+		return List.of(String.class, JSONResult.class);
+	}
+}
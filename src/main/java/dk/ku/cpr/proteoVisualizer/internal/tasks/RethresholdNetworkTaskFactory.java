@@ -0,0 +1,21 @@
+package dk.ku.cpr.proteoVisualizer.internal.tasks;
+
+import org.cytoscape.work.AbstractTaskFactory;
+import org.cytoscape.work.TaskIterator;
+
+import dk.ku.cpr.proteoVisualizer.internal.model.AppManager;
+
+public class RethresholdNetworkTaskFactory extends AbstractTaskFactory {
+	private AppManager manager;
+
+	public RethresholdNetworkTaskFactory(AppManager manager) {
+		super();
+		this.manager = manager;
+	}
+
+	@Override
+	public TaskIterator createTaskIterator() {
+		return new TaskIterator(new RethresholdNetworkTask(this.manager));
+	}
+
+}
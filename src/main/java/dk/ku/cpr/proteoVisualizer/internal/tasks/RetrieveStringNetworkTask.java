@@ -1,71 +1,114 @@
 package dk.ku.cpr.proteoVisualizer.internal.tasks;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import javax.swing.JOptionPane;
 
+import org.apache.log4j.Logger;
+import org.cytoscape.application.CyUserLog;
 import org.cytoscape.application.swing.CySwingApplication;
 import org.cytoscape.group.CyGroup;
 import org.cytoscape.group.CyGroupFactory;
-import org.cytoscape.model.CyColumn;
+import org.cytoscape.group.CyGroupManager;
 import org.cytoscape.model.CyEdge;
 import org.cytoscape.model.CyEdge.Type;
-import org.cytoscape.model.CyIdentifiable;
 import org.cytoscape.model.CyNetwork;
+import org.cytoscape.model.CyNetworkFactory;
+import org.cytoscape.model.CyNetworkManager;
 import org.cytoscape.model.CyNode;
-import org.cytoscape.model.CyTable;
+import org.cytoscape.model.subnetwork.CyRootNetwork;
+import org.cytoscape.model.subnetwork.CySubNetwork;
 import org.cytoscape.view.layout.CyLayoutAlgorithm;
 import org.cytoscape.view.layout.CyLayoutAlgorithmManager;
 import org.cytoscape.view.model.CyNetworkView;
 import org.cytoscape.view.model.View;
-import org.cytoscape.view.presentation.property.BasicVisualLexicon;
-import org.cytoscape.view.presentation.property.LineTypeVisualProperty;
-import org.cytoscape.view.presentation.property.values.LineType;
-import org.cytoscape.view.vizmap.VisualMappingFunctionFactory;
-import org.cytoscape.view.vizmap.VisualMappingManager;
-import org.cytoscape.view.vizmap.VisualStyle;
-import org.cytoscape.view.vizmap.mappings.BoundaryRangeValues;
-import org.cytoscape.view.vizmap.mappings.ContinuousMapping;
-import org.cytoscape.view.vizmap.mappings.DiscreteMapping;
 import org.cytoscape.work.AbstractTask;
-import org.cytoscape.work.FinishStatus;
 import org.cytoscape.work.ObservableTask;
 import org.cytoscape.work.ProvidesTitle;
-import org.cytoscape.work.TaskIterator;
 import org.cytoscape.work.TaskMonitor;
 import org.cytoscape.work.TaskMonitor.Level;
-import org.cytoscape.work.TaskObserver;
 import org.cytoscape.work.TunableSetter;
 import org.cytoscape.work.json.JSONResult;
 
 import dk.ku.cpr.proteoVisualizer.internal.model.AppManager;
 import dk.ku.cpr.proteoVisualizer.internal.model.NetworkType;
+import dk.ku.cpr.proteoVisualizer.internal.model.ProteinGroupMapping;
+import dk.ku.cpr.proteoVisualizer.internal.model.ReportFormat;
 import dk.ku.cpr.proteoVisualizer.internal.model.SharedProperties;
+import dk.ku.cpr.proteoVisualizer.internal.model.StringNetworkPayload;
+import dk.ku.cpr.proteoVisualizer.internal.model.StringSpecies;
+import dk.ku.cpr.proteoVisualizer.internal.model.StringQueryKey;
+import dk.ku.cpr.proteoVisualizer.internal.utils.EdgeAttributeAggregator;
+import dk.ku.cpr.proteoVisualizer.internal.utils.GroupAttributeAggregator;
+import dk.ku.cpr.proteoVisualizer.internal.utils.GroupEdgeIndex;
+import dk.ku.cpr.proteoVisualizer.internal.utils.LazyMemberEdges;
+import dk.ku.cpr.proteoVisualizer.internal.utils.LongIntHashMap;
+import dk.ku.cpr.proteoVisualizer.internal.utils.ProteinGroupFilter;
+import dk.ku.cpr.proteoVisualizer.internal.utils.ProteinGroupParser;
+import dk.ku.cpr.proteoVisualizer.internal.utils.ProteinGroupReportReader;
+import dk.ku.cpr.proteoVisualizer.internal.utils.RowCopier;
+import dk.ku.cpr.proteoVisualizer.internal.utils.SharedNodeAttributes;
+import dk.ku.cpr.proteoVisualizer.internal.utils.StringDbIndex;
 import dk.ku.cpr.proteoVisualizer.internal.utils.SwingUtil;
 
-public class RetrieveStringNetworkTask extends AbstractTask implements TaskObserver, ObservableTask {
+public class RetrieveStringNetworkTask extends AbstractTask implements ObservableTask {
+	private final Logger logger = Logger.getLogger(CyUserLog.NAME);
 	protected AppManager manager;
 
 	protected String protected_query;
+	protected File protected_queryFile;
+	protected ReportFormat protected_reportFormat;
+	protected String protected_pgColumn;
 	protected String protected_netName;
 	protected String protected_delim;
+	protected String protected_excludedPrefixes;
+	protected int protected_maxProteins;
+	protected boolean protected_stripIsoforms;
 	protected boolean protected_collapsed;
 	protected Integer protected_taxonID;
 	protected String protected_species;
 	protected double protected_cutoff;
 	protected String protected_netType;
-	protected HashMap<String, List<String>> protected_pg2proteinsMap;
-	protected HashMap<String, List<String>> protected_protein2pgsMap;
+	protected ProteinGroupMapping protected_pgMapping;
+	protected boolean protected_useCache;
+	protected boolean protected_offline;
+	protected File protected_offlineDirectory;
+	protected boolean protected_resolveLocally;
+	protected int protected_timeout;
+	protected int protected_retries;
+	protected int protected_chunkSize;
+	protected boolean protected_sharedAttributes;
+	protected boolean protected_lazyMemberEdges;
+	protected String protected_aggregation;
+	protected StringQueryKey queryKey;
+	// query term of each STRING identifier, if the accessions were resolved locally
+	protected Map<String, String> resolvedQueryTerms;
+	protected List<String> unmatchedProteins;
 
 	protected CyNetwork retrievedNetwork;
+	protected RowCopier nodeRowCopier;
+	protected RowCopier edgeRowCopier;
+	private volatile CompletableFuture<?> pipeline;
+	private final ReentrantLock stageLock = new ReentrantLock();
 
 	private boolean isGUI;
 
@@ -74,15 +117,34 @@ public class RetrieveStringNetworkTask extends AbstractTask implements TaskObser
 		this.manager = manager;
 
 		this.protected_query = "";
+		this.protected_queryFile = null;
+		this.protected_reportFormat = ReportFormat.PLAIN;
+		this.protected_pgColumn = null;
 		this.protected_netName = "";
 		this.protected_delim = SharedProperties.DEFAULT_PG_DELIMITER;
+		this.protected_excludedPrefixes = SharedProperties.DEFAULT_EXCLUDED_PREFIXES;
+		this.protected_maxProteins = 0;
+		this.protected_stripIsoforms = false;
 		this.protected_collapsed = true;
-		this.protected_taxonID = 9606;
+		// the taxon is only set if given, otherwise it is the one of the species
+		this.protected_taxonID = null;
 		this.protected_species = "Homo sapiens";
 		this.protected_cutoff = (double) manager.getDefaultConfidence() / 100.0;
 		this.protected_netType = NetworkType.FUNCTIONAL.toString();
-		this.protected_pg2proteinsMap = null;
-		this.protected_protein2pgsMap = null;
+		this.protected_pgMapping = null;
+		this.protected_useCache = true;
+		this.protected_offline = false;
+		this.protected_offlineDirectory = null;
+		this.protected_resolveLocally = true;
+		this.protected_timeout = SharedProperties.STRING_QUERY_TIMEOUT;
+		this.protected_retries = SharedProperties.STRING_QUERY_RETRIES;
+		this.protected_chunkSize = 0;
+		this.protected_sharedAttributes = false;
+		this.protected_lazyMemberEdges = false;
+		this.protected_aggregation = null;
+		this.resolvedQueryTerms = null;
+		this.unmatchedProteins = new ArrayList<String>();
+		this.queryKey = null;
 
 		this.isGUI = false;
 	}
@@ -91,6 +153,18 @@ public class RetrieveStringNetworkTask extends AbstractTask implements TaskObser
 		this.protected_query = query;
 	}
 
+	public void setQueryFile(File queryFile) {
+		this.protected_queryFile = queryFile;
+	}
+
+	public void setReportFormat(ReportFormat reportFormat) {
+		this.protected_reportFormat = reportFormat;
+	}
+
+	public void setPGColumn(String pgColumn) {
+		this.protected_pgColumn = pgColumn;
+	}
+
 	public void setNetworkName(String name) {
 		this.protected_netName = name;
 	}
@@ -99,6 +173,18 @@ public class RetrieveStringNetworkTask extends AbstractTask implements TaskObser
 		this.protected_delim = delim;
 	}
 
+	public void setExcludedPrefixes(String excludedPrefixes) {
+		this.protected_excludedPrefixes = excludedPrefixes;
+	}
+
+	public void setMaxProteins(int maxProteins) {
+		this.protected_maxProteins = maxProteins;
+	}
+
+	public void setStripIsoforms(boolean stripIsoforms) {
+		this.protected_stripIsoforms = stripIsoforms;
+	}
+
 	public void setCollapsed(boolean collapse) {
 		this.protected_collapsed = collapse;
 	}
@@ -123,12 +209,53 @@ public class RetrieveStringNetworkTask extends AbstractTask implements TaskObser
 		this.isGUI = isGUI;
 	}
 
-	public void setPGMapping(HashMap<String, List<String>> pg2proteinsMap) {
-		this.protected_pg2proteinsMap = pg2proteinsMap;
+	public void setUseCache(boolean useCache) {
+		this.protected_useCache = useCache;
+	}
+
+	public void setOffline(boolean offline) {
+		this.protected_offline = offline;
+	}
+
+	public void setOfflineDirectory(File offlineDirectory) {
+		this.protected_offlineDirectory = offlineDirectory;
+	}
+
+	public void setResolveLocally(boolean resolveLocally) {
+		this.protected_resolveLocally = resolveLocally;
+	}
+
+	/** @param timeout The deadline of the STRING query in seconds, 0 for none. */
+	public void setTimeout(int timeout) {
+		this.protected_timeout = timeout;
+	}
+
+	public void setRetries(int retries) {
+		this.protected_retries = retries;
+	}
+
+	/** @param chunkSize The number of proteins per chunk of a large query, 0 to send it at once. */
+	public void setChunkSize(int chunkSize) {
+		this.protected_chunkSize = chunkSize;
+	}
+
+	/** @param sharedAttributes Whether the copies of a protein share its STRING attributes through virtual columns. */
+	public void setSharedAttributes(boolean sharedAttributes) {
+		this.protected_sharedAttributes = sharedAttributes;
+	}
+
+	/** @param lazyMemberEdges Whether the edges of the copies of a protein are only created when their group is expanded. */
+	public void setLazyMemberEdges(boolean lazyMemberEdges) {
+		this.protected_lazyMemberEdges = lazyMemberEdges;
 	}
 
-	public void setProteinMapping(HashMap<String, List<String>> protein2pgsMap) {
-		this.protected_protein2pgsMap = protein2pgsMap;
+	/** @param aggregation The aggregation of the node columns, e.g. "my::column=max,other column=union". */
+	public void setAggregation(String aggregation) {
+		this.protected_aggregation = aggregation;
+	}
+
+	public void setPGMapping(ProteinGroupMapping pgMapping) {
+		this.protected_pgMapping = pgMapping;
 	}
 
 	@ProvidesTitle
@@ -140,8 +267,14 @@ public class RetrieveStringNetworkTask extends AbstractTask implements TaskObser
 	public void run(TaskMonitor taskMonitor) throws Exception {
 		taskMonitor.setTitle(this.getName());
 
-		taskMonitor.setStatusMessage("Query: " + this.protected_query);
+		if (this.protected_queryFile != null)
+			taskMonitor.setStatusMessage("Query file: " + this.protected_queryFile.getAbsolutePath());
+		else
+			taskMonitor.setStatusMessage("Query: " + this.protected_query);
 		taskMonitor.setStatusMessage("Delimiter: " + this.protected_delim);
+		taskMonitor.setStatusMessage("Excluded prefixes: " + this.protected_excludedPrefixes);
+		taskMonitor.setStatusMessage("Max proteins per group: " + (this.protected_maxProteins > 0 ? this.protected_maxProteins : "all"));
+		taskMonitor.setStatusMessage("Strip isoforms: " + this.protected_stripIsoforms);
 		taskMonitor.setStatusMessage("New network name: " + this.protected_netName);
 		taskMonitor.setStatusMessage("Taxon ID: " + this.protected_taxonID);
 		taskMonitor.setStatusMessage("Species: " + this.protected_species);
@@ -152,57 +285,381 @@ public class RetrieveStringNetworkTask extends AbstractTask implements TaskObser
 			taskMonitor.setStatusMessage("You have to give either the Taxon ID or the Species name.");
 			return;
 		}
+		try {
+			GroupAttributeAggregator.parseSpecs(this.protected_aggregation);
+		} catch (IllegalArgumentException e) {
+			taskMonitor.showMessage(Level.ERROR, e.getMessage());
+			return;
+		}
 
-		// TODO: figure out how to best process these delimiters
-		String delim = this.protected_delim;
-		if (delim.equals("|"))
-			delim = "\\|";
-		
-		// process list of query terms and save them somewhere?
-		String query = protected_query;
-		Set<String> queryIDs = new HashSet<String>();
-		
-		//System.out.println("query initial: " + query);
-		//System.out.println("is gui: " + isGUI);
-		// Strip off any blank lines as well as trailing spaces
-		if (isGUI) {
-			queryIDs = new HashSet<String>(Arrays.asList(query.split("\n")));
-		} else {
-			query = query.replaceAll("(?m)^\\s*", "");
-			query = query.replaceAll("(?m)\\s*$", "");
-			queryIDs = new HashSet<String>(Arrays.asList(query.split(",")));
-		}
-		//System.out.println("query ids: " + queryIDs);
-		//System.out.println("delim: " + this.protected_delim);
-		Set<String> allProteins = new HashSet<String>();
-		protected_pg2proteinsMap = new HashMap<String, List<String>>();
-		protected_protein2pgsMap = new HashMap<String, List<String>>();
-			for (String queryID : queryIDs) {
-				// let the user choose the delimiter of the proteins within a group
-				List<String> proteinIDsTemp = Arrays.asList(queryID.split(delim));
-				List<String> proteinIDs = new ArrayList<String>();
-				for (String protein : proteinIDsTemp) {
-					// this is needed in case the IDs are separated by "; " instead of just semicolon
-					protein = protein.strip();
-					proteinIDs.add(protein);
-					List<String> pgs = new ArrayList<String>();
-					if (protected_protein2pgsMap.containsKey(protein)) {
-						pgs = protected_protein2pgsMap.get(protein);
-					} 
-					pgs.add(queryID);
-					protected_protein2pgsMap.put(protein, pgs);
-					protected_pg2proteinsMap.put(queryID, proteinIDs);
+		// the stages run on the executor of the app and are chained by futures, such that the
+		// post-processing never runs on the thread of the stringApp and every stage stops as soon
+		// as the task is cancelled. This worker still waits for the whole chain, because the task
+		// manager runs the next tasks (style and layout) as soon as run() returns. The retrievals
+		// overlap with each other instead: each one has its own worker, and the stages of all of
+		// them share the (unbounded) executor, so the parsing and the cache lookup of a retrieval
+		// are not held up by the STRING query of another one.
+		Executor executor = manager.getExecutor();
+		CompletableFuture<Void> retrieval = CompletableFuture
+				.supplyAsync(() -> runStage(() -> parseStage(taskMonitor)), executor)
+				.thenApplyAsync(mapping -> runStage(() -> resolveStage(taskMonitor, mapping)), executor)
+				.thenComposeAsync(query -> runStage(() -> fetchStage(taskMonitor, query)), executor)
+				.thenApplyAsync(payload -> runStage(() -> buildStage(taskMonitor, payload)), executor)
+				.thenApplyAsync(network -> runStage(() -> groupStage(taskMonitor)), executor)
+				.thenAcceptAsync(groups -> runStage(() -> {
+					aggregateStage(taskMonitor, groups);
+					return null;
+				}), executor);
+		this.pipeline = retrieval;
+		if (this.cancelled)
+			retrieval.cancel(false);
+		try {
+			retrieval.join();
+		} catch (CancellationException e) {
+			awaitRunningStage();
+			return;
+		} catch (CompletionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof CancellationException) {
+				awaitRunningStage();
+				return;
+			}
+			if (cause instanceof StageException) {
+				taskMonitor.showMessage(Level.ERROR, cause.getMessage());
+				return;
+			}
+			if (cause instanceof Exception)
+				throw (Exception) cause;
+			throw e;
+		}
+
+		// the layout is inserted in the task iterator of this worker
+		styleStage(taskMonitor);
+	}
+
+	/**
+	 * Cancels the retrieval without waiting: the running stage stops at the
+	 * next point where it checks for the cancellation, and run() only returns
+	 * once it stopped, such that the network does not change anymore after
+	 * the task.
+	 */
+	@Override
+	public void cancel() {
+		super.cancel();
+		CompletableFuture<?> current = this.pipeline;
+		if (current != null)
+			current.cancel(false);
+	}
+
+	// the stages hold the lock while they run, the STRING query itself is not a stage
+	private <T> T runStage(Supplier<T> stage) {
+		stageLock.lock();
+		try {
+			return stage.get();
+		} finally {
+			stageLock.unlock();
+		}
+	}
+
+	private void awaitRunningStage() {
+		stageLock.lock();
+		stageLock.unlock();
+	}
+
+	/**
+	 * Stops the current stage if the task was cancelled.
+	 */
+	protected void checkCancelled() {
+		if (this.cancelled)
+			throw new CancellationException();
+	}
+
+	/**
+	 * Reads the protein groups, either from the query file or from the query
+	 * string, unless they were already given.
+	 */
+	protected ProteinGroupMapping parseStage(TaskMonitor taskMonitor) {
+		checkCancelled();
+		taskMonitor.setProgress(0.0);
+		if (this.protected_pgMapping == null) {
+			// decoys, contaminants and isoforms are filtered before the query is built
+			ProteinGroupFilter filter = new ProteinGroupFilter(ProteinGroupFilter.parsePrefixes(this.protected_excludedPrefixes),
+					this.protected_maxProteins, this.protected_stripIsoforms);
+			if (this.protected_queryFile != null) {
+				ProteinGroupReportReader reader = new ProteinGroupReportReader(this.protected_reportFormat,
+						this.protected_pgColumn, this.protected_delim);
+				reader.setFilter(filter);
+				try {
+					this.protected_pgMapping = reader.read(this.protected_queryFile.toPath());
+				} catch (IOException e) {
+					throw new StageException("Could not read the query file: " + e.getMessage());
 				}
-				allProteins.addAll(proteinIDs);
+				taskMonitor.setStatusMessage("File format: " + reader.getUsedFormat()
+						+ (reader.getUsedColumn() != null ? " (column '" + reader.getUsedColumn() + "')" : ""));
+			} else {
+				// protein groups are given one per line in the GUI and comma separated in the command
+				ProteinGroupParser parser = new ProteinGroupParser(this.protected_delim, filter);
+				parser.parseQuery(this.protected_query, isGUI ? '\n' : ',');
+				this.protected_pgMapping = parser.getMapping();
+			}
 		}
-		this.protected_query = String.join(",", allProteins);
+		if (this.protected_pgMapping.getProteinGroupCount() == 0)
+			throw new StageException("No protein groups were found in the query.");
+		return this.protected_pgMapping;
+	}
+
+	/**
+	 * Resolves the accessions with the local index of the species, if there is
+	 * one, such that STRING only has to look up identifiers and the unmatched
+	 * accessions are known before the query is sent.
+	 * @return The query to send to the stringApp.
+	 */
+	protected String resolveStage(TaskMonitor taskMonitor, ProteinGroupMapping mapping) {
+		checkCancelled();
+		taskMonitor.setProgress(0.1);
+		return resolveProteins(taskMonitor, mapping.getProteins());
+	}
+
+	/**
+	 * @return The taxon of the query: the given one, otherwise the one of the
+	 *         species, or <code>null</code> if the species is unknown.
+	 */
+	protected Integer getQueryTaxonID() {
+		if (this.protected_taxonID != null)
+			return this.protected_taxonID;
+		StringSpecies species = StringSpecies.getSpecies(this.protected_species);
+		return (species == null) ? null : species.getTaxonID();
+	}
+
+	/**
+	 * Resolves the given accessions with the local index of the species, if
+	 * there is one.
+	 * @return The query to send to the stringApp.
+	 */
+	protected String resolveProteins(TaskMonitor taskMonitor, List<String> proteins) {
+		this.protected_query = String.join(",", proteins);
 		//System.out.println("query formatted: " + this.protected_query);
-		//System.out.println(protected_pg2proteinsMap);
-		//System.out.println(protected_protein2pgsMap);		
-		
+		Integer taxonID = getQueryTaxonID();
+		if ((!this.protected_offline && !this.protected_resolveLocally) || taxonID == null)
+			return this.protected_query;
+
+		StringDbIndex index;
+		try {
+			index = manager.getStringDbIndex(this.protected_offlineDirectory, taxonID);
+		} catch (IOException e) {
+			if (this.protected_offline)
+				throw new StageException("Could not use the offline STRING index: " + e.getMessage());
+			// no local index for this species
+			return this.protected_query;
+		}
+		Map<String, String> resolved = index.resolveAll(proteins, this.unmatchedProteins);
+		if (resolved.isEmpty() && !this.protected_offline) {
+			// the local index only speeds up the query, STRING gets the accessions themselves
+			logger.warn("None of the proteins was found in the local STRING index of taxon " + taxonID
+					+ ", the accessions are sent to STRING.");
+			this.unmatchedProteins.clear();
+			return this.protected_query;
+		}
+		reportUnmatchedProteins(taskMonitor);
+		if (resolved.isEmpty())
+			throw new StageException("None of the proteins was found in the local STRING index.");
+		// the offline index is queried with the accessions directly
+		if (this.protected_offline)
+			return this.protected_query;
+		this.resolvedQueryTerms = resolved;
+		return String.join(",", resolved.keySet());
+	}
+
+	/**
+	 * Gets the network of the query, from the offline index, from the cache or
+	 * from the stringApp.
+	 */
+	protected CompletableFuture<StringNetworkPayload> fetchStage(TaskMonitor taskMonitor, String query) {
+		checkCancelled();
+		taskMonitor.setProgress(0.2);
+
+		// answer the query from the local copy of STRING instead of the stringApp
+		if (this.protected_offline)
+			return CompletableFuture.completedFuture(fetchOfflineNetwork(taskMonitor));
+
+		// use the network from the cache if the same query was already retrieved with the same stringApp
+		this.queryKey = new StringQueryKey(this.protected_taxonID, this.protected_species, this.protected_cutoff,
+				this.protected_netType, this.protected_pgMapping.getProteins(), manager.getStringAppVersion());
+		if (this.protected_useCache) {
+			StringNetworkPayload payload = null;
+			try {
+				payload = manager.getStringNetworkCache().get(this.queryKey);
+			} catch (IOException e) {
+				taskMonitor.showMessage(Level.WARN, "Could not read the cached STRING network: " + e.getMessage());
+			}
+			if (payload != null) {
+				taskMonitor.setStatusMessage("Using the cached STRING network (" + payload.getNodeCount() + " nodes, "
+						+ payload.getEdgeCount() + " edges).");
+				return CompletableFuture.completedFuture(payload);
+			}
+		}
+
+		// identical concurrent retrievals share one STRING query, and each of them builds its own
+		// network from the payload. The shared query outlives the task that started it, so it does
+		// not report to the monitor of that task and does not leave the network of the stringApp.
+		boolean[] started = { false };
+		CompletableFuture<StringNetworkPayload> fetch = manager.getStringRequestCoalescer().submit(this.queryKey, () -> {
+			started[0] = true;
+			List<String> terms = Arrays.asList(query.split(","));
+			if (this.protected_chunkSize > 0 && terms.size() > this.protected_chunkSize)
+				return CompletableFuture.supplyAsync(() -> fetchChunkedNetwork(terms), manager.getExecutor());
+			return CompletableFuture.supplyAsync(() -> fetchStringNetwork(query), manager.getExecutor());
+		});
+		taskMonitor.setStatusMessage(started[0] ? "Querying STRING."
+				: "Waiting for the identical STRING query already in progress.");
+		return fetch.whenComplete((payload, error) -> {
+			Throwable cause = (error instanceof CompletionException) ? error.getCause() : error;
+			if (cause instanceof NoNetworkException && this.isGUI)
+				showNoNetworkDialog();
+			else if (payload != null)
+				taskMonitor.setStatusMessage("Retrieved the STRING network (" + payload.getNodeCount() + " nodes, "
+						+ payload.getEdgeCount() + " edges).");
+		});
+	}
+
+	/**
+	 * Retrieves the network from the offline STRING index of the species.
+	 */
+	protected StringNetworkPayload fetchOfflineNetwork(TaskMonitor taskMonitor) {
+		Integer taxonID = getQueryTaxonID();
+		if (taxonID == null)
+			throw new StageException("The taxon ID is needed to retrieve the network offline.");
+		StringNetworkPayload payload;
+		try {
+			StringDbIndex index = manager.getStringDbIndex(this.protected_offlineDirectory, taxonID);
+			payload = index.query(this.protected_pgMapping.getProteins(), this.protected_species,
+					this.protected_cutoff, this.protected_netType, this.protected_netName);
+		} catch (IOException e) {
+			throw new StageException("Could not use the offline STRING index: " + e.getMessage());
+		}
+		taskMonitor.setStatusMessage("Retrieved the network offline (" + payload.getNodeCount() + " nodes, "
+				+ payload.getEdgeCount() + " edges).");
+		return payload;
+	}
+
+	/**
+	 * Queries STRING with the stringApp. The payload of the network is cached,
+	 * and the network created by the stringApp is destroyed. The query may be
+	 * shared with other retrievals, so it is not stopped when this task is
+	 * cancelled.
+	 */
+	protected StringNetworkPayload fetchStringNetwork(String query) {
+		CyNetwork network = queryStringNetwork(query);
+		if (network == null)
+			throw new NoNetworkException();
+		restoreQueryTerms(network);
+		StringNetworkPayload payload = StringNetworkPayload.fromNetwork(network);
+		manager.getService(CyNetworkManager.class).destroyNetwork(network);
+		cachePayload(payload);
+		return payload;
+	}
+
+	private void showNoNetworkDialog() {
+		// We have to invoke it on another thread because showMessageDialog blocks the
+		// main process
+		SwingUtil.invokeOnEDT(new Runnable() {
+			@Override
+			public void run() {
+				JOptionPane.showMessageDialog(manager.getService(CySwingApplication.class).getJFrame(),
+						"No network was retrieved.\nThe stringApp could not retrieve the queried network.",
+						"Error while retrieving STRING network", JOptionPane.ERROR_MESSAGE);
+			}
+		});
+	}
+
+	/**
+	 * Queries STRING by chunks of proteins. Every pair of chunks is queried
+	 * together, such that the interactions between two chunks are retrieved as
+	 * well, and the networks of the pairs are merged into one payload.
+	 */
+	protected StringNetworkPayload fetchChunkedNetwork(List<String> terms) {
+		List<List<String>> chunks = new ArrayList<List<String>>();
+		for (int i = 0; i < terms.size(); i += this.protected_chunkSize)
+			chunks.add(terms.subList(i, Math.min(terms.size(), i + this.protected_chunkSize)));
+		// the pair of two chunks also covers the interactions within each of them
+		List<String> queries = new ArrayList<String>();
+		for (int i = 0; i < chunks.size(); i++) {
+			for (int j = i + 1; j < chunks.size(); j++) {
+				List<String> pair = new ArrayList<String>(chunks.get(i));
+				pair.addAll(chunks.get(j));
+				queries.add(String.join(",", pair));
+			}
+		}
+		logger.info("Querying STRING with " + chunks.size() + " chunks of at most " + this.protected_chunkSize
+				+ " proteins (" + queries.size() + " pairs of chunks).");
+
+		StringNetworkPayload payload = fetchQueries(queries, logger::info);
+		cachePayload(payload);
+		return payload;
+	}
+
+	/**
+	 * Sends the queries to STRING, at most
+	 * {@link SharedProperties#STRING_CHUNK_PARALLELISM} at a time, and merges
+	 * their networks into one payload. The networks created by the stringApp
+	 * are destroyed once merged. The retrieval fails if one of the queries does
+	 * not return a network.
+	 * @param progress Receives the progress messages.
+	 */
+	protected StringNetworkPayload fetchQueries(List<String> queries, Consumer<String> progress) {
+		ExecutorService pool = Executors
+				.newFixedThreadPool(Math.min(queries.size(), Math.max(1, SharedProperties.STRING_CHUNK_PARALLELISM)));
+		StringNetworkPayload[] payloads = new StringNetworkPayload[queries.size()];
+		try {
+			int[] done = { 0 };
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for (int i = 0; i < queries.size(); i++) {
+				int pair = i;
+				futures.add(pool.submit(() -> {
+					CyNetwork network = queryStringNetwork(queries.get(pair));
+					// the interactions between the two chunks would be missing from the merged network
+					if (network == null)
+						throw new StageException("No network was retrieved for the pair of chunks " + (pair + 1)
+								+ " of " + queries.size() + ", so the retrieved network would be incomplete.");
+					restoreQueryTerms(network);
+					payloads[pair] = StringNetworkPayload.fromNetwork(network);
+					manager.getService(CyNetworkManager.class).destroyNetwork(network);
+					synchronized (done) {
+						done[0]++;
+						progress.accept("Retrieved " + done[0] + " of " + queries.size() + " chunks.");
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof RuntimeException)
+						throw (RuntimeException) e.getCause();
+					throw new StageException("Could not retrieve the network from STRING: " + e.getCause().getMessage());
+				}
+			}
+		} catch (InterruptedException e) {
+			throw new CancellationException();
+		} finally {
+			pool.shutdownNow();
+		}
+
+		StringNetworkPayload payload = StringNetworkPayload.merge(Arrays.asList(payloads), SharedProperties.STRINGID);
+		progress.accept("Merged the chunks into one network (" + payload.getNodeCount() + " nodes, "
+				+ payload.getEdgeCount() + " edges).");
+		return payload;
+	}
+
+	/**
+	 * Calls the protein query of the stringApp, with a deadline and retries.
+	 * @return The network created by the stringApp, or <code>null</code> if none
+	 *         was retrieved.
+	 */
+	protected CyNetwork queryStringNetwork(String query) {
 		// We set the arguments for the STRING command
 		Map<String, Object> args = new HashMap<>();
-		args.put("query", this.protected_query);
+		args.put("query", query);
 		if (this.protected_taxonID != null) {
 			args.put("taxonID", this.protected_taxonID);
 		}
@@ -214,132 +671,160 @@ public class RetrieveStringNetworkTask extends AbstractTask implements TaskObser
 		args.put("limit", "0");
 		args.put("newNetName", this.protected_netName);
 
-		// We call the STRING command
-		StringCommandTaskFactory factory = new StringCommandTaskFactory(this.manager,
-				SharedProperties.STRING_CMD_PROTEIN_QUERY, args, this);
-		TaskIterator ti = factory.createTaskIterator();
-		this.manager.executeSynchronousTask(ti, this);
-
-		// the STRING command is executed synchronously, so we can check the result
-		if (this.getResults(CyNetwork.class) == null) {
-			// If there is not result: we display an error message.
-			taskMonitor.showMessage(Level.ERROR, "No network was retrieved.");
-
-			if (this.isGUI) {
-				// We have to invoke it on another thread because showMessageDialog blocks the
-				// main process
-				SwingUtil.invokeOnEDT(new Runnable() {
-					@Override
-					public void run() {
-						JOptionPane.showMessageDialog(manager.getService(CySwingApplication.class).getJFrame(),
-								"No network was retrieved.\nThe stringApp could not retrieve the queried network.",
-								"Error while retrieving STRING network", JOptionPane.ERROR_MESSAGE);
-					}
-				});
+		// We call the STRING command, with a deadline and retries
+		try {
+			return manager.getStringCommandExecutor().execute(SharedProperties.STRING_CMD_PROTEIN_QUERY, args,
+					CyNetwork.class, this.protected_timeout * 1000L, this.protected_retries);
+		} catch (InterruptedException | CancellationException e) {
+			throw new CancellationException();
+		} catch (Exception e) {
+			throw new StageException("Could not retrieve the network from STRING: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Sets back the accessions as query terms if the accessions were resolved
+	 * locally, since STRING was queried with the STRING identifiers.
+	 */
+	protected void restoreQueryTerms(CyNetwork network) {
+		if (this.resolvedQueryTerms == null)
+			return;
+		for (CyNode node : network.getNodeList()) {
+			String queryTerm = network.getRow(node).get(SharedProperties.QUERYTERM, String.class);
+			if (queryTerm != null && this.resolvedQueryTerms.containsKey(queryTerm))
+				network.getRow(node).set(SharedProperties.QUERYTERM, this.resolvedQueryTerms.get(queryTerm));
+		}
+	}
+
+	private void cachePayload(StringNetworkPayload payload) {
+		if (this.protected_useCache && this.queryKey != null) {
+			try {
+				manager.getStringNetworkCache().put(this.queryKey, payload);
+			} catch (IOException e) {
+				logger.warn("Could not cache the STRING network: " + e.getMessage());
 			}
 		}
 	}
 
-	public void copyRow(CyTable fromTable, CyTable toTable, CyIdentifiable from, CyIdentifiable to) {
-		for (CyColumn col : fromTable.getColumns()) {
-			if (col.getName().equals(CyNetwork.SUID))
-				continue;
-			if (col.getName().equals(CyNetwork.SELECTED))
-				continue;
-			Object v = fromTable.getRow(from.getSUID()).getRaw(col.getName());
-			toTable.getRow(to.getSUID()).set(col.getName(), v);
+	/**
+	 * Creates the network of the payload. It is registered with its view once
+	 * its groups are collapsed, otherwise it is registered at once (the view of
+	 * the expanded groups is set up when they are created).
+	 */
+	protected CyNetwork buildStage(TaskMonitor taskMonitor, StringNetworkPayload payload) {
+		checkCancelled();
+		taskMonitor.setProgress(0.5);
+		retrievedNetwork = payload.createNetwork(manager.getService(CyNetworkFactory.class));
+		if (this.protected_netName != null && !this.protected_netName.isBlank())
+			retrievedNetwork.getRow(retrievedNetwork).set(CyNetwork.NAME, this.protected_netName);
+		if (!this.protected_collapsed)
+			manager.registerNetwork(retrievedNetwork);
+		return retrievedNetwork;
+	}
+
+	protected List<CyGroup> groupStage(TaskMonitor taskMonitor) {
+		checkCancelled();
+		taskMonitor.setProgress(0.6);
+		taskMonitor.setStatusMessage("Creating the protein groups.");
+		// the groups are created, collapsed and aggregated without handling the events of each group,
+		// and without any event at all if the network has no view yet
+		manager.startBulkGroupChanges(retrievedNetwork);
+		try {
+			return createProteinGroups();
+		} finally {
+			manager.endBulkGroupChanges(retrievedNetwork);
+			if (this.protected_collapsed)
+				manager.registerNetwork(retrievedNetwork);
 		}
 	}
 
-	
-	@SuppressWarnings("unchecked")
-	@Override
-	public void taskFinished(ObservableTask task) {
-		if (!task.getClass().getSimpleName().equals("ProteinQueryTask")) 
+	protected void aggregateStage(TaskMonitor taskMonitor, List<CyGroup> groups) {
+		checkCancelled();
+		taskMonitor.setProgress(0.8);
+		taskMonitor.setStatusMessage("Aggregating the edges of the protein groups.");
+		aggregateGroupEdges(groups);
+	}
+
+	protected void styleStage(TaskMonitor taskMonitor) {
+		checkCancelled();
+		taskMonitor.setProgress(0.9);
+		applyStyleAndLayout();
+		taskMonitor.setProgress(1.0);
+	}
+
+	/**
+	 * Warns about the accessions that were not found in STRING.
+	 */
+	protected void reportUnmatchedProteins(TaskMonitor taskMonitor) {
+		if (this.unmatchedProteins.isEmpty())
 			return;
-		
-		// get network on which the task was executed
-		retrievedNetwork = task.getResults(CyNetwork.class);
+		int shown = Math.min(this.unmatchedProteins.size(), 10);
+		taskMonitor.showMessage(Level.WARN, this.unmatchedProteins.size() + " of "
+				+ this.protected_pgMapping.getProteinCount() + " accessions were not found in STRING: "
+				+ String.join(", ", this.unmatchedProteins.subList(0, shown))
+				+ (shown < this.unmatchedProteins.size() ? ", ..." : ""));
+	}
 
-		// add needed new columns
-		manager.createBooleanColumnIfNeeded(retrievedNetwork.getDefaultNetworkTable(), Boolean.class,
-				SharedProperties.COLLAPSED, false);
-		manager.createBooleanColumnIfNeeded(retrievedNetwork.getDefaultNodeTable(), Boolean.class,
-				SharedProperties.USE_ENRICHMENT, false);
-		manager.createStringColumnIfNeeded(retrievedNetwork.getDefaultNodeTable(), String.class,
-				SharedProperties.PROTEINGROUP, "");
-		manager.createStringColumnIfNeeded(retrievedNetwork.getDefaultNodeTable(), String.class,
-				SharedProperties.MATCHEDID, "");
-		manager.createBooleanColumnIfNeeded(retrievedNetwork.getDefaultEdgeTable(), Boolean.class,
-				SharedProperties.EDGEAGGREGATED, false);
-		//manager.createDoubleColumnIfNeeded(retrievedNetwork.getDefaultEdgeTable(), Double.class,
-		//		SharedProperties.EDGEPROB, null);
-		manager.createIntegerColumnIfNeeded(retrievedNetwork.getDefaultEdgeTable(), Integer.class,
-				SharedProperties.EDGEPOSSIBLE, null);
-		manager.createIntegerColumnIfNeeded(retrievedNetwork.getDefaultEdgeTable(), Integer.class,
-				SharedProperties.EDGEEXISTING, null);
-		manager.createIntegerColumnIfNeeded(retrievedNetwork.getDefaultEdgeTable(), Integer.class,
-				SharedProperties.EDGESHARED, 0);
-		
-		// create a map of query term to node
-		HashMap<String, CyNode> queryTerm2node = new HashMap<String, CyNode>();
+	/**
+	 * Creates the protein groups of the retrieved network and aggregates their
+	 * node attributes. The network is the one retrieved by the stringApp, or
+	 * the one built from the cache or the offline index.
+	 * @return The protein groups with more than one node.
+	 */
+	protected List<CyGroup> createProteinGroups() {
+
+		createProteinGroupColumns();
+
+		ProteinGroupMapping mapping = this.protected_pgMapping;
+
+		// create a map of protein index to node
+		CyNode[] proteinNodes = new CyNode[mapping.getProteinCount()];
 		for (CyNode node : retrievedNetwork.getNodeList()) {
 			String queryTerm = retrievedNetwork.getRow(node).get(SharedProperties.QUERYTERM, String.class);
 			if (queryTerm != null) {
-				queryTerm2node.put(queryTerm, node);
+				int protein = mapping.getProteinIndex(queryTerm);
+				if (protein >= 0)
+					proteinNodes[protein] = node;
 				retrievedNetwork.getRow(node).set(SharedProperties.MATCHEDID, queryTerm);
 			}
 		}
+		// without the local index, the accessions not found by STRING are only known now
+		if (this.resolvedQueryTerms == null && !this.protected_offline && this.unmatchedProteins.isEmpty()) {
+			for (int protein = 0; protein < mapping.getProteinCount(); protein++) {
+				if (proteinNodes[protein] == null)
+					this.unmatchedProteins.add(mapping.getProteins().get(protein));
+			}
+			if (!this.unmatchedProteins.isEmpty())
+				logger.warn(this.unmatchedProteins.size() + " of " + mapping.getProteinCount()
+						+ " accessions were not found in STRING.");
+		}
+
+		// move the STRING attributes to a table shared by the copies of the proteins
+		if (this.protected_sharedAttributes && SharedNodeAttributes.share(manager, retrievedNetwork) != null) {
+			// the shared columns are not copied anymore
+			nodeRowCopier = new RowCopier(retrievedNetwork.getDefaultNodeTable());
+		}
 
 		// duplicate nodes (and their adjacent edges) if they belong to more than one protein group
-		HashMap<CyNode, LinkedHashSet<CyNode>> protein2dupProteinsMap = new HashMap<CyNode, LinkedHashSet<CyNode>>();
-		for (String protein : protected_protein2pgsMap.keySet()) {
-			List<String> proteinGroups = protected_protein2pgsMap.get(protein);
-			if (proteinGroups.size() == 1) // ignore if there is a 1-to-1 mapping between protein and protein group
+		// the i-th copy of a protein node is used for the i-th protein group of the protein
+		// the adjacent edges of the copies are only created on expand with lazy member edges, which needs collapsed groups
+		boolean lazy = this.protected_lazyMemberEdges && this.protected_collapsed;
+		CyNode[][] proteinNodeCopies = new CyNode[mapping.getProteinCount()][];
+		for (int protein = 0; protein < mapping.getProteinCount(); protein++) {
+			int numProteinGroups = mapping.getGroupCount(protein);
+			if (numProteinGroups == 1) // ignore if there is a 1-to-1 mapping between protein and protein group
 				continue;
-			if (!queryTerm2node.containsKey(protein)) // ignore if we did not get a node from STRING for this ID
+			if (proteinNodes[protein] == null) // ignore if we did not get a node from STRING for this ID
 				continue;
-			CyNode proteinNode = queryTerm2node.get(protein);
-			LinkedHashSet<CyNode> duplicatedNodes = new LinkedHashSet<CyNode>();
-			duplicatedNodes.add(proteinNode);
-			for (int i = 1; i < proteinGroups.size(); i++) {
-				CyNode newDuplNode = retrievedNetwork.addNode();
-				duplicatedNodes.add(newDuplNode);
-				// copy node attributes
-				copyRow(retrievedNetwork.getDefaultNodeTable(), retrievedNetwork.getDefaultNodeTable(), proteinNode,
-						newDuplNode);
-				// create edges and copy edge attributes
-				List<CyEdge> proteinNodeEdges = retrievedNetwork.getAdjacentEdgeList(proteinNode, Type.ANY);
-				for (CyEdge edge : proteinNodeEdges) {
-					// we should not assume that the original protein node is the source in all edges
-					CyNode sourceNode = edge.getSource();
-					CyNode targetNode = edge.getTarget();
-					boolean isDirected = edge.isDirected();
-					// create a new edge 
-					CyEdge newEdge = null;
-					if (sourceNode.equals(proteinNode)) {
-						newEdge = retrievedNetwork.addEdge(newDuplNode, targetNode, isDirected);
-					} else if (targetNode.equals(proteinNode)) {
-						newEdge = retrievedNetwork.addEdge(sourceNode, newDuplNode, isDirected);
-					} else {
-						System.out.println("something goes wrong with the edge copying");
-						continue;
-					}
-					// copy edge attributes
-					copyRow(retrievedNetwork.getDefaultEdgeTable(), retrievedNetwork.getDefaultEdgeTable(), edge,
-							newEdge);
-				}
-				// add a new identity edge between the duplicated nodes
-				CyEdge newIdentityEdge = retrievedNetwork.addEdge(proteinNode, newDuplNode, false);
-				retrievedNetwork.getRow(newIdentityEdge).set(CyEdge.INTERACTION, SharedProperties.EDGE_TYPE_IDENTITY);
-				// we need to set the edge type ourselves
-				retrievedNetwork.getRow(newIdentityEdge).set(CyNetwork.NAME,
-						retrievedNetwork.getRow(proteinNode).get(CyNetwork.NAME, String.class) + " (" + SharedProperties.EDGE_TYPE_IDENTITY + ") "
-								+ retrievedNetwork.getRow(newDuplNode).get(CyNetwork.NAME, String.class));
+			CyNode proteinNode = proteinNodes[protein];
+			CyNode[] duplicatedNodes = new CyNode[numProteinGroups];
+			duplicatedNodes[0] = proteinNode;
+			List<CyNode> copies = duplicateProteinNode(proteinNode, numProteinGroups - 1, !lazy);
+			for (int i = 1; i < numProteinGroups; i++) {
+				duplicatedNodes[i] = copies.get(i - 1);
 			}
-			protein2dupProteinsMap.put(proteinNode, duplicatedNodes);
+			proteinNodeCopies[protein] = duplicatedNodes;
 		}
-
 		// find all PGs with more than one node and create group nodes for them
 		// in addition, handle all node attribtues! 
 		CyGroupFactory groupFactory = manager.getService(CyGroupFactory.class);
@@ -347,22 +832,28 @@ public class RetrieveStringNetworkTask extends AbstractTask implements TaskObser
 		manager.setGroupSettings();
 		// go over all protein groups
 		List<CyGroup> groups = new ArrayList<CyGroup>();
-		Map<CyNode, CyGroup> dupProteinToGroup = new HashMap<CyNode, CyGroup>();
-		for (String pg : protected_pg2proteinsMap.keySet()) {
-			List<String> proteins = protected_pg2proteinsMap.get(pg);
+		List<List<CyNode>> groupMembers = new ArrayList<List<CyNode>>();
+		List<CyNode> reprNodes = new ArrayList<CyNode>();
+		int[] nextProteinNodeCopy = new int[mapping.getProteinCount()];
+		// the protein group of each copy, and the node standing for each protein group (its group node or its only node)
+		int[][] proteinCopyGroups = new int[mapping.getProteinCount()][];
+		CyNode[] proteinGroupNodes = new CyNode[mapping.getProteinGroupCount()];
+		for (int pgIndex = 0; pgIndex < mapping.getProteinGroupCount(); pgIndex++) {
+			checkCancelled();
+			String pg = mapping.getProteinGroup(pgIndex);
 			List<CyNode> nodesForGroup = new ArrayList<>();
-			Set<CyNode> dupNodes = new HashSet<CyNode>();
 			CyNode reprNode = null;
 			int proteinCount = 0;
-			for (String protein : proteins) {
-				if (queryTerm2node.containsKey(protein)) {
-					CyNode proteinNode = queryTerm2node.get(protein);
+			for (int i = 0; i < mapping.getMemberCount(pgIndex); i++) {
+				int protein = mapping.getMember(pgIndex, i);
+				if (proteinNodes[protein] != null) {
+					CyNode proteinNode = proteinNodes[protein];
 					// check if we need to use one of the duplicates
-					if (protein2dupProteinsMap.containsKey(proteinNode) && protein2dupProteinsMap.get(proteinNode).size() > 0) {
-						CyNode copyNode = proteinNode;
-						proteinNode = protein2dupProteinsMap.get(copyNode).iterator().next();
-						protein2dupProteinsMap.get(copyNode).remove(proteinNode);
-						dupNodes.add(proteinNode);
+					if (proteinNodeCopies[protein] != null) {
+						if (proteinCopyGroups[protein] == null)
+							proteinCopyGroups[protein] = new int[proteinNodeCopies[protein].length];
+						proteinCopyGroups[protein][nextProteinNodeCopy[protein]] = pgIndex;
+						proteinNode = proteinNodeCopies[protein][nextProteinNodeCopy[protein]++];
 					}
 					// if this is the first node in the list, set it as the representative node
 					if (proteinCount == 0) {
@@ -382,120 +873,35 @@ public class RetrieveStringNetworkTask extends AbstractTask implements TaskObser
 				if (reprNode != null) {
 					retrievedNetwork.getRow(reprNode).set(SharedProperties.USE_ENRICHMENT, true);
 				}
+				proteinGroupNodes[pgIndex] = reprNode;
 				// continue with the next protein group
 				continue;
 			}
 			// otherwise create and save the new cyGroup
-			CyGroup pgGroup = groupFactory.createGroup(this.retrievedNetwork, nodesForGroup, null, true);
+			CyGroup pgGroup = createProteinGroup(groupFactory, pg, nodesForGroup, reprNode);
 			groups.add(pgGroup);
-			CyNode groupNode = pgGroup.getGroupNode();
-			// keep track of duplicated node-group pairs
-			for (CyNode dupNode : dupNodes)  
-				dupProteinToGroup.put(dupNode, pgGroup);
-
-			// Node attributes that are group-specific
-			// set protein group query term to be the PD name such that import of data works properly
-			retrievedNetwork.getRow(groupNode).set(SharedProperties.QUERYTERM, pg);
-			retrievedNetwork.getRow(groupNode).set(SharedProperties.PROTEINGROUP, pg);
-			// retrievedNetwork.getRow(groupNode).set(SharedProperties.MATCHEDID, proteins.toString()); -> it is the same as the protein group
-			retrievedNetwork.getRow(groupNode).set(SharedProperties.TYPE, SharedProperties.NODE_TYPE_PG);				
-			// set group node to be used for enrichment with the string ID of the repr node
-			// USE_ENRICHMENT might change eventually but ok like this for now
-			retrievedNetwork.getRow(groupNode).set(SharedProperties.USE_ENRICHMENT, Boolean.valueOf(true));
-			// style depends on the collapse/uncollapse state and is also handled by AppManager on (un)collapse events
-			if (this.protected_collapsed)
-				retrievedNetwork.getRow(groupNode).set(SharedProperties.STYLE, SharedProperties.STYLE_STRING_EMPTY);
-			else 
-				retrievedNetwork.getRow(groupNode).set(SharedProperties.STYLE, "");
-			
-			// Node attributes that are copied from the representative node
-			// name, database identifier (STRINGID), @id, namespace, species, enhanced label
-			// NAME, STRINGID, ID, NAMESPACE, SPECIES, ELABEL_STYLE
-			for (String attr : SharedProperties.nodeAttrinbutesToCopyString) {
-				if (retrievedNetwork.getDefaultNodeTable().getColumn(attr) == null)
-					continue;
-				retrievedNetwork.getRow(groupNode).set(attr,
-						retrievedNetwork.getRow(reprNode).get(attr, String.class));					
-			}
-			
-			// Node attributes (string) that are concatenated
-			// canonical, display name, full name, dev. level, family
-			// CANONICAL, DISPLAY, FULLNAME, DEVLEVEL, FAMILY
-			for (String attr : SharedProperties.nodeAttrinbutesToConcatString) {
-				if (retrievedNetwork.getDefaultNodeTable().getColumn(attr) == null)
-					continue;
-				String concatValue = "";
-				for (CyNode node : nodesForGroup) {
-					String nodeValue = retrievedNetwork.getRow(node).get(attr, String.class);
-					if (nodeValue == null) 
-						continue;
-					concatValue += SharedProperties.ATTRIBUTE_CONCAT_SYMBOL + nodeValue;
-				}
-				if (concatValue.startsWith(SharedProperties.ATTRIBUTE_CONCAT_SYMBOL))
-					concatValue = concatValue.substring(1);
-				retrievedNetwork.getRow(groupNode).set(attr, concatValue);
-			}
-			// Node attributes (list of strings) that are concatenated
-			// structures
-			if (retrievedNetwork.getDefaultNodeTable().getColumn(SharedProperties.STRUCTURES) != null) {
-				Set<String> structures = new HashSet<String>();
-				for (CyNode node : nodesForGroup) {
-					List<String> nodeStructures = (List<String>) retrievedNetwork.getRow(node).get(SharedProperties.STRUCTURES, List.class);
-					if (nodeStructures == null || nodeStructures.size() == 0 || nodeStructures.get(0).equals(""))
-						continue;
-					structures.addAll(nodeStructures);
-				}
-				retrievedNetwork.getRow(groupNode).set(SharedProperties.STRUCTURES, new ArrayList<String>(structures));
-			}
-			
-			// Node attributes that are averaged
-			// all compartment cols, all tissue cols, interactor score?
-			Collection<CyColumn> colsToAverage = retrievedNetwork.getDefaultNodeTable().getColumns(SharedProperties.COMPARTMENT_NAMESPACE);
-			colsToAverage.addAll(retrievedNetwork.getDefaultNodeTable().getColumns(SharedProperties.TISSUE_NAMESPACE));
-			colsToAverage.add(retrievedNetwork.getDefaultNodeTable().getColumn(SharedProperties.INTERACTORSCORE));
-			for (CyColumn col : colsToAverage) {
-				double averagedValue = 0.0;
-				//int numValues = 0;
-				if (col == null) 
-					continue;
-				for (CyNode node : nodesForGroup) {
-					Double nodeValue = retrievedNetwork.getRow(node).get(col.getName(), Double.class);
-					if (nodeValue == null) 
-						continue;
-					averagedValue += nodeValue.doubleValue();
-					//numValues += 1;
-				}
-				// for node attributes, we average based on number of group nodes, e.g. a node with a missing value is considered to have a value = 0 
-				// TODO: shorten to 6 digits precision or not?
-				retrievedNetwork.getRow(groupNode).set(col.getName(), Double.valueOf(averagedValue/nodesForGroup.size()));
-			}
+			groupMembers.add(nodesForGroup);
+			reprNodes.add(reprNode);
+			proteinGroupNodes[pgIndex] = pgGroup.getGroupNode();
 		}
+		// register the groups at once
+		manager.getService(CyGroupManager.class).addGroups(groups);
+		// handle all node attributes
+		aggregateProteinGroupAttributes(groups, groupMembers, reprNodes);
 		
 		// TODO: decide how to handle networks with confidence 1.0, that might contain only identity edges!
 		
-		// go through identity edges and for the groups that have shared proteins, how many they share
-		Map<String, Integer> groupsSharedProteins = new HashMap<String, Integer>();
-		for (CyEdge edge : retrievedNetwork.getEdgeList()) {
-			// check if it is an identity edge we created earlier
-			if (retrievedNetwork.getRow(edge).get(CyEdge.INTERACTION, String.class).equals(SharedProperties.EDGE_TYPE_IDENTITY)) {
-				CyNode group1Node = edge.getSource();
-				CyNode group2Node = edge.getTarget();					
-				
-				if (dupProteinToGroup.containsKey(edge.getSource()))
-					group1Node = dupProteinToGroup.get(edge.getSource()).getGroupNode();
-				
-				if (dupProteinToGroup.containsKey(edge.getTarget()))
-					group2Node = dupProteinToGroup.get(edge.getTarget()).getGroupNode();
-
-				// create a key for the group pair (always the smaller one first)
-				String groupPair = group1Node.getSUID() + "_" + group2Node.getSUID();
-				if (group1Node.getSUID() > group2Node.getSUID())
-					groupPair = group2Node.getSUID() + "_" + group1Node.getSUID();
-				
-				if (groupsSharedProteins.containsKey(groupPair))
-					groupsSharedProteins.put(groupPair, groupsSharedProteins.get(groupPair) + 1);
-				else
-					groupsSharedProteins.put(groupPair, 1);
+		// count the proteins shared by the protein groups: the copies of a protein are pairwise connected
+		// by identity edges, so each pair of copies adds one to the pair of their protein groups
+		LongIntHashMap groupsSharedProteins = new LongIntHashMap();
+		for (int[] copyGroups : proteinCopyGroups) {
+			if (copyGroups == null)
+				continue;
+			for (int i = 0; i < copyGroups.length; i++) {
+				for (int j = i + 1; j < copyGroups.length; j++) {
+					if (copyGroups[i] != copyGroups[j])
+						groupsSharedProteins.addTo(LongIntHashMap.pairKey(copyGroups[i], copyGroups[j]), 1);
+				}
 			}
 		}
 		// System.out.println(groupsSharedProteins);
@@ -510,35 +916,209 @@ public class RetrieveStringNetworkTask extends AbstractTask implements TaskObser
 			}
 		}
 
-		// go over groups and save shared proteins (or create a new edge if needed, which should not be the case actually)
-		for (CyNode group1Node : retrievedNetwork.getNodeList()) {
-			for (CyGroup group2 : dupProteinToGroup.values()) {
-				CyNode group2Node = group2.getGroupNode();
-				if (group2Node.getSUID() <= group1Node.getSUID())
+		// mark the copies as pending once the groups are collapsed, and connect their groups to the
+		// neighbors of the proteins (the edge attributes are aggregated with the other meta edges)
+		if (lazy) {
+			CyRootNetwork rootNetwork = ((CySubNetwork) retrievedNetwork).getRootNetwork();
+			for (CyNode[] duplicatedNodes : proteinNodeCopies) {
+				if (duplicatedNodes == null)
 					continue;
+				for (int i = 1; i < duplicatedNodes.length; i++)
+					LazyMemberEdges.setPending(rootNetwork, duplicatedNodes[i], duplicatedNodes[0]);
+			}
+			EdgeAttributeAggregator aggregator = new EdgeAttributeAggregator(retrievedNetwork.getDefaultEdgeTable());
+			for (CyGroup group : groups) {
+				if (LazyMemberEdges.hasPendingCopies(group))
+					LazyMemberEdges.updateLazyMetaEdges(manager, retrievedNetwork, group, aggregator);
+			}
+		}
 
-				String groupPair = group1Node.getSUID() + "_" + group2Node.getSUID();
-				if (!groupsSharedProteins.containsKey(groupPair))
-					continue;
-				
-				List<CyEdge> connEdges = retrievedNetwork.getConnectingEdgeList(group1Node, group2Node, Type.ANY);
-				for (CyEdge connEdge : connEdges) {
-					retrievedNetwork.getRow(connEdge).set(SharedProperties.EDGESHARED, groupsSharedProteins.get(groupPair));
+		// save the shared proteins on the edges between the protein groups that share proteins
+		groupsSharedProteins.forEach((groupPair, sharedProteins) -> {
+			CyNode group1Node = proteinGroupNodes[LongIntHashMap.pairFirst(groupPair)];
+			CyNode group2Node = proteinGroupNodes[LongIntHashMap.pairSecond(groupPair)];
+			if (group1Node == null || group2Node == null || !retrievedNetwork.containsNode(group1Node)
+					|| !retrievedNetwork.containsNode(group2Node))
+				return;
+			for (CyEdge connEdge : retrievedNetwork.getConnectingEdgeList(group1Node, group2Node, Type.ANY)) {
+				retrievedNetwork.getRow(connEdge).set(SharedProperties.EDGESHARED, sharedProteins);
+			}
+		});
+		
+		return groups;
+	}
+
+	/**
+	 * Creates the columns of the protein groups, unless they already exist.
+	 */
+	protected void createProteinGroupColumns() {
+		// add needed new columns
+		manager.createBooleanColumnIfNeeded(retrievedNetwork.getDefaultNetworkTable(), Boolean.class,
+				SharedProperties.COLLAPSED, false);
+		manager.createDoubleColumnIfNeeded(retrievedNetwork.getDefaultNetworkTable(), Double.class,
+				SharedProperties.CUTOFF, null);
+		retrievedNetwork.getRow(retrievedNetwork).set(SharedProperties.CUTOFF, Double.valueOf(this.protected_cutoff));
+		// the aggregation of the user is kept for the groups created later, e.g. by extending the network
+		manager.createStringColumnIfNeeded(retrievedNetwork.getDefaultNetworkTable(), String.class,
+				SharedProperties.AGGREGATION, null);
+		if (this.protected_aggregation != null)
+			retrievedNetwork.getRow(retrievedNetwork).set(SharedProperties.AGGREGATION, this.protected_aggregation);
+		manager.createBooleanColumnIfNeeded(retrievedNetwork.getDefaultNodeTable(), Boolean.class,
+				SharedProperties.USE_ENRICHMENT, false);
+		manager.createStringColumnIfNeeded(retrievedNetwork.getDefaultNodeTable(), String.class,
+				SharedProperties.PROTEINGROUP, "");
+		manager.createStringColumnIfNeeded(retrievedNetwork.getDefaultNodeTable(), String.class,
+				SharedProperties.MATCHEDID, "");
+		manager.createBooleanColumnIfNeeded(retrievedNetwork.getDefaultEdgeTable(), Boolean.class,
+				SharedProperties.EDGEAGGREGATED, false);
+		//manager.createDoubleColumnIfNeeded(retrievedNetwork.getDefaultEdgeTable(), Double.class,
+		//		SharedProperties.EDGEPROB, null);
+		manager.createIntegerColumnIfNeeded(retrievedNetwork.getDefaultEdgeTable(), Integer.class,
+				SharedProperties.EDGEPOSSIBLE, null);
+		manager.createIntegerColumnIfNeeded(retrievedNetwork.getDefaultEdgeTable(), Integer.class,
+				SharedProperties.EDGEEXISTING, null);
+		manager.createIntegerColumnIfNeeded(retrievedNetwork.getDefaultEdgeTable(), Integer.class,
+				SharedProperties.EDGESHARED, 0);
+		// the sum, maximum and count of the aggregated STRING scores
+		EdgeAttributeAggregator.createStatisticColumns(retrievedNetwork.getDefaultEdgeTable());
+		// the columns copied to the duplicated nodes and edges
+		nodeRowCopier = new RowCopier(retrievedNetwork.getDefaultNodeTable());
+		edgeRowCopier = new RowCopier(retrievedNetwork.getDefaultEdgeTable());
+	}
+
+	/**
+	 * Adds copies of a protein node, with its attributes and adjacent edges, and
+	 * identity edges between the protein node and its copies and between the
+	 * copies. The rows of all the copies are written in one batch.
+	 * @return The new copies.
+	 */
+	protected List<CyNode> duplicateProteinNode(CyNode proteinNode, int numCopies) {
+		return duplicateProteinNode(proteinNode, numCopies, true);
+	}
+
+	/**
+	 * Adds copies of a protein node, as above.
+	 * @param copyEdges Whether the adjacent edges are copied, otherwise the
+	 *                  copies only get their identity edges.
+	 * @return The new copies.
+	 */
+	protected List<CyNode> duplicateProteinNode(CyNode proteinNode, int numCopies, boolean copyEdges) {
+		List<CyNode> newDuplNodes = retrievedNetwork.addNodes(numCopies);
+		// copy node attributes
+		nodeRowCopier.copy(proteinNode, newDuplNodes);
+		// create edges and copy edge attributes
+		List<CyEdge> proteinNodeEdges = copyEdges ? retrievedNetwork.getAdjacentEdgeList(proteinNode, Type.ANY)
+				: new ArrayList<CyEdge>();
+		List<CyEdge> newEdges = new ArrayList<CyEdge>(numCopies);
+		for (CyEdge edge : proteinNodeEdges) {
+			// we should not assume that the original protein node is the source in all edges
+			CyNode sourceNode = edge.getSource();
+			CyNode targetNode = edge.getTarget();
+			boolean isDirected = edge.isDirected();
+			newEdges.clear();
+			for (CyNode newDuplNode : newDuplNodes) {
+				// create a new edge 
+				if (sourceNode.equals(proteinNode)) {
+					newEdges.add(retrievedNetwork.addEdge(newDuplNode, targetNode, isDirected));
+				} else if (targetNode.equals(proteinNode)) {
+					newEdges.add(retrievedNetwork.addEdge(sourceNode, newDuplNode, isDirected));
+				} else {
+					logger.warn("The edge " + edge.getSUID() + " is not adjacent to the protein node " + proteinNode.getSUID()
+							+ ", it is not copied.");
 				}
 			}
+			// copy edge attributes
+			edgeRowCopier.copy(edge, newEdges);
 		}
-		
-		// retrieve the stringdb namespace columns
-		Collection<CyColumn> stringdbCols = retrievedNetwork.getDefaultEdgeTable().getColumns(SharedProperties.STRINGDB_NAMESPACE);
-		List<String> edgeColsToAggregate = new ArrayList<String>();
-		for (CyColumn col : stringdbCols) {
-			if (col == null || !col.getType().equals(Double.class)) 
-				continue;
-			edgeColsToAggregate.add(col.getName());
+		// add new identity edges between the duplicated nodes, each copy is connected to
+		// the protein node and to the previous copies
+		String identityName = getIdentityEdgeName(proteinNode);
+		for (int i = 0; i < newDuplNodes.size(); i++) {
+			CyNode newDuplNode = newDuplNodes.get(i);
+			for (int j = i - 1; j >= -1; j--)
+				addIdentityEdge((j < 0) ? proteinNode : newDuplNode, (j < 0) ? newDuplNode : newDuplNodes.get(j), identityName);
 		}
+		return newDuplNodes;
+	}
+
+	/**
+	 * @return The name of the identity edges between the copies of a protein.
+	 */
+	protected String getIdentityEdgeName(CyNode proteinNode) {
+		return retrievedNetwork.getRow(proteinNode).get(CyNetwork.NAME, String.class) + " ("
+				+ SharedProperties.EDGE_TYPE_IDENTITY + ") " + retrievedNetwork.getRow(proteinNode).get(CyNetwork.NAME, String.class);
+	}
+
+	/**
+	 * Adds an identity edge between two copies of a protein.
+	 */
+	protected CyEdge addIdentityEdge(CyNode copy1, CyNode copy2, String identityName) {
+		CyEdge newIdentityEdge = retrievedNetwork.addEdge(copy1, copy2, false);
+		retrievedNetwork.getRow(newIdentityEdge).set(CyEdge.INTERACTION, SharedProperties.EDGE_TYPE_IDENTITY);
+		// we need to set the edge type ourselves
+		retrievedNetwork.getRow(newIdentityEdge).set(CyNetwork.NAME, identityName);
+		return newIdentityEdge;
+	}
+
+	/**
+	 * Creates the group of a protein group and sets the attributes of its group
+	 * node that are specific to the group. The other attributes are aggregated
+	 * from its nodes with {@link #aggregateProteinGroupAttributes}.
+	 */
+	protected CyGroup createProteinGroup(CyGroupFactory groupFactory, String pg, List<CyNode> nodesForGroup, CyNode reprNode) {
+		// the group is registered by the caller, together with the other groups
+		CyGroup pgGroup = groupFactory.createGroup(this.retrievedNetwork, nodesForGroup, null, false);
+		CyNode groupNode = pgGroup.getGroupNode();
+
+		// Node attributes that are group-specific
+		// set protein group query term to be the PD name such that import of data works properly
+		retrievedNetwork.getRow(groupNode).set(SharedProperties.QUERYTERM, pg);
+		retrievedNetwork.getRow(groupNode).set(SharedProperties.PROTEINGROUP, pg);
+		// retrievedNetwork.getRow(groupNode).set(SharedProperties.MATCHEDID, proteins.toString()); -> it is the same as the protein group
+		// with shared attributes, the group node needs its own row in the shared table
+		if (SharedNodeAttributes.isShared(retrievedNetwork.getDefaultNodeTable()))
+			retrievedNetwork.getRow(groupNode).set(SharedProperties.MATCHEDID, pg);
+		retrievedNetwork.getRow(groupNode).set(SharedProperties.TYPE, SharedProperties.NODE_TYPE_PG);				
+		// set group node to be used for enrichment with the string ID of the repr node
+		// USE_ENRICHMENT might change eventually but ok like this for now
+		retrievedNetwork.getRow(groupNode).set(SharedProperties.USE_ENRICHMENT, Boolean.valueOf(true));
+		// style depends on the collapse/uncollapse state and is also handled by AppManager on (un)collapse events
+		if (this.protected_collapsed)
+			retrievedNetwork.getRow(groupNode).set(SharedProperties.STYLE, SharedProperties.STYLE_STRING_EMPTY);
+		else 
+			retrievedNetwork.getRow(groupNode).set(SharedProperties.STYLE, "");
 		
-		// do edge attribute aggregation for the stringdb namespace columns 
+		return pgGroup;
+	}
+
+	/**
+	 * Merges the node attributes of the nodes of the protein groups into their
+	 * group nodes, following the default aggregation and the one of the user.
+	 * @param groups       The groups.
+	 * @param groupMembers The nodes of each group.
+	 * @param reprNodes    The representative node of each group.
+	 */
+	protected void aggregateProteinGroupAttributes(List<CyGroup> groups, List<List<CyNode>> groupMembers, List<CyNode> reprNodes) {
+		List<CyNode> groupNodes = new ArrayList<CyNode>(groups.size());
+		for (CyGroup group : groups)
+			groupNodes.add(group.getGroupNode());
+		new GroupAttributeAggregator(retrievedNetwork.getDefaultNodeTable(),
+				GroupAttributeAggregator.parseSpecs(this.protected_aggregation))
+				.aggregate(retrievedNetwork, groupNodes, groupMembers, reprNodes, () -> this.cancelled);
+	}
+
+	/**
+	 * Aggregates the STRING scores of the edges between the protein groups and
+	 * their neighbors.
+	 */
+	protected void aggregateGroupEdges(List<CyGroup> groups) {
+		// do edge attribute aggregation for the stringdb namespace columns, with one aggregator for all the meta edges
+		// the edges of each protein are read once and bucketed per neighbor and neighbor group
+		EdgeAttributeAggregator aggregator = new EdgeAttributeAggregator(retrievedNetwork.getDefaultEdgeTable());
+		GroupEdgeIndex edgeIndex = new GroupEdgeIndex(((CySubNetwork) retrievedNetwork).getRootNetwork(),
+				retrievedNetwork, manager.getService(CyGroupManager.class));
 		for (CyGroup group : groups) {
+			checkCancelled();
 			//System.out.println("aggregating edge attributes for group "
 			//		+ retrievedNetwork.getRow(group.getGroupNode()).get(CyNetwork.NAME, String.class) + " (SUID: "
 			//		+ group.getGroupNode().getSUID() + ")");
@@ -558,32 +1138,18 @@ public class RetrieveStringNetworkTask extends AbstractTask implements TaskObser
 				else 
 					neighbor = newEdge.getSource();
 				// aggregate edge attributes 
-				manager.aggregateGroupEdgeAttributes(retrievedNetwork, group, newEdge, group.getNodeList(), neighbor, edgeColsToAggregate);
+				manager.aggregateGroupEdgeAttributes(retrievedNetwork, group, newEdge, neighbor, edgeIndex, aggregator);
 			}
 		}
 		
+	}
+
+	/**
+	 * Sets the visual mappings of the protein groups and lays out the network.
+	 */
+	protected void applyStyleAndLayout() {
 		// set visual properties!
-		VisualMappingManager vmm = manager.getService(VisualMappingManager.class);
-		VisualStyle currentVS = vmm.getCurrentVisualStyle();
-		
-		// add node transparency for protein group nodes
-		VisualMappingFunctionFactory discreteFactory = 
-                manager.getService(VisualMappingFunctionFactory.class, "(mapping.type=discrete)");
-		DiscreteMapping<String,Integer> dMapping = (DiscreteMapping) currentVS.getVisualMappingFunction(BasicVisualLexicon.NODE_TRANSPARENCY);
-		if (dMapping == null) {
-			dMapping = (DiscreteMapping) discreteFactory.createVisualMappingFunction(SharedProperties.TYPE, String.class, BasicVisualLexicon.NODE_TRANSPARENCY);
-		} 
-		dMapping.putMapValue(SharedProperties.NODE_TYPE_PG, 50);
-		currentVS.addVisualMappingFunction(dMapping);
-		
-		// add visual mapping for edge lines
-		VisualMappingFunctionFactory continuousFactory = manager.getService(VisualMappingFunctionFactory.class,
-				"(mapping.type=continuous)");
-		ContinuousMapping<Double, LineType> cMapping = (ContinuousMapping) continuousFactory
-				.createVisualMappingFunction(SharedProperties.SCORE, Double.class, BasicVisualLexicon.EDGE_LINE_TYPE);
-		cMapping.addPoint(this.protected_cutoff, new BoundaryRangeValues<LineType>(LineTypeVisualProperty.EQUAL_DASH,
-				LineTypeVisualProperty.SOLID, LineTypeVisualProperty.SOLID));
-		currentVS.addVisualMappingFunction(cMapping);
+		manager.setGroupVisualMappings(this.protected_cutoff);
 		
 		// lay out network after collapsing groups
 		// do layout if we can figure out how to position the nodes in the group when uncollapsing
@@ -596,14 +1162,16 @@ public class RetrieveStringNetworkTask extends AbstractTask implements TaskObser
 			Map<String, Object> layoutArgs = new HashMap<>();
 			layoutArgs.put("defaultNodeMass", 10.0);
 			setter.applyTunables(context, layoutArgs);
-			Set<View<CyNode>> nodeViews = new HashSet<>(networkView.getNodeViews());
+			Set<View<CyNode>> nodeViews = getNodeViewsToLayOut(networkView);
 			insertTasksAfterCurrentTask(alg.createTaskIterator(networkView, context, nodeViews, SharedProperties.SCORE));
 		}
 	}
 
-	@Override
-	public void allFinished(FinishStatus finishStatus) {
-		// Do nothing
+	/**
+	 * @return The views of the nodes moved by the layout, i.e. all of them.
+	 */
+	protected Set<View<CyNode>> getNodeViewsToLayOut(CyNetworkView networkView) {
+		return new HashSet<>(networkView.getNodeViews());
 	}
 
 	@SuppressWarnings("unchecked")
@@ -617,7 +1185,19 @@ public class RetrieveStringNetworkTask extends AbstractTask implements TaskObser
 			// We need to use the actual class rather than the interface so that
 			// CyREST can inspect it to find the annotations
 		} else if (clzz.equals(JSONResult.class)) {
-			return (R) ("{\"SUID\":" + this.retrievedNetwork.getSUID() + "}");
+			JSONResult res = () -> {
+				StringBuilder json = new StringBuilder("{\"SUID\":");
+				json.append(this.retrievedNetwork == null ? "null" : this.retrievedNetwork.getSUID());
+				json.append(",\"unmatched\":[");
+				for (int i = 0; i < this.unmatchedProteins.size(); i++) {
+					if (i > 0)
+						json.append(",");
+					json.append("\"").append(this.unmatchedProteins.get(i).replace("\\", "\\\\").replace("\"", "\\\"")).append("\"");
+				}
+				json.append("]}");
+				return json.toString();
+			};
+			return (R) res;
 		} else if (clzz.equals(String.class)) {
 			if (this.retrievedNetwork == null) {
 				return (R) "No network was loaded";
@@ -630,4 +1210,26 @@ public class RetrieveStringNetworkTask extends AbstractTask implements TaskObser
 	public List<Class<?>> getResultClasses() {
 		return Arrays.asList(JSONResult.class, String.class, Long.class, CyNetwork.class);
 	}
+
+	/**
+	 * Stops the retrieval with an error message for the user.
+	 */
+	protected static class StageException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		public StageException(String message) {
+			super(message);
+		}
+	}
+
+	/**
+	 * Thrown when the stringApp did not retrieve any network.
+	 */
+	protected static class NoNetworkException extends StageException {
+		private static final long serialVersionUID = 1L;
+
+		public NoNetworkException() {
+			super("No network was retrieved.");
+		}
+	}
 }
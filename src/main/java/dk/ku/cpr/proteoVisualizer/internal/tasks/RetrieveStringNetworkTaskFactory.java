@@ -1,9 +1,12 @@
 package dk.ku.cpr.proteoVisualizer.internal.tasks;
 
+import java.io.File;
+
 import org.cytoscape.work.AbstractTaskFactory;
 import org.cytoscape.work.TaskIterator;
 
 import dk.ku.cpr.proteoVisualizer.internal.model.AppManager;
+import dk.ku.cpr.proteoVisualizer.internal.model.ReportFormat;
 
 public class RetrieveStringNetworkTaskFactory extends AbstractTaskFactory {
 	private AppManager manager;
@@ -18,12 +21,38 @@ public class RetrieveStringNetworkTaskFactory extends AbstractTaskFactory {
 		return new TaskIterator(new RetrieveStringNetworkTunableTask(this.manager));
 	}
 
-	public TaskIterator createTaskIterator(String query, String delim, boolean keepCollpased, Integer taxonID, String species, double cutoff, String netType,
+	public TaskIterator createTaskIterator(String query, String delim, String excludedPrefixes, int maxProteins, boolean stripIsoforms, boolean keepCollpased, Integer taxonID, String species, double cutoff, String netType,
 			String netName, boolean isGUI) {
 		RetrieveStringNetworkTask task = new RetrieveStringNetworkTask(this.manager);
 
 		task.setQuery(query);
 		task.setDelimiter(delim);
+		task.setExcludedPrefixes(excludedPrefixes);
+		task.setMaxProteins(maxProteins);
+		task.setStripIsoforms(stripIsoforms);
+		task.setCollapsed(keepCollpased);
+		task.setTaxonID(taxonID);
+		task.setSpecies(species);
+		task.setCutoff(cutoff);
+		task.setNetType(netType);
+		task.setNetworkName(netName);
+		task.setIsGUI(isGUI);
+
+		return new TaskIterator(task);
+	}
+
+	public TaskIterator createTaskIterator(File queryFile, ReportFormat reportFormat, String pgColumn, String delim,
+			String excludedPrefixes, int maxProteins, boolean stripIsoforms, boolean keepCollpased,
+			Integer taxonID, String species, double cutoff, String netType, String netName, boolean isGUI) {
+		RetrieveStringNetworkTask task = new RetrieveStringNetworkTask(this.manager);
+
+		task.setQueryFile(queryFile);
+		task.setReportFormat(reportFormat);
+		task.setPGColumn(pgColumn);
+		task.setDelimiter(delim);
+		task.setExcludedPrefixes(excludedPrefixes);
+		task.setMaxProteins(maxProteins);
+		task.setStripIsoforms(stripIsoforms);
 		task.setCollapsed(keepCollpased);
 		task.setTaxonID(taxonID);
 		task.setSpecies(species);
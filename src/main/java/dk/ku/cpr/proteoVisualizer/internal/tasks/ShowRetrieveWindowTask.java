@@ -8,6 +8,7 @@ import org.cytoscape.work.AbstractTask;
 import org.cytoscape.work.TaskMonitor;
 
 import dk.ku.cpr.proteoVisualizer.internal.model.AppManager;
+import dk.ku.cpr.proteoVisualizer.internal.model.SharedProperties;
 import dk.ku.cpr.proteoVisualizer.internal.ui.RetrieveStringNetworkWindow;
 import dk.ku.cpr.proteoVisualizer.internal.utils.SwingUtil;
 
@@ -24,7 +25,7 @@ public class ShowRetrieveWindowTask extends AbstractTask {
 	public void run(TaskMonitor taskMonitor) throws Exception {
 		// First we make sure that enhancedGraphics is installed and enabled
 		AvailableCommands availableCommands = (AvailableCommands) this.manager.getService(AvailableCommands.class);
-		if (!availableCommands.getNamespaces().contains("string")) {
+		if (!availableCommands.getNamespaces().contains(SharedProperties.STRINGAPP_NAMESPACE)) {
 			JOptionPane.showMessageDialog(this.manager.getService(CySwingApplication.class).getJFrame(),
 					"You need to install stringApp from the App Manager or Cytoscape App Store.",
 					"Dependency error", JOptionPane.ERROR_MESSAGE);
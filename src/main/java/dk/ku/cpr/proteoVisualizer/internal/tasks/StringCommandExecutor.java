@@ -0,0 +1,23 @@
+package dk.ku.cpr.proteoVisualizer.internal.tasks;
+
+import java.util.Map;
+
+/**
+ * Executes the commands of the stringApp. The default implementation is
+ * {@link StringCommandTaskExecutor}, which can be replaced by a local stub
+ * command, e.g. to test {@link ResilientStringCommandExecutor}.
+ */
+public interface StringCommandExecutor {
+
+	/**
+	 * Executes a stringApp command and waits until it is finished.
+	 * @param command    The name of the command, in the namespace of the
+	 *                   stringApp.
+	 * @param args       The arguments of the command.
+	 * @param resultType The type of the expected result.
+	 * @return The first result of the given type provided by the tasks of the
+	 *         command, or <code>null</code> if there is none.
+	 * @throws Exception If the command failed.
+	 */
+	<R> R execute(String command, Map<String, Object> args, Class<R> resultType) throws Exception;
+}
@@ -42,7 +42,7 @@ public class StringCommandTask extends AbstractTask {
 
 		CommandExecutorTaskFactory commandExecutorTaskFactory = this.manager
 				.getService(CommandExecutorTaskFactory.class);
-		TaskIterator task = commandExecutorTaskFactory.createTaskIterator("string", this.command, this.args,
+		TaskIterator task = commandExecutorTaskFactory.createTaskIterator(SharedProperties.STRINGAPP_NAMESPACE, this.command, this.args,
 				this.taskObserver);
 		insertTasksAfterCurrentTask(task);
 	}
@@ -0,0 +1,67 @@
+package dk.ku.cpr.proteoVisualizer.internal.tasks;
+
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+import org.cytoscape.work.FinishStatus;
+import org.cytoscape.work.ObservableTask;
+import org.cytoscape.work.TaskIterator;
+import org.cytoscape.work.TaskObserver;
+
+import dk.ku.cpr.proteoVisualizer.internal.model.AppManager;
+
+/**
+ * Executes the commands of the stringApp with the synchronous task manager of
+ * Cytoscape.
+ */
+public class StringCommandTaskExecutor implements StringCommandExecutor {
+
+	private final AppManager manager;
+
+	public StringCommandTaskExecutor(AppManager manager) {
+		this.manager = manager;
+	}
+
+	@Override
+	public <R> R execute(String command, Map<String, Object> args, Class<R> resultType) throws Exception {
+		ResultObserver<R> observer = new ResultObserver<R>(resultType);
+		TaskIterator ti = new StringCommandTaskFactory(manager, command, args, observer).createTaskIterator();
+		manager.executeSynchronousTask(ti, observer);
+
+		// the task manager does not throw the exceptions of the tasks, but gives them to the observer
+		if (observer.status != null && observer.status.getType() == FinishStatus.Type.FAILED) {
+			Exception e = observer.status.getException();
+			throw (e != null) ? e : new Exception("The stringApp command '" + command + "' failed.");
+		}
+		if (observer.status != null && observer.status.getType() == FinishStatus.Type.CANCELLED)
+			throw new CancellationException();
+		return observer.result;
+	}
+
+	private static class ResultObserver<R> implements TaskObserver {
+		private final Class<R> resultType;
+		private R result = null;
+		private FinishStatus status = null;
+
+		ResultObserver(Class<R> resultType) {
+			this.resultType = resultType;
+		}
+
+		@Override
+		public void taskFinished(ObservableTask task) {
+			if (result != null)
+				return;
+			// not all the tasks declare their result classes, so we just ask for the result
+			try {
+				result = task.getResults(resultType);
+			} catch (RuntimeException e) {
+				// the task does not provide this type of result
+			}
+		}
+
+		@Override
+		public void allFinished(FinishStatus finishStatus) {
+			status = finishStatus;
+		}
+	}
+}
@@ -25,6 +25,7 @@ import org.cytoscape.work.TaskIterator;
 import org.cytoscape.work.TaskObserver;
 
 import dk.ku.cpr.proteoVisualizer.internal.model.AppManager;
+import dk.ku.cpr.proteoVisualizer.internal.model.SharedProperties;
 import dk.ku.cpr.proteoVisualizer.internal.model.StringSpecies;
 import dk.ku.cpr.proteoVisualizer.internal.ui.SearchOptionsPanel;
 import dk.ku.cpr.proteoVisualizer.internal.ui.SearchQueryComponent;
@@ -79,7 +80,8 @@ public class StringPGSearchTaskFactory extends AbstractNetworkSearchTaskFactory
 		String query = queryComponent.getQueryText();
 		
 		RetrieveStringNetworkTaskFactory factory = new RetrieveStringNetworkTaskFactory(this.manager);
-		return factory.createTaskIterator(query, getDelimiter(), getCollapse(), species.getTaxonID(), species.getName(),
+		// the search bar uses the default filters
+		return factory.createTaskIterator(query, getDelimiter(), SharedProperties.DEFAULT_EXCLUDED_PREFIXES, 0, false, getCollapse(), species.getTaxonID(), species.getName(),
 				getConfidence()/100.0, getNetworkType(), getNetworkName(), true);
 	}
 
@@ -10,6 +10,7 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.FocusAdapter;
 import java.awt.event.FocusEvent;
+import java.io.File;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.text.NumberFormat;
@@ -36,17 +37,22 @@ import javax.swing.JPanel;
 import javax.swing.JRadioButton;
 import javax.swing.JScrollPane;
 import javax.swing.JSlider;
+import javax.swing.JSpinner;
 import javax.swing.JTextArea;
 import javax.swing.JTextField;
+import javax.swing.SpinnerNumberModel;
 import javax.swing.UIManager;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
 import org.cytoscape.application.swing.CySwingApplication;
+import org.cytoscape.util.swing.FileChooserFilter;
+import org.cytoscape.util.swing.FileUtil;
 import org.cytoscape.util.swing.LookAndFeelUtil;
 
 import dk.ku.cpr.proteoVisualizer.internal.model.AppManager;
 import dk.ku.cpr.proteoVisualizer.internal.model.NetworkType;
+import dk.ku.cpr.proteoVisualizer.internal.model.ReportFormat;
 import dk.ku.cpr.proteoVisualizer.internal.model.SharedProperties;
 import dk.ku.cpr.proteoVisualizer.internal.model.StringSpecies;
 import dk.ku.cpr.proteoVisualizer.internal.tasks.RetrieveStringNetworkTaskFactory;
@@ -56,8 +62,17 @@ public class RetrieveStringNetworkWindow extends AppWindow implements ActionList
 	private static final long serialVersionUID = -6267319220376028418L;
 
 	private JTextArea queryInput;
+	private File queryFile;
+	private JLabel queryFileLabel;
+	private JButton importButton;
+	private JButton clearFileButton;
+	private JComboBox<ReportFormat> reportFormat;
+	private JTextField pgColumn;
 	private JTextField netName;
 	private JComboBox<String> delimiter;
+	private JTextField excludedPrefixes;
+	private JSpinner maxProteins;
+	private JCheckBox stripIsoforms;
 	private JCheckBox keepCollapsed;
 	
 	private List<StringSpecies> speciesList;
@@ -79,9 +94,26 @@ public class RetrieveStringNetworkWindow extends AppWindow implements ActionList
 		super(manager, "Retrieve STRING network for protein groups");
 
 		this.queryInput = new JTextArea();
+		this.queryFile = null;
+		this.queryFileLabel = new JLabel("No file selected");
+		this.importButton = new JButton("Import file...");
+		this.importButton.addActionListener(this);
+		this.clearFileButton = new JButton("Clear");
+		this.clearFileButton.addActionListener(this);
+		this.clearFileButton.setEnabled(false);
+		this.reportFormat = new JComboBox<ReportFormat>(ReportFormat.values());
+		this.reportFormat.setSelectedItem(ReportFormat.AUTO);
+		this.pgColumn = new JTextField();
+		this.pgColumn.setToolTipText("Name of the protein group column. Leave empty to use the column of the file format.");
 		this.netName = new JTextField();
 		this.delimiter = new JComboBox<String>(SharedProperties.pg_delimiters);
 		this.delimiter.setSelectedItem(SharedProperties.DEFAULT_PG_DELIMITER);
+		this.excludedPrefixes = new JTextField(SharedProperties.DEFAULT_EXCLUDED_PREFIXES);
+		this.excludedPrefixes.setToolTipText("Comma separated prefixes of the accessions to ignore, such as decoys and contaminants (REV__,CON__ for MaxQuant).");
+		this.maxProteins = new JSpinner(new SpinnerNumberModel(0, 0, Integer.MAX_VALUE, 1));
+		this.maxProteins.setToolTipText("Only the first accessions of each protein group are queried. 0 to query all of them.");
+		this.stripIsoforms = new JCheckBox();
+		this.stripIsoforms.setToolTipText("Remove the isoform suffix of the accessions (e.g. P12345-2 becomes P12345).");
 		this.keepCollapsed = new JCheckBox();
 		this.keepCollapsed.setSelected(true);
 		
@@ -137,6 +169,32 @@ public class RetrieveStringNetworkWindow extends AppWindow implements ActionList
 		return netTypePanel;
 	}
 
+	private JPanel createImportPanel() {
+		JPanel importPanel = new JPanel(new GridBagLayout());
+		importPanel.setOpaque(!LookAndFeelUtil.isAquaLAF());
+		MyGridBagConstraints c = new MyGridBagConstraints();
+		c.setAnchor("W").expandHorizontal();
+		importPanel.add(queryFileLabel, c);
+		c.noExpand();
+		importPanel.add(importButton, c.nextCol());
+		importPanel.add(clearFileButton, c.nextCol());
+		return importPanel;
+	}
+
+	private void setQueryFile(File file) {
+		this.queryFile = file;
+		if (file == null) {
+			this.queryFileLabel.setText("No file selected");
+			this.queryFileLabel.setToolTipText(null);
+		} else {
+			this.queryFileLabel.setText(file.getName());
+			this.queryFileLabel.setToolTipText(file.getAbsolutePath());
+		}
+		// the protein groups are read from the file instead of the text area
+		this.queryInput.setEnabled(file == null);
+		this.clearFileButton.setEnabled(file != null);
+	}
+
 	public NetworkType getNetworkType() {
 		if (physicalNetwork.isSelected())
 			return NetworkType.PHYSICAL;
@@ -261,7 +319,7 @@ public class RetrieveStringNetworkWindow extends AppWindow implements ActionList
 	}
 
 	public void init() {
-		setPreferredSize(new Dimension(600,500));
+		setPreferredSize(new Dimension(600,650));
 		JPanel mainPanel = new JPanel();
 		mainPanel.setLayout(new BorderLayout());
 
@@ -278,9 +336,27 @@ public class RetrieveStringNetworkWindow extends AppWindow implements ActionList
 		selectPanel.add(jsp, c.nextCol());
 		
 		c.expandHorizontal();
+		selectPanel.add(new JLabel("Protein groups file:"), c.nextRow());
+		selectPanel.add(this.createImportPanel(), c.nextCol());
+
+		selectPanel.add(new JLabel("File format:"), c.nextRow());
+		selectPanel.add(this.reportFormat, c.nextCol());
+
+		selectPanel.add(new JLabel("Protein group column:"), c.nextRow());
+		selectPanel.add(this.pgColumn, c.nextCol());
+
 		selectPanel.add(new JLabel("Protein group delimiter:"), c.nextRow());
 		selectPanel.add(this.delimiter, c.nextCol());
 
+		selectPanel.add(new JLabel("Excluded accession prefixes:"), c.nextRow());
+		selectPanel.add(this.excludedPrefixes, c.nextCol());
+
+		selectPanel.add(new JLabel("Max. proteins per group (0 = all):"), c.nextRow());
+		selectPanel.add(this.maxProteins, c.nextCol());
+
+		selectPanel.add(new JLabel("Strip isoform suffixes:"), c.nextRow());
+		selectPanel.add(this.stripIsoforms, c.nextCol());
+
 		selectPanel.add(new JLabel("Collapse groups:"), c.nextRow());
 		selectPanel.add(this.keepCollapsed, c.nextCol());
 
@@ -330,15 +406,22 @@ public class RetrieveStringNetworkWindow extends AppWindow implements ActionList
 				return;
 			}
 
-			String query = queryInput.getText();
-			query = query.replaceAll("(?m)^\\s*", "");
-			query = query.replaceAll("(?m)\\s*$", "");
-
 			RetrieveStringNetworkTaskFactory factory = new RetrieveStringNetworkTaskFactory(this.manager);
 			try {
-				this.manager.executeTask(factory.createTaskIterator(query, (String)delimiter.getSelectedItem(), keepCollapsed.isSelected(), species.getTaxonID(), species.getName(),
-						formatter.parse(this.confidenceValue.getText()).doubleValue(), this.getNetworkType().toString(),
-						this.netName.getText(), true));
+				double cutoff = formatter.parse(this.confidenceValue.getText()).doubleValue();
+				int maxProteinsValue = ((Number) this.maxProteins.getValue()).intValue();
+				if (this.queryFile != null) {
+					// the file is streamed by the task, its content is never loaded into the text area
+					this.manager.executeTask(factory.createTaskIterator(this.queryFile, (ReportFormat) reportFormat.getSelectedItem(), pgColumn.getText(),
+							(String)delimiter.getSelectedItem(), excludedPrefixes.getText(), maxProteinsValue, stripIsoforms.isSelected(), keepCollapsed.isSelected(), species.getTaxonID(), species.getName(),
+							cutoff, this.getNetworkType().toString(), this.netName.getText(), true));
+				} else {
+					// blank lines and spaces around the protein groups are skipped when parsing the query
+					String query = queryInput.getText();
+					this.manager.executeTask(factory.createTaskIterator(query, (String)delimiter.getSelectedItem(), excludedPrefixes.getText(), maxProteinsValue,
+							stripIsoforms.isSelected(), keepCollapsed.isSelected(), species.getTaxonID(), species.getName(),
+							cutoff, this.getNetworkType().toString(), this.netName.getText(), true));
+				}
 			} catch (ParseException e1) {
 				inputError();
 				return;
@@ -346,6 +429,14 @@ public class RetrieveStringNetworkWindow extends AppWindow implements ActionList
 
 			// The task is executed in background, we don't want the window to be displayed
 			this.setVisible(false);
+		} else if (e.getSource() == this.importButton) {
+			List<FileChooserFilter> filters = new ArrayList<FileChooserFilter>();
+			filters.add(new FileChooserFilter("Protein groups report", new String[] { "txt", "tsv" }));
+			File file = this.manager.getService(FileUtil.class).getFile(this, "Import protein groups", FileUtil.LOAD, filters);
+			if (file != null)
+				this.setQueryFile(file);
+		} else if (e.getSource() == this.clearFileButton) {
+			this.setQueryFile(null);
 		} else if (e.getSource() == this.closeButton) {
 			this.setVisible(false);
 		}
@@ -0,0 +1,150 @@
+package dk.ku.cpr.proteoVisualizer.internal.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.cytoscape.model.CyColumn;
+import org.cytoscape.model.CyEdge;
+import org.cytoscape.model.CyNetwork;
+import org.cytoscape.model.CyRow;
+import org.cytoscape.model.CyTable;
+import org.cytoscape.model.subnetwork.CyRootNetwork;
+import org.cytoscape.model.subnetwork.CySubNetwork;
+
+import dk.ku.cpr.proteoVisualizer.internal.model.SharedProperties;
+
+/**
+ * Aggregates the score columns (channels) of the edges between a protein group
+ * and a neighbor into their meta edge.
+ *
+ * The values of all the channels are read once into primitive arrays, and the
+ * sum, the maximum and the number of values of each channel are computed in a
+ * single pass over them. The channel column of the meta edge gets the sum
+ * divided by the number of possible edges, as before, and the other statistics
+ * go to the columns <code>proteovis::&lt;channel&gt; sum</code>,
+ * <code>max</code> and <code>count</code>.
+ *
+ * The aggregator is created once per aggregation pass and shared by all the
+ * meta edges of the pass. The statistic columns are created with the other
+ * columns of the protein groups (see {@link #createStatisticColumns}), the
+ * statistics of the channels without them are not set.
+ */
+public class EdgeAttributeAggregator {
+
+	private final String[] columns;
+	private final String[] sumColumns;
+	private final String[] maxColumns;
+	private final String[] countColumns;
+
+	/**
+	 * @param edgeTable The edge table of the network, whose channels are aggregated.
+	 */
+	public EdgeAttributeAggregator(CyTable edgeTable) {
+		this.columns = getChannels(edgeTable).toArray(new String[0]);
+		this.sumColumns = new String[this.columns.length];
+		this.maxColumns = new String[this.columns.length];
+		this.countColumns = new String[this.columns.length];
+		for (int c = 0; c < this.columns.length; c++) {
+			sumColumns[c] = getExistingColumn(edgeTable, getStatisticColumn(this.columns[c], "sum"));
+			maxColumns[c] = getExistingColumn(edgeTable, getStatisticColumn(this.columns[c], "max"));
+			countColumns[c] = getExistingColumn(edgeTable, getStatisticColumn(this.columns[c], "count"));
+		}
+	}
+
+	/**
+	 * @return The channels of the edge table, i.e. the Double columns of the
+	 *         stringdb namespace.
+	 */
+	public static List<String> getChannels(CyTable edgeTable) {
+		List<String> channels = new ArrayList<String>();
+		for (CyColumn col : edgeTable.getColumns(SharedProperties.STRINGDB_NAMESPACE)) {
+			if (col == null || !col.getType().equals(Double.class))
+				continue;
+			channels.add(col.getName());
+		}
+		return channels;
+	}
+
+	/**
+	 * Creates the columns of the statistics of the channels, unless they already
+	 * exist.
+	 * @param edgeTable The edge table of the network.
+	 */
+	public static void createStatisticColumns(CyTable edgeTable) {
+		for (String column : getChannels(edgeTable)) {
+			if (edgeTable.getColumn(getStatisticColumn(column, "sum")) == null)
+				edgeTable.createColumn(getStatisticColumn(column, "sum"), Double.class, false);
+			if (edgeTable.getColumn(getStatisticColumn(column, "max")) == null)
+				edgeTable.createColumn(getStatisticColumn(column, "max"), Double.class, false);
+			if (edgeTable.getColumn(getStatisticColumn(column, "count")) == null)
+				edgeTable.createColumn(getStatisticColumn(column, "count"), Integer.class, false);
+		}
+	}
+
+	private static String getExistingColumn(CyTable edgeTable, String column) {
+		return (edgeTable.getColumn(column) == null) ? null : column;
+	}
+
+	/**
+	 * @return The name of the column of a statistic of the channel, e.g.
+	 *         <code>proteovis::score max</code> for <code>stringdb::score</code>.
+	 */
+	public static String getStatisticColumn(String column, String statistic) {
+		int separator = column.indexOf(SharedProperties.NAMESPACE_SEPARATOR);
+		String channel = (separator < 0) ? column : column.substring(separator + SharedProperties.NAMESPACE_SEPARATOR.length());
+		return SharedProperties.PROTEOVIS_NAMESPACE + SharedProperties.NAMESPACE_SEPARATOR + channel + " " + statistic;
+	}
+
+	/**
+	 * Sets the aggregated values of the channels of the meta edge.
+	 * @param network          The network of the meta edge.
+	 * @param metaEdge         The meta edge.
+	 * @param edges            The edges aggregated by the meta edge.
+	 * @param numPossibleEdges The number of possible edges between the nodes of the group and the neighbor.
+	 */
+	public void aggregate(CyNetwork network, CyEdge metaEdge, List<CyEdge> edges, int numPossibleEdges) {
+		CyRootNetwork rootNetwork = ((CySubNetwork) network).getRootNetwork();
+		int numColumns = columns.length;
+		int numEdges = edges.size();
+
+		// read the values of the channels, column by column for each edge
+		double[][] values = new double[numColumns][numEdges];
+		boolean[][] present = new boolean[numColumns][numEdges];
+		for (int e = 0; e < numEdges; e++) {
+			CyRow row = rootNetwork.getRow(edges.get(e));
+			for (int c = 0; c < numColumns; c++) {
+				Double value = row.get(columns[c], Double.class);
+				if (value != null) {
+					values[c][e] = value.doubleValue();
+					present[c][e] = true;
+				}
+			}
+		}
+
+		CyRow metaRow = network.getRow(metaEdge);
+		for (int c = 0; c < numColumns; c++) {
+			double sum = 0.0;
+			double max = Double.NEGATIVE_INFINITY;
+			int count = 0;
+			double[] channel = values[c];
+			boolean[] channelPresent = present[c];
+			for (int e = 0; e < numEdges; e++) {
+				if (!channelPresent[e])
+					continue;
+				sum += channel[e];
+				if (channel[e] > max)
+					max = channel[e];
+				count++;
+			}
+			// for edge attributes, we sum the values from all existing edges and divide by the number of possible edges
+			// the value is cleared in case the edges were re-aggregated after some of them were removed
+			metaRow.set(columns[c], (sum != 0.0) ? Double.valueOf(sum / numPossibleEdges) : null);
+			if (sumColumns[c] != null)
+				metaRow.set(sumColumns[c], (count > 0) ? Double.valueOf(sum) : null);
+			if (maxColumns[c] != null)
+				metaRow.set(maxColumns[c], (count > 0) ? Double.valueOf(max) : null);
+			if (countColumns[c] != null)
+				metaRow.set(countColumns[c], Integer.valueOf(count));
+		}
+	}
+}
@@ -0,0 +1,279 @@
+package dk.ku.cpr.proteoVisualizer.internal.utils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
+
+import org.apache.log4j.Logger;
+import org.cytoscape.application.CyUserLog;
+import org.cytoscape.model.CyColumn;
+import org.cytoscape.model.CyNetwork;
+import org.cytoscape.model.CyNode;
+import org.cytoscape.model.CyRow;
+import org.cytoscape.model.CyTable;
+
+import dk.ku.cpr.proteoVisualizer.internal.model.AttributeAggregation;
+import dk.ku.cpr.proteoVisualizer.internal.model.SharedProperties;
+
+/**
+ * Merges the node attributes of the protein groups into their group nodes,
+ * following one {@link AttributeAggregation} per column.
+ *
+ * The default specs copy the identifiers from the representative node,
+ * concatenate the names, merge the structures and average the compartment,
+ * tissue and interactor scores. They can be overridden and extended with specs
+ * such as <code>my::column=max,other column=union</code>. The columns are
+ * resolved once, and the groups are aggregated in parallel from a snapshot of
+ * the values of their nodes.
+ */
+public class GroupAttributeAggregator {
+	private static final Logger logger = Logger.getLogger(CyUserLog.NAME);
+
+	private final List<String> columns = new ArrayList<String>();
+	private final List<Class<?>> types = new ArrayList<Class<?>>();
+	private final List<AttributeAggregation> aggregations = new ArrayList<AttributeAggregation>();
+
+	/**
+	 * @param nodeTable The node table of the network.
+	 * @param specs     The specs of the user, which override the default ones.
+	 */
+	public GroupAttributeAggregator(CyTable nodeTable, Map<String, AttributeAggregation> specs) {
+		Map<String, AttributeAggregation> resolved = getDefaultSpecs(nodeTable);
+		resolved.putAll(specs);
+		for (Map.Entry<String, AttributeAggregation> spec : resolved.entrySet()) {
+			CyColumn col = nodeTable.getColumn(spec.getKey());
+			if (col == null || col.isPrimaryKey())
+				continue;
+			if (!spec.getValue().supports(col.getType())) {
+				logger.warn("The column '" + col.getName() + "' cannot be aggregated with '" + spec.getValue() + "'.");
+				continue;
+			}
+			columns.add(col.getName());
+			types.add(col.getType());
+			aggregations.add(spec.getValue());
+		}
+	}
+
+	/**
+	 * @return The specs applied when the user does not give one for a column.
+	 */
+	public static Map<String, AttributeAggregation> getDefaultSpecs(CyTable nodeTable) {
+		Map<String, AttributeAggregation> specs = new LinkedHashMap<String, AttributeAggregation>();
+		// name, database identifier (STRINGID), @id, namespace, species, enhanced label
+		for (String attr : SharedProperties.nodeAttrinbutesToCopyString)
+			specs.put(attr, AttributeAggregation.COPY);
+		// canonical, display name, full name, dev. level, family
+		for (String attr : SharedProperties.nodeAttrinbutesToConcatString)
+			specs.put(attr, AttributeAggregation.CONCAT);
+		specs.put(SharedProperties.STRUCTURES, AttributeAggregation.UNION);
+		// all compartment cols, all tissue cols, interactor score
+		List<CyColumn> colsToAverage = new ArrayList<CyColumn>(nodeTable.getColumns(SharedProperties.COMPARTMENT_NAMESPACE));
+		colsToAverage.addAll(nodeTable.getColumns(SharedProperties.TISSUE_NAMESPACE));
+		for (CyColumn col : colsToAverage) {
+			if (col.getType().equals(Double.class))
+				specs.put(col.getName(), AttributeAggregation.MEAN);
+		}
+		specs.put(SharedProperties.INTERACTORSCORE, AttributeAggregation.MEAN);
+		return specs;
+	}
+
+	/**
+	 * Parses specs of the form <code>column=aggregation</code>, separated by
+	 * commas.
+	 * @throws IllegalArgumentException If a spec is malformed or its aggregation
+	 *                                  unknown.
+	 */
+	public static Map<String, AttributeAggregation> parseSpecs(String specs) {
+		Map<String, AttributeAggregation> parsed = new LinkedHashMap<String, AttributeAggregation>();
+		if (specs == null)
+			return parsed;
+		for (String spec : specs.split(",")) {
+			if (spec.isBlank())
+				continue;
+			int separator = spec.lastIndexOf('=');
+			if (separator <= 0)
+				throw new IllegalArgumentException("The aggregation '" + spec.trim() + "' is not of the form column=aggregation.");
+			AttributeAggregation aggregation = AttributeAggregation.getType(spec.substring(separator + 1).trim());
+			if (aggregation == null)
+				throw new IllegalArgumentException("Unknown aggregation in '" + spec.trim() + "', use one of copy, concat, union, mean, max or sum.");
+			parsed.put(spec.substring(0, separator).trim(), aggregation);
+		}
+		return parsed;
+	}
+
+	/**
+	 * @return The columns copied from the representative node.
+	 */
+	public List<String> getCopiedColumns() {
+		List<String> copied = new ArrayList<String>();
+		for (int c = 0; c < columns.size(); c++) {
+			if (aggregations.get(c) == AttributeAggregation.COPY)
+				copied.add(columns.get(c));
+		}
+		return copied;
+	}
+
+	/**
+	 * Sets the aggregated values of the group nodes. The values of the nodes
+	 * are first read into a snapshot, the aggregates of the groups are then
+	 * computed in parallel from it, and finally written to the table in one
+	 * sequential pass.
+	 * @param network    The network of the groups.
+	 * @param groupNodes The group nodes.
+	 * @param members    The nodes of each group.
+	 * @param reprNodes  The representative node of each group.
+	 * @param cancelled  Tells if the aggregation is cancelled, checked for each
+	 *                   column of the snapshot and for each group.
+	 * @throws CancellationException If the aggregation was cancelled, in which
+	 *                               case the group nodes are left unchanged.
+	 */
+	public void aggregate(CyNetwork network, List<CyNode> groupNodes, List<List<CyNode>> members, List<CyNode> reprNodes,
+			BooleanSupplier cancelled) {
+		int numGroups = groupNodes.size();
+		int numColumns = columns.size();
+		// the members of group g are in [start[g], start[g + 1])
+		int[] start = new int[numGroups + 1];
+		for (int g = 0; g < numGroups; g++)
+			start[g + 1] = start[g] + members.get(g).size();
+
+		// snapshot of the values, read column by column: the values of the representative nodes
+		// for the copied columns, the numbers of the members for the numeric aggregations and
+		// the values of the members otherwise
+		CyRow[] memberRows = new CyRow[start[numGroups]];
+		for (int g = 0; g < numGroups; g++) {
+			for (int i = 0; i < members.get(g).size(); i++)
+				memberRows[start[g] + i] = network.getRow(members.get(g).get(i));
+		}
+		Object[][] values = new Object[numColumns][];
+		double[][] numbers = new double[numColumns][];
+		boolean[][] present = new boolean[numColumns][];
+		for (int c = 0; c < numColumns; c++) {
+			if (cancelled.getAsBoolean())
+				throw new CancellationException();
+			String column = columns.get(c);
+			switch (aggregations.get(c)) {
+			case COPY:
+				values[c] = new Object[numGroups];
+				for (int g = 0; g < numGroups; g++)
+					values[c][g] = network.getRow(reprNodes.get(g)).getRaw(column);
+				break;
+			case CONCAT:
+			case UNION:
+				values[c] = new Object[memberRows.length];
+				for (int m = 0; m < memberRows.length; m++)
+					values[c][m] = memberRows[m].getRaw(column);
+				break;
+			default:
+				numbers[c] = new double[memberRows.length];
+				present[c] = new boolean[memberRows.length];
+				for (int m = 0; m < memberRows.length; m++) {
+					Object value = memberRows[m].getRaw(column);
+					if (value instanceof Number) {
+						numbers[c][m] = ((Number) value).doubleValue();
+						present[c][m] = true;
+					}
+				}
+			}
+		}
+
+		// compute the aggregates of the groups in parallel, without touching the tables
+		Object[][] results = new Object[numColumns][numGroups];
+		IntStream.range(0, numGroups).parallel().forEach(g -> {
+			// the remaining groups are skipped once cancelled
+			if (cancelled.getAsBoolean())
+				return;
+			for (int c = 0; c < numColumns; c++) {
+				switch (aggregations.get(c)) {
+				case COPY:
+					results[c][g] = values[c][g];
+					break;
+				case CONCAT:
+					results[c][g] = concat(values[c], start[g], start[g + 1]);
+					break;
+				case UNION:
+					results[c][g] = union(values[c], start[g], start[g + 1], types.get(c).equals(List.class));
+					break;
+				default:
+					results[c][g] = aggregateNumbers(numbers[c], present[c], start[g], start[g + 1], types.get(c),
+							aggregations.get(c));
+				}
+			}
+		});
+		if (cancelled.getAsBoolean())
+			throw new CancellationException();
+
+		// write the aggregates back
+		for (int g = 0; g < numGroups; g++) {
+			CyRow groupRow = network.getRow(groupNodes.get(g));
+			for (int c = 0; c < numColumns; c++)
+				groupRow.set(columns.get(c), results[c][g]);
+		}
+	}
+
+	private static String concat(Object[] values, int from, int to) {
+		StringBuilder value = new StringBuilder();
+		for (int m = from; m < to; m++) {
+			if (values[m] == null)
+				continue;
+			if (value.length() > 0)
+				value.append(SharedProperties.ATTRIBUTE_CONCAT_SYMBOL);
+			value.append(values[m]);
+		}
+		return value.toString();
+	}
+
+	private static Object union(Object[] values, int from, int to, boolean isList) {
+		Set<Object> distinct = new LinkedHashSet<Object>();
+		for (int m = from; m < to; m++) {
+			if (values[m] instanceof List) {
+				for (Object element : (List<?>) values[m]) {
+					if (element != null && !"".equals(element))
+						distinct.add(element);
+				}
+			} else if (values[m] != null && !"".equals(values[m])) {
+				distinct.add(values[m]);
+			}
+		}
+		if (isList)
+			return new ArrayList<Object>(distinct);
+		StringBuilder value = new StringBuilder();
+		for (Object element : distinct) {
+			if (value.length() > 0)
+				value.append(SharedProperties.ATTRIBUTE_CONCAT_SYMBOL);
+			value.append(element);
+		}
+		return value.toString();
+	}
+
+	private static Object aggregateNumbers(double[] numbers, boolean[] present, int from, int to, Class<?> type,
+			AttributeAggregation aggregation) {
+		double result = (aggregation == AttributeAggregation.MAX) ? Double.NEGATIVE_INFINITY : 0.0;
+		boolean any = false;
+		for (int m = from; m < to; m++) {
+			if (!present[m])
+				continue;
+			any = true;
+			if (aggregation == AttributeAggregation.MAX)
+				result = Math.max(result, numbers[m]);
+			else
+				result += numbers[m];
+		}
+		if (aggregation == AttributeAggregation.MEAN) {
+			// missing values count as 0, i.e. we average over all the nodes of the group
+			return Double.valueOf(result / (to - from));
+		} else if (!any) {
+			return null;
+		} else if (type.equals(Integer.class)) {
+			return Integer.valueOf((int) result);
+		} else if (type.equals(Long.class)) {
+			return Long.valueOf((long) result);
+		}
+		return Double.valueOf(result);
+	}
+}
@@ -0,0 +1,153 @@
+package dk.ku.cpr.proteoVisualizer.internal.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.cytoscape.group.CyGroup;
+import org.cytoscape.group.CyGroupManager;
+import org.cytoscape.model.CyEdge;
+import org.cytoscape.model.CyEdge.Type;
+import org.cytoscape.model.CyNetwork;
+import org.cytoscape.model.CyNode;
+import org.cytoscape.model.subnetwork.CyRootNetwork;
+
+import dk.ku.cpr.proteoVisualizer.internal.model.SharedProperties;
+
+/**
+ * Adjacency index of the nodes of the protein groups, to aggregate the meta
+ * edges of a group without looking up the edges of every pair of nodes.
+ *
+ * The edges of each node are read once and bucketed per neighbor, where the
+ * member edges of the protein node of a pending copy stand for the ones of the
+ * copy (see {@link LazyMemberEdges#getConnectingEdges}). The edges of all the
+ * nodes of a group are then bucketed per neighbor node and per group node of
+ * the groups of the neighbor. The edges of the root network with a score below
+ * the cutoff of the network are left out. The index is only valid as long as
+ * the edges and groups of the network do not change.
+ */
+public class GroupEdgeIndex {
+
+	private final CyRootNetwork rootNetwork;
+	private final CyNetwork network;
+	private final CyGroupManager groupManager;
+	private final double cutoff;
+	// node -> neighbor -> edges
+	private final Map<CyNode, Map<CyNode, List<CyEdge>>> adjacency = new HashMap<CyNode, Map<CyNode, List<CyEdge>>>();
+	// group -> neighbor (node or group node) -> edges
+	private final Map<CyGroup, Map<CyNode, List<CyEdge>>> groupAdjacency = new HashMap<CyGroup, Map<CyNode, List<CyEdge>>>();
+	// protein node -> its pending copies, only read if the network has some
+	private Map<CyNode, List<CyNode>> pendingCopies = null;
+
+	public GroupEdgeIndex(CyRootNetwork rootNetwork, CyNetwork network, CyGroupManager groupManager) {
+		this.rootNetwork = rootNetwork;
+		this.network = network;
+		this.groupManager = groupManager;
+		this.cutoff = LazyMemberEdges.getCutoff(network);
+	}
+
+	/**
+	 * @return The edges between the nodes of the group and each neighbor, i.e.
+	 *         each node outside the group connected to one of them and the group
+	 *         node of each group containing such a node.
+	 */
+	public Map<CyNode, List<CyEdge>> getEdgesByNeighbor(CyGroup group) {
+		Map<CyNode, List<CyEdge>> edgesByNeighbor = groupAdjacency.get(group);
+		if (edgesByNeighbor != null)
+			return edgesByNeighbor;
+
+		edgesByNeighbor = new HashMap<CyNode, List<CyEdge>>();
+		Set<CyNode> groupNodes = new HashSet<CyNode>(group.getNodeList());
+		Map<CyNode, List<CyNode>> neighborGroupNodes = new HashMap<CyNode, List<CyNode>>();
+		for (CyNode node : group.getNodeList()) {
+			for (Map.Entry<CyNode, List<CyEdge>> entry : getEdgesByNeighbor(node).entrySet()) {
+				CyNode neighbor = entry.getKey();
+				// the meta edges to the group nodes are not aggregated
+				if (groupNodes.contains(neighbor) || groupManager.isGroup(neighbor, network))
+					continue;
+				edgesByNeighbor.computeIfAbsent(neighbor, k -> new ArrayList<CyEdge>()).addAll(entry.getValue());
+				for (CyNode neighborGroupNode : neighborGroupNodes.computeIfAbsent(neighbor, k -> getGroupNodes(k, group))) {
+					edgesByNeighbor.computeIfAbsent(neighborGroupNode, k -> new ArrayList<CyEdge>()).addAll(entry.getValue());
+				}
+			}
+		}
+		groupAdjacency.put(group, edgesByNeighbor);
+		return edgesByNeighbor;
+	}
+
+	/**
+	 * @return The edges between the nodes of the group and the neighbor (or the
+	 *         nodes of the group of the neighbor).
+	 */
+	public List<CyEdge> getConnectingEdges(CyGroup group, CyNode neighbor) {
+		List<CyEdge> edges = getEdgesByNeighbor(group).get(neighbor);
+		return (edges == null) ? Collections.emptyList() : edges;
+	}
+
+	/**
+	 * @return The edges between the node and each of its neighbors.
+	 */
+	public Map<CyNode, List<CyEdge>> getEdgesByNeighbor(CyNode node) {
+		Map<CyNode, List<CyEdge>> edgesByNeighbor = adjacency.get(node);
+		if (edgesByNeighbor != null)
+			return edgesByNeighbor;
+
+		edgesByNeighbor = new LinkedHashMap<CyNode, List<CyEdge>>();
+		CyNode proteinNode = LazyMemberEdges.getPendingProtein(rootNetwork, node);
+		for (CyEdge edge : rootNetwork.getAdjacentEdgeList(node, Type.ANY)) {
+			if (LazyMemberEdges.isBelowCutoff(rootNetwork, edge, cutoff))
+				continue;
+			CyNode neighbor = edge.getSource().equals(node) ? edge.getTarget() : edge.getSource();
+			edgesByNeighbor.computeIfAbsent(neighbor, k -> new ArrayList<CyEdge>()).add(edge);
+			// the member edges of the node stand for the ones of the pending copies of the neighbor
+			if (proteinNode == null && LazyMemberEdges.isMemberEdge(rootNetwork, edge))
+				addToPendingCopies(edgesByNeighbor, neighbor, edge);
+		}
+		// and the member edges of the protein node for the ones of a pending copy
+		if (proteinNode != null) {
+			for (CyEdge edge : rootNetwork.getAdjacentEdgeList(proteinNode, Type.ANY)) {
+				if (!LazyMemberEdges.isMemberEdge(rootNetwork, edge) || LazyMemberEdges.isBelowCutoff(rootNetwork, edge, cutoff))
+					continue;
+				CyNode neighbor = edge.getSource().equals(proteinNode) ? edge.getTarget() : edge.getSource();
+				edgesByNeighbor.computeIfAbsent(neighbor, k -> new ArrayList<CyEdge>()).add(edge);
+				addToPendingCopies(edgesByNeighbor, neighbor, edge);
+			}
+		}
+		adjacency.put(node, edgesByNeighbor);
+		return edgesByNeighbor;
+	}
+
+	private void addToPendingCopies(Map<CyNode, List<CyEdge>> edgesByNeighbor, CyNode proteinNode, CyEdge edge) {
+		for (CyNode copy : getPendingCopies().getOrDefault(proteinNode, Collections.emptyList()))
+			edgesByNeighbor.computeIfAbsent(copy, k -> new ArrayList<CyEdge>()).add(edge);
+	}
+
+	private Map<CyNode, List<CyNode>> getPendingCopies() {
+		if (pendingCopies != null)
+			return pendingCopies;
+		pendingCopies = new HashMap<CyNode, List<CyNode>>();
+		if (rootNetwork.getTable(CyNode.class, CyNetwork.HIDDEN_ATTRS).getColumn(SharedProperties.PENDING_COPY_OF) == null)
+			return pendingCopies;
+		for (CyNode node : rootNetwork.getNodeList()) {
+			CyNode proteinNode = LazyMemberEdges.getPendingProtein(rootNetwork, node);
+			if (proteinNode != null)
+				pendingCopies.computeIfAbsent(proteinNode, k -> new ArrayList<CyNode>()).add(node);
+		}
+		return pendingCopies;
+	}
+
+	// the group nodes of the groups of the node, except the given group
+	private List<CyNode> getGroupNodes(CyNode node, CyGroup group) {
+		List<CyNode> groupNodes = new ArrayList<CyNode>();
+		for (CyGroup nodeGroup : groupManager.getGroupsForNode(node, network)) {
+			if (!nodeGroup.equals(group))
+				groupNodes.add(nodeGroup.getGroupNode());
+		}
+		return groupNodes;
+	}
+}
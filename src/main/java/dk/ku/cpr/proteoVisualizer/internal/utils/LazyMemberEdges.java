@@ -0,0 +1,274 @@
+package dk.ku.cpr.proteoVisualizer.internal.utils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.cytoscape.group.CyGroup;
+import org.cytoscape.group.CyGroupManager;
+import org.cytoscape.model.CyEdge;
+import org.cytoscape.model.CyEdge.Type;
+import org.cytoscape.model.CyNetwork;
+import org.cytoscape.model.CyNode;
+import org.cytoscape.model.CyTable;
+import org.cytoscape.model.subnetwork.CyRootNetwork;
+import org.cytoscape.model.subnetwork.CySubNetwork;
+
+import dk.ku.cpr.proteoVisualizer.internal.model.AppManager;
+import dk.ku.cpr.proteoVisualizer.internal.model.SharedProperties;
+
+/**
+ * Handles the copies of the protein nodes whose member edges (the copies of the
+ * edges of their protein node) are only created when their group is expanded.
+ *
+ * Until then, such a copy is <i>pending</i>: it only has its identity edges and
+ * the edges of its protein node stand for its own. The meta edges of a
+ * collapsed group are aggregated from them, and the neighbors that are only
+ * connected to the pending copies get a <i>lazy</i> meta edge, which is removed
+ * when the group or the neighbor is expanded or collapsed.
+ */
+public class LazyMemberEdges {
+
+	// We forbid the class to have instances
+	private LazyMemberEdges() {
+	}
+
+	/**
+	 * Marks a copy of a protein node as pending.
+	 */
+	public static void setPending(CyRootNetwork rootNetwork, CyNode copy, CyNode proteinNode) {
+		CyTable hiddenNodeTable = rootNetwork.getTable(CyNode.class, CyNetwork.HIDDEN_ATTRS);
+		if (hiddenNodeTable.getColumn(SharedProperties.PENDING_COPY_OF) == null)
+			hiddenNodeTable.createColumn(SharedProperties.PENDING_COPY_OF, Long.class, false);
+		rootNetwork.getRow(copy, CyNetwork.HIDDEN_ATTRS).set(SharedProperties.PENDING_COPY_OF, proteinNode.getSUID());
+	}
+
+	/**
+	 * @return The protein node of a pending copy, or <code>null</code> if the
+	 *         node is not a pending copy.
+	 */
+	public static CyNode getPendingProtein(CyRootNetwork rootNetwork, CyNode node) {
+		if (rootNetwork.getTable(CyNode.class, CyNetwork.HIDDEN_ATTRS).getColumn(SharedProperties.PENDING_COPY_OF) == null)
+			return null;
+		Long proteinSUID = rootNetwork.getRow(node, CyNetwork.HIDDEN_ATTRS).get(SharedProperties.PENDING_COPY_OF, Long.class);
+		return (proteinSUID == null) ? null : rootNetwork.getNode(proteinSUID);
+	}
+
+	/**
+	 * @return <code>true</code> if one of the nodes of the group is a pending copy.
+	 */
+	public static boolean hasPendingCopies(CyGroup group) {
+		for (CyNode node : group.getNodeList()) {
+			if (getPendingProtein(group.getRootNetwork(), node) != null)
+				return true;
+		}
+		return false;
+	}
+
+	public static boolean isLazyMetaEdge(CyRootNetwork rootNetwork, CyEdge edge) {
+		return getHiddenFlag(rootNetwork, edge, SharedProperties.LAZY_META_EDGE);
+	}
+
+	/**
+	 * @return <code>true</code> if the edge is a meta edge of a group, including
+	 *         the lazy meta edges.
+	 */
+	public static boolean isMetaEdge(CyRootNetwork rootNetwork, CyEdge edge) {
+		return getHiddenFlag(rootNetwork, edge, "__isMetaEdge") || isLazyMetaEdge(rootNetwork, edge);
+	}
+
+	/**
+	 * @return <code>true</code> if the edge is an edge between two proteins, i.e.
+	 *         neither an identity edge nor a meta edge.
+	 */
+	public static boolean isMemberEdge(CyRootNetwork rootNetwork, CyEdge edge) {
+		if (SharedProperties.EDGE_TYPE_IDENTITY.equals(rootNetwork.getRow(edge).get(CyEdge.INTERACTION, String.class)))
+			return false;
+		return !isMetaEdge(rootNetwork, edge);
+	}
+
+	/**
+	 * @return The confidence cutoff of the network, or 0 if it has none. The
+	 *         edges of the root network with a lower score were removed from the
+	 *         network when its cutoff was raised, but are kept in the root network
+	 *         such that the cutoff can be lowered again.
+	 */
+	public static double getCutoff(CyNetwork network) {
+		if (network.getDefaultNetworkTable().getColumn(SharedProperties.CUTOFF) == null)
+			return 0.0;
+		Double cutoff = network.getRow(network).get(SharedProperties.CUTOFF, Double.class);
+		return (cutoff == null) ? 0.0 : cutoff.doubleValue();
+	}
+
+	/**
+	 * @return <code>true</code> if the edge has a score below the cutoff, i.e.
+	 *         it is not part of a network with this cutoff.
+	 */
+	public static boolean isBelowCutoff(CyRootNetwork rootNetwork, CyEdge edge, double cutoff) {
+		if (cutoff <= 0.0)
+			return false;
+		Double score = rootNetwork.getRow(edge).get(SharedProperties.SCORE, Double.class);
+		return score != null && score.doubleValue() < cutoff;
+	}
+
+	/**
+	 * @return The edges between two nodes with a score of at least the cutoff,
+	 *         where the edges of the protein node of a pending copy stand for the
+	 *         ones of the copy.
+	 */
+	public static List<CyEdge> getConnectingEdges(CyRootNetwork rootNetwork, CyNode node1, CyNode node2, double cutoff) {
+		List<CyEdge> edges = new ArrayList<CyEdge>();
+		for (CyEdge edge : rootNetwork.getConnectingEdgeList(node1, node2, Type.ANY)) {
+			if (!isBelowCutoff(rootNetwork, edge, cutoff))
+				edges.add(edge);
+		}
+		CyNode protein1 = getPendingProtein(rootNetwork, node1);
+		CyNode protein2 = getPendingProtein(rootNetwork, node2);
+		if (protein1 == null && protein2 == null)
+			return edges;
+		if (protein1 == null)
+			protein1 = node1;
+		if (protein2 == null)
+			protein2 = node2;
+		// two copies of the same protein are only connected by their identity edge
+		if (protein1.equals(protein2))
+			return edges;
+		for (CyEdge edge : rootNetwork.getConnectingEdgeList(protein1, protein2, Type.ANY)) {
+			if (isMemberEdge(rootNetwork, edge) && !isBelowCutoff(rootNetwork, edge, cutoff))
+				edges.add(edge);
+		}
+		return edges;
+	}
+
+	/**
+	 * Removes the lazy meta edges of a node.
+	 * @return The nodes at the other end of the removed edges.
+	 */
+	public static Set<CyNode> removeLazyMetaEdges(CyRootNetwork rootNetwork, CyNode node) {
+		Set<CyNode> neighbors = new LinkedHashSet<CyNode>();
+		List<CyEdge> lazyEdges = new ArrayList<CyEdge>();
+		for (CyEdge edge : rootNetwork.getAdjacentEdgeList(node, Type.ANY)) {
+			if (!isLazyMetaEdge(rootNetwork, edge))
+				continue;
+			lazyEdges.add(edge);
+			neighbors.add(edge.getSource().equals(node) ? edge.getTarget() : edge.getSource());
+		}
+		if (!lazyEdges.isEmpty())
+			rootNetwork.removeEdges(lazyEdges);
+		return neighbors;
+	}
+
+	/**
+	 * Creates the lazy meta edges of a collapsed group, between its group node
+	 * and the neighbors of the protein nodes of its pending copies that are not
+	 * connected to the group node yet. The previous lazy meta edges of the group
+	 * are removed.
+	 * @param aggregator The aggregator of the edge columns of the new edges.
+	 */
+	public static void updateLazyMetaEdges(AppManager manager, CyNetwork network, CyGroup group,
+			EdgeAttributeAggregator aggregator) {
+		CyRootNetwork rootNetwork = group.getRootNetwork();
+		CyNode groupNode = group.getGroupNode();
+		removeLazyMetaEdges(rootNetwork, groupNode);
+		if (!group.isCollapsed(network))
+			return;
+
+		CyGroupManager groupManager = manager.getService(CyGroupManager.class);
+		double cutoff = getCutoff(network);
+		List<CyNode> groupNodes = group.getNodeList();
+		Set<CyNode> neighbors = new LinkedHashSet<CyNode>();
+		for (CyNode node : groupNodes) {
+			CyNode proteinNode = getPendingProtein(rootNetwork, node);
+			if (proteinNode == null)
+				continue;
+			for (CyEdge edge : rootNetwork.getAdjacentEdgeList(proteinNode, Type.ANY)) {
+				if (!isMemberEdge(rootNetwork, edge) || isBelowCutoff(rootNetwork, edge, cutoff))
+					continue;
+				CyNode neighbor = edge.getSource().equals(proteinNode) ? edge.getTarget() : edge.getSource();
+				if (groupNodes.contains(neighbor))
+					continue;
+				CyNode visibleNeighbor = getVisibleNode(groupManager, network, neighbor);
+				if (visibleNeighbor != null && !visibleNeighbor.equals(groupNode))
+					neighbors.add(visibleNeighbor);
+			}
+		}
+
+		String groupName = network.getRow(groupNode).get(CyNetwork.NAME, String.class);
+		for (CyNode neighbor : neighbors) {
+			// the neighbors connected to the other nodes of the group already have a meta edge
+			if (!network.getConnectingEdgeList(groupNode, neighbor, Type.ANY).isEmpty())
+				continue;
+			CyEdge lazyEdge = network.addEdge(groupNode, neighbor, false);
+			if (rootNetwork.getTable(CyEdge.class, CyNetwork.HIDDEN_ATTRS).getColumn(SharedProperties.LAZY_META_EDGE) == null)
+				rootNetwork.getTable(CyEdge.class, CyNetwork.HIDDEN_ATTRS).createColumn(SharedProperties.LAZY_META_EDGE,
+						Boolean.class, false);
+			rootNetwork.getRow(lazyEdge, CyNetwork.HIDDEN_ATTRS).set(SharedProperties.LAZY_META_EDGE, true);
+			network.getRow(lazyEdge).set(CyEdge.INTERACTION, "pp");
+			network.getRow(lazyEdge).set(CyNetwork.NAME,
+					groupName + " (pp) " + network.getRow(neighbor).get(CyNetwork.NAME, String.class));
+			manager.aggregateGroupEdgeAttributes(network, group, lazyEdge, groupNodes, neighbor, aggregator);
+		}
+	}
+
+	/**
+	 * Creates the member edges of the pending copies of an expanded group, as
+	 * copies of the member edges of their protein node. The edges to nodes
+	 * hidden in a collapsed group are added to that group.
+	 * @return The created edges.
+	 */
+	public static List<CyEdge> materialize(AppManager manager, CyNetwork network, CyGroup group) {
+		CyRootNetwork rootNetwork = group.getRootNetwork();
+		CyGroupManager groupManager = manager.getService(CyGroupManager.class);
+		RowCopier edgeRowCopier = new RowCopier(network.getDefaultEdgeTable());
+		double cutoff = getCutoff(network);
+		List<CyEdge> newEdges = new ArrayList<CyEdge>();
+		for (CyNode node : group.getNodeList()) {
+			CyNode proteinNode = getPendingProtein(rootNetwork, node);
+			if (proteinNode == null)
+				continue;
+			for (CyEdge edge : rootNetwork.getAdjacentEdgeList(proteinNode, Type.ANY)) {
+				if (!isMemberEdge(rootNetwork, edge) || isBelowCutoff(rootNetwork, edge, cutoff))
+					continue;
+				CyNode neighbor = edge.getSource().equals(proteinNode) ? edge.getTarget() : edge.getSource();
+				CyEdge newEdge = edge.getSource().equals(proteinNode)
+						? rootNetwork.addEdge(node, neighbor, edge.isDirected())
+						: rootNetwork.addEdge(neighbor, node, edge.isDirected());
+				if (network.containsNode(node) && network.containsNode(neighbor))
+					((CySubNetwork) network).addEdge(newEdge);
+				edgeRowCopier.copy(edge, newEdge);
+				newEdges.add(newEdge);
+				// let the collapsed groups of the neighbor create their meta edges
+				for (CyGroup neighborGroup : groupManager.getGroupsForNode(neighbor, network)) {
+					if (!neighborGroup.equals(group))
+						neighborGroup.addEdges(List.of(newEdge));
+				}
+			}
+			rootNetwork.getRow(node, CyNetwork.HIDDEN_ATTRS).set(SharedProperties.PENDING_COPY_OF, null);
+		}
+		if (!newEdges.isEmpty())
+			group.addEdges(newEdges);
+		return newEdges;
+	}
+
+	private static boolean getHiddenFlag(CyRootNetwork rootNetwork, CyEdge edge, String column) {
+		if (rootNetwork.getTable(CyEdge.class, CyNetwork.HIDDEN_ATTRS).getColumn(column) == null)
+			return false;
+		Boolean flag = rootNetwork.getRow(edge, CyNetwork.HIDDEN_ATTRS).get(column, Boolean.class);
+		return flag != null && flag;
+	}
+
+	/**
+	 * @return The node itself if it is in the network, or the node of the
+	 *         collapsed group that hides it.
+	 */
+	private static CyNode getVisibleNode(CyGroupManager groupManager, CyNetwork network, CyNode node) {
+		if (network.containsNode(node))
+			return node;
+		for (CyGroup group : groupManager.getGroupsForNode(node, network)) {
+			if (group.isCollapsed(network) && network.containsNode(group.getGroupNode()))
+				return group.getGroupNode();
+		}
+		return null;
+	}
+}
@@ -0,0 +1,144 @@
+package dk.ku.cpr.proteoVisualizer.internal.utils;
+
+/**
+ * A map from <code>long</code> keys to <code>int</code> values, stored in
+ * primitive arrays with open addressing (linear probing), e.g. to count the
+ * unordered pairs of indices packed with {@link #pairKey(int, int)}. Absent
+ * keys have the value 0.
+ */
+public class LongIntHashMap {
+
+	/** The consumer of the entries of the map. */
+	public interface EntryConsumer {
+		void accept(long key, int value);
+	}
+
+	private long[] keys;
+	private int[] values;
+	private boolean[] used;
+	private int size = 0;
+
+	public LongIntHashMap() {
+		this(16);
+	}
+
+	/**
+	 * @param expectedSize The expected number of keys.
+	 */
+	public LongIntHashMap(int expectedSize) {
+		int capacity = 16;
+		while (capacity < expectedSize * 2)
+			capacity <<= 1;
+		keys = new long[capacity];
+		values = new int[capacity];
+		used = new boolean[capacity];
+	}
+
+	/**
+	 * @return The key of the unordered pair of two non-negative indices, i.e.
+	 *         the smaller index in the upper 32 bits and the larger one in the
+	 *         lower 32 bits.
+	 */
+	public static long pairKey(int a, int b) {
+		return ((long) Math.min(a, b) << 32) | Math.max(a, b);
+	}
+
+	public static int pairFirst(long key) {
+		return (int) (key >>> 32);
+	}
+
+	public static int pairSecond(long key) {
+		return (int) key;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return The value of the key, or 0 if the map does not contain it.
+	 */
+	public int get(long key) {
+		int slot = find(key);
+		return used[slot] ? values[slot] : 0;
+	}
+
+	public boolean containsKey(long key) {
+		return used[find(key)];
+	}
+
+	public void put(long key, int value) {
+		int slot = find(key);
+		if (!used[slot]) {
+			used[slot] = true;
+			keys[slot] = key;
+			size++;
+		}
+		values[slot] = value;
+		if (size * 2 > keys.length)
+			grow();
+	}
+
+	/**
+	 * Adds a delta to the value of the key, which starts at 0.
+	 * @return The new value.
+	 */
+	public int addTo(long key, int delta) {
+		int slot = find(key);
+		if (!used[slot]) {
+			used[slot] = true;
+			keys[slot] = key;
+			size++;
+		}
+		int value = values[slot] += delta;
+		if (size * 2 > keys.length)
+			grow();
+		return value;
+	}
+
+	public void forEach(EntryConsumer consumer) {
+		for (int slot = 0; slot < keys.length; slot++) {
+			if (used[slot])
+				consumer.accept(keys[slot], values[slot]);
+		}
+	}
+
+	// the slot of the key, or the free slot where it would be inserted
+	private int find(long key) {
+		int mask = keys.length - 1;
+		int slot = hash(key) & mask;
+		while (used[slot] && keys[slot] != key)
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	private static int hash(long key) {
+		// spread the bits of both indices of a pair over the lower bits
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	private void grow() {
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		boolean[] oldUsed = used;
+		keys = new long[oldKeys.length * 2];
+		values = new int[oldKeys.length * 2];
+		used = new boolean[oldKeys.length * 2];
+		for (int slot = 0; slot < oldKeys.length; slot++) {
+			if (!oldUsed[slot])
+				continue;
+			int newSlot = find(oldKeys[slot]);
+			used[newSlot] = true;
+			keys[newSlot] = oldKeys[slot];
+			values[newSlot] = oldValues[slot];
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("{");
+		forEach((key, value) -> sb.append(sb.length() > 1 ? ", " : "").append(key).append('=').append(value));
+		return sb.append('}').toString();
+	}
+}
@@ -0,0 +1,107 @@
+package dk.ku.cpr.proteoVisualizer.internal.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Filters applied to the accessions of a protein group while it is parsed,
+ * such that accessions that would never match in STRING are not sent in the
+ * query:
+ * <ul>
+ * <li>accessions starting with one of the excluded prefixes (decoys and
+ * contaminants, e.g. <code>REV__</code> and <code>CON__</code>) are skipped,</li>
+ * <li>isoform suffixes can be removed (<code>P12345-2</code> becomes
+ * <code>P12345</code>),</li>
+ * <li>only the first (leading) accessions of a protein group can be kept.</li>
+ * </ul>
+ * The name of the protein group is not changed by the filters.
+ */
+public class ProteinGroupFilter {
+
+	private final List<String> excludedPrefixes;
+	private final int maxProteins;
+	private final boolean stripIsoforms;
+
+	/**
+	 * @param excludedPrefixes The prefixes of the accessions to skip.
+	 * @param maxProteins      The maximum number of accessions kept per protein
+	 *                         group, 0 to keep all of them.
+	 * @param stripIsoforms    <code>true</code> to remove the isoform suffixes.
+	 */
+	public ProteinGroupFilter(List<String> excludedPrefixes, int maxProteins, boolean stripIsoforms) {
+		this.excludedPrefixes = new ArrayList<String>();
+		if (excludedPrefixes != null) {
+			for (String prefix : excludedPrefixes) {
+				if (prefix != null && !prefix.isBlank())
+					this.excludedPrefixes.add(prefix.strip());
+			}
+		}
+		this.maxProteins = Math.max(0, maxProteins);
+		this.stripIsoforms = stripIsoforms;
+	}
+
+	/** @return A filter that keeps every accession unchanged. */
+	public static ProteinGroupFilter none() {
+		return new ProteinGroupFilter(null, 0, false);
+	}
+
+	/**
+	 * Parses a comma separated list of prefixes, as given in the commands.
+	 * @param prefixes The comma separated prefixes, can be <code>null</code>.
+	 * @return The list of prefixes.
+	 */
+	public static List<String> parsePrefixes(String prefixes) {
+		List<String> list = new ArrayList<String>();
+		if (prefixes == null)
+			return list;
+		ProteinGroupTokenizer tokenizer = new ProteinGroupTokenizer(",");
+		tokenizer.reset(prefixes);
+		while (tokenizer.next()) {
+			list.add(tokenizer.token());
+		}
+		return list;
+	}
+
+	/** @return The maximum number of accessions per protein group, 0 if there is no limit. */
+	public int getMaxProteins() {
+		return maxProteins;
+	}
+
+	/**
+	 * @return <code>false</code> if the accession between <code>start</code>
+	 *         and <code>end</code> starts with an excluded prefix.
+	 */
+	public boolean accept(CharSequence text, int start, int end) {
+		for (String prefix : excludedPrefixes) {
+			if (startsWith(text, start, end, prefix))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return The end of the canonical accession, i.e. without the isoform
+	 *         suffix if it has one and isoforms are stripped.
+	 */
+	public int canonicalEnd(CharSequence text, int start, int end) {
+		if (!stripIsoforms)
+			return end;
+		// the suffix is a dash followed by digits
+		int i = end;
+		while (i > start && Character.isDigit(text.charAt(i - 1)))
+			i--;
+		if (i < end && i - 1 > start && text.charAt(i - 1) == '-')
+			return i - 1;
+		return end;
+	}
+
+	private static boolean startsWith(CharSequence text, int start, int end, String prefix) {
+		if (end - start < prefix.length())
+			return false;
+		for (int i = 0; i < prefix.length(); i++) {
+			if (text.charAt(start + i) != prefix.charAt(i))
+				return false;
+		}
+		return true;
+	}
+}
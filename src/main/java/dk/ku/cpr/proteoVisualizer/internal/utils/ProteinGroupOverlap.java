@@ -0,0 +1,86 @@
+package dk.ku.cpr.proteoVisualizer.internal.utils;
+
+import java.util.Arrays;
+
+import dk.ku.cpr.proteoVisualizer.internal.model.ProteinGroupMapping;
+
+/**
+ * The overlap of the pairs of protein groups that share at least one protein:
+ * the number of shared proteins, the Jaccard index and the overlap
+ * coefficient.
+ *
+ * The pairs are enumerated from the protein groups of each protein (the
+ * inverted index of the {@link ProteinGroupMapping}), such that only the pairs
+ * that actually share a protein are visited.
+ */
+public class ProteinGroupOverlap {
+
+	private final ProteinGroupMapping mapping;
+	// the pairs, sorted by their key (see LongIntHashMap#pairKey)
+	private final long[] pairs;
+	private final int[] shared;
+
+	private ProteinGroupOverlap(ProteinGroupMapping mapping, long[] pairs, int[] shared) {
+		this.mapping = mapping;
+		this.pairs = pairs;
+		this.shared = shared;
+	}
+
+	/**
+	 * Counts the proteins shared by the pairs of protein groups, in time linear
+	 * in the number of such (protein, pair) combinations.
+	 */
+	public static ProteinGroupOverlap compute(ProteinGroupMapping mapping) {
+		LongIntHashMap counts = new LongIntHashMap();
+		for (int protein = 0; protein < mapping.getProteinCount(); protein++) {
+			int numGroups = mapping.getGroupCount(protein);
+			for (int i = 0; i < numGroups; i++) {
+				for (int j = i + 1; j < numGroups; j++)
+					counts.addTo(LongIntHashMap.pairKey(mapping.getGroup(protein, i), mapping.getGroup(protein, j)), 1);
+			}
+		}
+
+		long[] pairs = new long[counts.size()];
+		int[] next = new int[1];
+		counts.forEach((pair, count) -> pairs[next[0]++] = pair);
+		Arrays.sort(pairs);
+		int[] shared = new int[pairs.length];
+		for (int p = 0; p < pairs.length; p++)
+			shared[p] = counts.get(pairs[p]);
+		return new ProteinGroupOverlap(mapping, pairs, shared);
+	}
+
+	/** @return The number of pairs of protein groups that share proteins. */
+	public int getPairCount() {
+		return pairs.length;
+	}
+
+	/** @return The index of the first protein group of the pair, the smaller one. */
+	public int getGroup1(int pair) {
+		return LongIntHashMap.pairFirst(pairs[pair]);
+	}
+
+	/** @return The index of the second protein group of the pair. */
+	public int getGroup2(int pair) {
+		return LongIntHashMap.pairSecond(pairs[pair]);
+	}
+
+	/** @return The number of proteins shared by the protein groups of the pair. */
+	public int getSharedCount(int pair) {
+		return shared[pair];
+	}
+
+	/** @return The shared proteins divided by the proteins of either group. */
+	public double getJaccard(int pair) {
+		int size1 = mapping.getMemberCount(getGroup1(pair));
+		int size2 = mapping.getMemberCount(getGroup2(pair));
+		return (double) shared[pair] / (size1 + size2 - shared[pair]);
+	}
+
+	/** @return The shared proteins divided by the proteins of the smaller group. */
+	public double getOverlapCoefficient(int pair) {
+		int size1 = mapping.getMemberCount(getGroup1(pair));
+		int size2 = mapping.getMemberCount(getGroup2(pair));
+		return (double) shared[pair] / Math.min(size1, size2);
+	}
+}
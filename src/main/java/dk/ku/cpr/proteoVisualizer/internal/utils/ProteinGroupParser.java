@@ -0,0 +1,94 @@
+package dk.ku.cpr.proteoVisualizer.internal.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import dk.ku.cpr.proteoVisualizer.internal.model.ProteinGroupMapping;
+
+/**
+ * Builds the {@link ProteinGroupMapping} from a list of protein groups. Each
+ * protein group is a list of accessions separated by the protein group
+ * delimiter.
+ *
+ * Protein groups can be added one by one, from a query string or streamed from
+ * a file, such that the input text never has to be held in memory as a whole.
+ */
+public class ProteinGroupParser {
+
+	private final ProteinGroupTokenizer tokenizer;
+	private final ProteinGroupMapping.Builder builder;
+	private final ProteinGroupFilter filter;
+
+	public ProteinGroupParser(String delimiter) {
+		this(delimiter, ProteinGroupFilter.none());
+	}
+
+	public ProteinGroupParser(String delimiter, ProteinGroupFilter filter) {
+		this.tokenizer = new ProteinGroupTokenizer(delimiter);
+		this.builder = new ProteinGroupMapping.Builder();
+		this.filter = (filter == null) ? ProteinGroupFilter.none() : filter;
+	}
+
+	/**
+	 * Reads the given file line by line, each line being one protein group.
+	 * @param file The file to read.
+	 * @throws IOException If the file cannot be read.
+	 */
+	public void parseFile(Path file) throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				addProteinGroup(line);
+			}
+		}
+	}
+
+	/**
+	 * Parses a query string in which protein groups are separated by the given
+	 * separator (new line for the GUI, comma for the commands).
+	 * @param query The query string.
+	 * @param separator The character separating the protein groups.
+	 */
+	public void parseQuery(String query, char separator) {
+		ProteinGroupTokenizer groups = new ProteinGroupTokenizer(String.valueOf(separator));
+		groups.reset(query);
+		while (groups.next()) {
+			addProteinGroup(groups.token());
+		}
+	}
+
+	/**
+	 * Adds one protein group. Blank and already known protein groups are ignored,
+	 * as well as protein groups with no accession left after filtering.
+	 * @param queryID The protein group, i.e. the accessions separated by the
+	 *                protein group delimiter.
+	 */
+	public void addProteinGroup(String queryID) {
+		// Strip off trailing spaces, and ignore blank lines
+		String pg = queryID.strip();
+		if (pg.isEmpty() || builder.containsProteinGroup(pg))
+			return;
+
+		// the tokenizer also skips the spaces in case the IDs are separated by "; " instead of just semicolon
+		builder.beginProteinGroup(pg);
+		tokenizer.reset(pg);
+		int maxProteins = filter.getMaxProteins();
+		while (tokenizer.next()) {
+			int start = tokenizer.start();
+			if (!filter.accept(pg, start, tokenizer.end()))
+				continue;
+			builder.addProtein(pg, start, filter.canonicalEnd(pg, start, tokenizer.end()));
+			// isoforms of the same accession count only once
+			if (maxProteins > 0 && builder.getCurrentMemberCount() >= maxProteins)
+				break;
+		}
+		builder.endProteinGroup();
+	}
+
+	public ProteinGroupMapping getMapping() {
+		return builder.build();
+	}
+}
@@ -0,0 +1,166 @@
+package dk.ku.cpr.proteoVisualizer.internal.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import dk.ku.cpr.proteoVisualizer.internal.model.ProteinGroupMapping;
+import dk.ku.cpr.proteoVisualizer.internal.model.ReportFormat;
+
+/**
+ * Reads protein groups from a tab-separated report (MaxQuant, DIA-NN,
+ * Spectronaut, ...) or from a plain list with one protein group per line.
+ *
+ * The file is streamed line by line and only the protein group column is
+ * extracted from each line, such that the rest of the report is never kept in
+ * memory.
+ */
+public class ProteinGroupReportReader {
+
+	private final ReportFormat format;
+	private final String column;
+	private final String delimiter;
+	private ProteinGroupFilter filter;
+
+	private ReportFormat usedFormat;
+	private String usedColumn;
+
+	/**
+	 * @param format    The format of the file, {@link ReportFormat#AUTO} to
+	 *                  detect it from the header.
+	 * @param column    The name of the protein group column, or
+	 *                  <code>null</code> to use the default column of the format.
+	 * @param delimiter The delimiter of the accessions, used if the format does
+	 *                  not define one.
+	 */
+	public ProteinGroupReportReader(ReportFormat format, String column, String delimiter) {
+		this.format = (format == null) ? ReportFormat.AUTO : format;
+		this.column = (column == null || column.isBlank()) ? null : column.strip();
+		this.delimiter = delimiter;
+		this.filter = ProteinGroupFilter.none();
+		this.usedFormat = null;
+		this.usedColumn = null;
+	}
+
+	/**
+	 * Sets the filters applied to the accessions of each protein group.
+	 * @param filter The filters.
+	 */
+	public void setFilter(ProteinGroupFilter filter) {
+		this.filter = (filter == null) ? ProteinGroupFilter.none() : filter;
+	}
+
+	/**
+	 * Reads the protein groups of the given file.
+	 * @param file The file to read.
+	 * @return The protein group mapping.
+	 * @throws IOException If the file cannot be read, or if the protein group
+	 *                     column cannot be found.
+	 */
+	public ProteinGroupMapping read(Path file) throws IOException {
+		if (format == ReportFormat.PLAIN && column == null) {
+			usedFormat = ReportFormat.PLAIN;
+			ProteinGroupParser parser = new ProteinGroupParser(delimiter, filter);
+			parser.parseFile(file);
+			return parser.getMapping();
+		}
+
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line = reader.readLine();
+			if (line == null)
+				return new ProteinGroupMapping.Builder().build();
+			// ignore the byte order mark some tools write at the beginning of the file
+			if (line.startsWith("\uFEFF"))
+				line = line.substring(1);
+
+			List<String> header = parseHeader(line);
+			usedFormat = format;
+			if (usedFormat == ReportFormat.AUTO) {
+				usedFormat = ReportFormat.detect(header);
+			}
+
+			int columnIndex = -1;
+			if (column != null) {
+				usedColumn = column;
+				columnIndex = header.indexOf(column);
+			} else if (usedFormat != null) {
+				for (String formatColumn : usedFormat.getColumns()) {
+					columnIndex = header.indexOf(formatColumn);
+					if (columnIndex >= 0) {
+						usedColumn = formatColumn;
+						break;
+					}
+				}
+			}
+
+			ProteinGroupParser parser;
+			if (usedFormat == null && column == null) {
+				// no known header: this is a list of protein groups, and the first line is one of them
+				usedFormat = ReportFormat.PLAIN;
+				parser = new ProteinGroupParser(delimiter, filter);
+				parser.addProteinGroup(line);
+				while ((line = reader.readLine()) != null) {
+					parser.addProteinGroup(line);
+				}
+				return parser.getMapping();
+			}
+
+			if (columnIndex < 0) {
+				throw new IOException("Could not find the protein group column "
+						+ (column != null ? "'" + column + "'" : usedFormat.getColumns()) + " in the header of "
+						+ file.getFileName() + ".");
+			}
+
+			String pgDelimiter = delimiter;
+			if (usedFormat != null && usedFormat.getDelimiter() != null)
+				pgDelimiter = usedFormat.getDelimiter();
+			parser = new ProteinGroupParser(pgDelimiter, filter);
+			while ((line = reader.readLine()) != null) {
+				int start = 0;
+				for (int i = 0; i < columnIndex && start >= 0; i++) {
+					start = line.indexOf('\t', start);
+					if (start >= 0)
+						start++;
+				}
+				// ignore the lines that do not have enough columns
+				if (start < 0)
+					continue;
+				int end = line.indexOf('\t', start);
+				if (end < 0)
+					end = line.length();
+				// remove the quotes around the value if there are any
+				if (end - start >= 2 && line.charAt(start) == '"' && line.charAt(end - 1) == '"') {
+					start++;
+					end--;
+				}
+				parser.addProteinGroup(line.substring(start, end));
+			}
+			return parser.getMapping();
+		}
+	}
+
+	/** @return The format of the last file read, after detection. */
+	public ReportFormat getUsedFormat() {
+		return usedFormat;
+	}
+
+	/** @return The protein group column of the last file read, if any. */
+	public String getUsedColumn() {
+		return usedColumn;
+	}
+
+	private static List<String> parseHeader(String line) {
+		List<String> header = new ArrayList<String>();
+		for (String name : line.split("\t", -1)) {
+			name = name.strip();
+			if (name.length() >= 2 && name.startsWith("\"") && name.endsWith("\""))
+				name = name.substring(1, name.length() - 1);
+			header.add(name);
+		}
+		return header;
+	}
+}
@@ -0,0 +1,110 @@
+package dk.ku.cpr.proteoVisualizer.internal.utils;
+
+/**
+ * Splits a protein group into its accessions in a single scan, without
+ * creating intermediate arrays or strings.
+ *
+ * The tokenizer is created once for a delimiter (see
+ * {@link dk.ku.cpr.proteoVisualizer.internal.model.SharedProperties#pg_delimiters})
+ * and reused for every protein group: after {@link #reset(CharSequence, int, int)},
+ * each call to {@link #next()} moves to the next accession, whose span in the
+ * text is given by {@link #start()} and {@link #end()}. Whitespace around the
+ * delimiters (e.g. <code>"; "</code>) is skipped and empty tokens are ignored.
+ */
+public final class ProteinGroupTokenizer {
+
+	private final char[] delimiter;
+
+	private CharSequence text;
+	private int position;
+	private int limit;
+	private int tokenStart;
+	private int tokenEnd;
+
+	public ProteinGroupTokenizer(String delimiter) {
+		if (delimiter == null || delimiter.isEmpty())
+			throw new IllegalArgumentException("The protein group delimiter cannot be empty.");
+		this.delimiter = delimiter.toCharArray();
+	}
+
+	/**
+	 * Starts tokenizing the given protein group.
+	 * @param text The text containing the protein group.
+	 * @return This tokenizer.
+	 */
+	public ProteinGroupTokenizer reset(CharSequence text) {
+		return reset(text, 0, text.length());
+	}
+
+	/**
+	 * Starts tokenizing the part of the text between <code>start</code>
+	 * (inclusive) and <code>end</code> (exclusive).
+	 * @return This tokenizer.
+	 */
+	public ProteinGroupTokenizer reset(CharSequence text, int start, int end) {
+		this.text = text;
+		this.position = start;
+		this.limit = end;
+		this.tokenStart = start;
+		this.tokenEnd = start;
+		return this;
+	}
+
+	/**
+	 * Moves to the next non-empty accession.
+	 * @return <code>false</code> if there is no more accession.
+	 */
+	public boolean next() {
+		while (position < limit) {
+			int start = position;
+			int end = indexOfDelimiter(start);
+			position = (end < limit) ? end + delimiter.length : limit;
+
+			// trim the whitespace around the token
+			while (start < end && isWhitespace(text.charAt(start)))
+				start++;
+			while (end > start && isWhitespace(text.charAt(end - 1)))
+				end--;
+			if (start < end) {
+				tokenStart = start;
+				tokenEnd = end;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** @return The index of the first character of the current accession. */
+	public int start() {
+		return tokenStart;
+	}
+
+	/** @return The index after the last character of the current accession. */
+	public int end() {
+		return tokenEnd;
+	}
+
+	/** @return The current accession as a new string. */
+	public String token() {
+		return text.subSequence(tokenStart, tokenEnd).toString();
+	}
+
+	private int indexOfDelimiter(int from) {
+		char first = delimiter[0];
+		int last = limit - delimiter.length;
+		for (int i = from; i <= last; i++) {
+			if (text.charAt(i) != first)
+				continue;
+			int j = 1;
+			while (j < delimiter.length && text.charAt(i + j) == delimiter[j])
+				j++;
+			if (j == delimiter.length)
+				return i;
+		}
+		return limit;
+	}
+
+	private static boolean isWhitespace(char c) {
+		return c <= ' ' || Character.isWhitespace(c);
+	}
+}
@@ -0,0 +1,55 @@
+package dk.ku.cpr.proteoVisualizer.internal.utils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Shares one in-flight computation between the concurrent requests with the
+ * same key. The computation is forgotten as soon as it is done, i.e. its
+ * result is not cached.
+ */
+public class RequestCoalescer<K, V> {
+
+	private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<K, CompletableFuture<V>>();
+
+	/**
+	 * Joins the computation of the key if one is in flight, otherwise starts a
+	 * new one.
+	 * @param key   The normalized key of the request.
+	 * @param start Starts the computation, only called if none is in flight.
+	 * @return The result of the computation. Cancelling it does not cancel the
+	 *         shared computation.
+	 */
+	public CompletableFuture<V> submit(K key, Supplier<CompletableFuture<V>> start) {
+		CompletableFuture<V> shared = new CompletableFuture<V>();
+		CompletableFuture<V> existing = inFlight.putIfAbsent(key, shared);
+		if (existing != null)
+			return existing.copy();
+
+		try {
+			start.get().whenComplete((value, error) -> {
+				inFlight.remove(key, shared);
+				if (error != null)
+					shared.completeExceptionally(error);
+				else
+					shared.complete(value);
+			});
+		} catch (RuntimeException e) {
+			inFlight.remove(key, shared);
+			shared.completeExceptionally(e);
+		}
+		return shared.copy();
+	}
+
+	/** @return <code>true</code> if a computation of the key is in flight. */
+	public boolean isInFlight(K key) {
+		return inFlight.containsKey(key);
+	}
+
+	/** @return The number of computations in flight. */
+	public int getInFlightCount() {
+		return inFlight.size();
+	}
+}
@@ -0,0 +1,62 @@
+package dk.ku.cpr.proteoVisualizer.internal.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.cytoscape.model.CyColumn;
+import org.cytoscape.model.CyIdentifiable;
+import org.cytoscape.model.CyNetwork;
+import org.cytoscape.model.CyRow;
+import org.cytoscape.model.CyTable;
+
+/**
+ * Copies the values of a row of a table to other rows of the same table, such
+ * as the rows of duplicated nodes and edges. The columns to copy (all of them
+ * except the SUID and the selection) are resolved once, and the source row is
+ * read once for all of its copies. The node attributes shared by the copies
+ * of a protein (see {@link SharedNodeAttributes}) are not copied.
+ *
+ * The columns created after the copier are not copied.
+ */
+public class RowCopier {
+
+	private final CyTable table;
+	private final String[] columns;
+
+	public RowCopier(CyTable table) {
+		this.table = table;
+		List<String> names = new ArrayList<String>();
+		for (CyColumn col : table.getColumns()) {
+			if (col.getName().equals(CyNetwork.SUID) || col.getName().equals(CyNetwork.SELECTED)
+					|| SharedNodeAttributes.isSharedColumn(col))
+				continue;
+			names.add(col.getName());
+		}
+		this.columns = names.toArray(new String[names.size()]);
+	}
+
+	/**
+	 * Copies the values of a row to the row of another object.
+	 */
+	public void copy(CyIdentifiable from, CyIdentifiable to) {
+		copy(from, List.of(to));
+	}
+
+	/**
+	 * Copies the values of a row to the rows of several objects.
+	 */
+	public void copy(CyIdentifiable from, List<? extends CyIdentifiable> to) {
+		if (to.isEmpty())
+			return;
+		Map<String, Object> values = table.getRow(from.getSUID()).getAllValues();
+		Object[] rowValues = new Object[columns.length];
+		for (int c = 0; c < columns.length; c++)
+			rowValues[c] = values.get(columns[c]);
+		for (CyIdentifiable copy : to) {
+			CyRow row = table.getRow(copy.getSUID());
+			for (int c = 0; c < columns.length; c++)
+				row.set(columns[c], rowValues[c]);
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package dk.ku.cpr.proteoVisualizer.internal.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.cytoscape.model.CyColumn;
+import org.cytoscape.model.CyNetwork;
+import org.cytoscape.model.CyNetworkTableManager;
+import org.cytoscape.model.CyNode;
+import org.cytoscape.model.CyRow;
+import org.cytoscape.model.CyTable;
+import org.cytoscape.model.CyTableFactory;
+import org.cytoscape.model.CyTableManager;
+import org.cytoscape.model.VirtualColumnInfo;
+
+import dk.ku.cpr.proteoVisualizer.internal.model.AppManager;
+import dk.ku.cpr.proteoVisualizer.internal.model.SharedProperties;
+
+/**
+ * Moves the STRING attributes of the protein nodes of a network to a backing
+ * table with one row per protein, keyed by the matched ID, and exposes them in
+ * the node table through virtual columns. The copies of a protein node then
+ * share the values of the protein node instead of holding a copy of each of
+ * them. Only the columns that identify a node (see
+ * {@link SharedProperties#nodeAttrinbutesNotToShare}) stay in the node table.
+ *
+ * The backing table is a private node table of the network, such that it is
+ * saved with the network and deleted by Cytoscape with it.
+ */
+public class SharedNodeAttributes {
+
+	// We forbid the class to have instances
+	private SharedNodeAttributes() {
+	}
+
+	/**
+	 * @return <code>true</code> if the node attributes of the table are already
+	 *         shared through a backing table.
+	 */
+	public static boolean isShared(CyTable nodeTable) {
+		for (CyColumn col : nodeTable.getColumns()) {
+			if (isSharedColumn(col))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return <code>true</code> if the column is a virtual column joined on the
+	 *         matched ID, i.e. its values are shared by the copies of a protein.
+	 */
+	public static boolean isSharedColumn(CyColumn col) {
+		VirtualColumnInfo info = col.getVirtualColumnInfo();
+		return info.isVirtual() && SharedProperties.MATCHEDID.equals(info.getTargetJoinKey());
+	}
+
+	/**
+	 * Moves the node attributes of the network to a new backing table, which is
+	 * associated with the network. The matched ID of the nodes must be set, the
+	 * nodes without one keep their STRING identifier as matched ID.
+	 * @return The backing table, or <code>null</code> if the attributes were
+	 *         already shared.
+	 */
+	public static CyTable share(AppManager manager, CyNetwork network) {
+		CyTable nodeTable = network.getDefaultNodeTable();
+		if (isShared(nodeTable))
+			return null;
+
+		String title = network.getRow(network).get(CyNetwork.NAME, String.class) + " - protein attributes";
+		CyTable backingTable = manager.getService(CyTableFactory.class).createTable(title,
+				SharedProperties.MATCHEDID, String.class, false, true);
+
+		// the columns to move
+		List<CyColumn> columns = new ArrayList<CyColumn>();
+		for (CyColumn col : nodeTable.getColumns()) {
+			if (col.isPrimaryKey() || col.getName().equals(CyNetwork.SELECTED)
+					|| col.getVirtualColumnInfo().isVirtual()
+					|| SharedProperties.nodeAttrinbutesNotToShare.contains(col.getName()))
+				continue;
+			columns.add(col);
+			if (col.getType().equals(List.class))
+				backingTable.createListColumn(col.getName(), col.getListElementType(), false);
+			else
+				backingTable.createColumn(col.getName(), col.getType(), false);
+		}
+
+		// one row per protein, the copies of a protein have the same values
+		for (CyNode node : network.getNodeList()) {
+			CyRow nodeRow = network.getRow(node);
+			String matchedID = nodeRow.get(SharedProperties.MATCHEDID, String.class);
+			if (matchedID == null || matchedID.isEmpty()) {
+				matchedID = (nodeTable.getColumn(SharedProperties.STRINGID) != null)
+						? nodeRow.get(SharedProperties.STRINGID, String.class)
+						: null;
+				if (matchedID == null || matchedID.isEmpty())
+					continue;
+				nodeRow.set(SharedProperties.MATCHEDID, matchedID);
+			}
+			if (backingTable.rowExists(matchedID))
+				continue;
+			CyRow backingRow = backingTable.getRow(matchedID);
+			for (CyColumn col : columns) {
+				Object value = nodeRow.getRaw(col.getName());
+				if (value != null)
+					backingRow.set(col.getName(), value);
+			}
+		}
+
+		// replace the node columns by virtual ones
+		for (CyColumn col : columns) {
+			nodeTable.deleteColumn(col.getName());
+			nodeTable.addVirtualColumn(col.getName(), col.getName(), backingTable, SharedProperties.MATCHEDID,
+					false);
+		}
+		// a network table is not listed with the global tables, and is destroyed with the network
+		manager.getService(CyNetworkTableManager.class).setTable(network, CyNode.class,
+				SharedProperties.SHARED_ATTRIBUTES_NAMESPACE, backingTable);
+		manager.getService(CyTableManager.class).addTable(backingTable);
+		return backingTable;
+	}
+}
@@ -0,0 +1,381 @@
+package dk.ku.cpr.proteoVisualizer.internal.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.cytoscape.model.CyEdge;
+import org.cytoscape.model.CyNetwork;
+import org.cytoscape.model.subnetwork.CyRootNetwork;
+
+import dk.ku.cpr.proteoVisualizer.internal.model.NetworkType;
+import dk.ku.cpr.proteoVisualizer.internal.model.SharedProperties;
+import dk.ku.cpr.proteoVisualizer.internal.model.StringNetworkPayload;
+
+/**
+ * Local copy of the STRING database of one species, indexed by
+ * {@link StringDbIndexBuilder} and memory-mapped.
+ *
+ * The proteins are sorted by STRING identifier, the aliases by name, and the
+ * links of each protein are stored contiguously, such that a query only reads
+ * the pages of the queried proteins.
+ *
+ * An index built from the aliases only is used to resolve accessions to STRING
+ * identifiers before querying STRING, but cannot answer queries.
+ */
+public class StringDbIndex {
+
+	static final int MAGIC = 0x50564958; // "PVIX"
+
+	static final String PROTEINS_FILE = "proteins.idx";
+	static final String ALIASES_FILE = "aliases.idx";
+	static final String LINKS_FILE = "links.idx";
+	static final String PHYSICAL_LINKS_FILE = "physical.links.idx";
+
+	// column names of the channel scores, as created by the stringApp
+	private static final Map<String, String> CHANNEL_COLUMNS = new HashMap<String, String>();
+	static {
+		CHANNEL_COLUMNS.put("neighborhood", "neighborhood");
+		CHANNEL_COLUMNS.put("fusion", "fusion");
+		CHANNEL_COLUMNS.put("cooccurence", "cooccurrence");
+		CHANNEL_COLUMNS.put("coexpression", "coexpression");
+		CHANNEL_COLUMNS.put("experimental", "experiments");
+		CHANNEL_COLUMNS.put("experiments", "experiments");
+		CHANNEL_COLUMNS.put("database", "databases");
+		CHANNEL_COLUMNS.put("textmining", "textmining");
+	}
+
+	private final int taxonID;
+	private final MappedStrings ids;
+	private final MappedStrings names;
+	private final MappedStrings canonicals;
+	private final MappedStrings annotations;
+	private final MappedStrings aliases;
+	private final ByteBuffer aliasProteins;
+	private final Links links;
+	private final Links physicalLinks;
+
+	private StringDbIndex(File directory) throws IOException {
+		ByteBuffer proteins = map(new File(directory, PROTEINS_FILE));
+		this.taxonID = proteins.getInt(4);
+		this.ids = new MappedStrings(proteins, 8);
+		this.names = new MappedStrings(proteins, ids.end());
+		this.canonicals = new MappedStrings(proteins, names.end());
+		this.annotations = new MappedStrings(proteins, canonicals.end());
+
+		ByteBuffer aliasBuffer = map(new File(directory, ALIASES_FILE));
+		this.aliases = new MappedStrings(aliasBuffer, 4);
+		this.aliasProteins = slice(aliasBuffer, aliases.end());
+
+		File linksFile = new File(directory, LINKS_FILE);
+		this.links = linksFile.isFile() ? new Links(map(linksFile)) : null;
+		File physicalFile = new File(directory, PHYSICAL_LINKS_FILE);
+		this.physicalLinks = physicalFile.isFile() ? new Links(map(physicalFile)) : null;
+
+		if ((links != null && links.proteinCount != ids.size())
+				|| (physicalLinks != null && physicalLinks.proteinCount != ids.size()))
+			throw new IOException("The offline STRING index in " + directory + " is inconsistent.");
+	}
+
+	/**
+	 * Opens the index of one species.
+	 * @param directory The directory of the index, as written by
+	 *                  {@link StringDbIndexBuilder}.
+	 * @throws IOException If the index is missing or corrupted.
+	 */
+	public static StringDbIndex open(File directory) throws IOException {
+		return new StringDbIndex(directory);
+	}
+
+	/**
+	 * @param root    The root directory of the offline indices.
+	 * @param taxonID The species.
+	 * @return The directory of the index of the species.
+	 */
+	public static File getDirectory(File root, int taxonID) {
+		return new File(root, String.valueOf(taxonID));
+	}
+
+	public int getTaxonID() {
+		return taxonID;
+	}
+
+	public int getProteinCount() {
+		return ids.size();
+	}
+
+	public String getStringID(int protein) {
+		return ids.get(protein);
+	}
+
+	public String getPreferredName(int protein) {
+		return names.get(protein);
+	}
+
+	/** @return <code>true</code> if the links were indexed, i.e. if the index can answer queries. */
+	public boolean hasLinks() {
+		return links != null;
+	}
+
+	/**
+	 * Finds the protein of a query term, either a STRING identifier (with or
+	 * without the taxon prefix) or one of the aliases of the protein.
+	 * @return The index of the protein, or -1 if the term is unknown.
+	 */
+	public int resolve(String term) {
+		if (term == null || term.isEmpty())
+			return -1;
+		int protein = ids.find(term);
+		if (protein < 0)
+			protein = ids.find(taxonID + "." + term);
+		if (protein < 0) {
+			int alias = aliases.find(term);
+			if (alias >= 0)
+				protein = aliasProteins.getInt(alias * 4);
+		}
+		return protein;
+	}
+
+	/**
+	 * Resolves the query terms to STRING identifiers. The first term resolved to
+	 * a protein is used for the protein, as by the stringApp.
+	 * @param terms     The query terms.
+	 * @param unmatched Receives the terms that could not be resolved.
+	 * @return The query term of each resolved STRING identifier, in the order of
+	 *         the terms.
+	 */
+	public Map<String, String> resolveAll(Collection<String> terms, List<String> unmatched) {
+		Map<String, String> resolved = new LinkedHashMap<String, String>();
+		for (String term : terms) {
+			int protein = resolve(term);
+			if (protein < 0)
+				unmatched.add(term);
+			else
+				resolved.putIfAbsent(ids.get(protein), term);
+		}
+		return resolved;
+	}
+
+	/**
+	 * Builds the STRING network of the query terms, with the columns the
+	 * stringApp creates for a protein query.
+	 * @param terms   The query terms.
+	 * @param species The name of the species.
+	 * @param cutoff  The confidence cutoff, between 0 and 1.
+	 * @param netType The network type.
+	 * @param netName The name of the network, or <code>null</code>.
+	 * @return The network, with one node per resolved protein.
+	 * @throws IOException If the physical links were not indexed but are
+	 *                     requested.
+	 */
+	public StringNetworkPayload query(List<String> terms, String species, double cutoff, String netType,
+			String netName) throws IOException {
+		if (links == null)
+			throw new IOException("Only the aliases of taxon " + taxonID + " were indexed.");
+		Links queryLinks = links;
+		if (NetworkType.getType(netType) == NetworkType.PHYSICAL) {
+			if (physicalLinks == null)
+				throw new IOException("The physical links of taxon " + taxonID + " were not indexed.");
+			queryLinks = physicalLinks;
+		}
+
+		StringNetworkPayload.Builder builder = new StringNetworkPayload.Builder();
+		builder.setNetworkValue(CyNetwork.NAME, String.class,
+				(netName == null || netName.isBlank()) ? "STRING network" : netName);
+		builder.setNetworkValue(SharedProperties.STRINGDB_NAMESPACE + SharedProperties.NAMESPACE_SEPARATOR + "species",
+				String.class, species);
+		builder.setNetworkValue(SharedProperties.STRINGDB_NAMESPACE + SharedProperties.NAMESPACE_SEPARATOR
+				+ "confidence score", Double.class, cutoff);
+		builder.setNetworkValue(SharedProperties.NETWORK_TYPE, String.class, netType);
+
+		// one node per protein, for the first term that matches it
+		int[] proteinNode = new int[ids.size()];
+		List<Integer> nodeProteins = new ArrayList<Integer>();
+		for (String term : terms) {
+			int protein = resolve(term);
+			if (protein < 0 || proteinNode[protein] != 0)
+				continue;
+			int node = builder.addNode();
+			proteinNode[protein] = node + 1;
+			nodeProteins.add(protein);
+			setNodeValues(builder, node, protein, term, species);
+		}
+
+		// the links are stored in both directions, so we keep the ones to a later node
+		int minScore = (int) Math.ceil(cutoff * 1000.0);
+		for (int source = 0; source < nodeProteins.size(); source++) {
+			int protein = nodeProteins.get(source);
+			int end = queryLinks.offset(protein + 1);
+			for (int link = queryLinks.offset(protein); link < end; link++) {
+				int target = proteinNode[queryLinks.neighbor(link)] - 1;
+				if (target <= source || queryLinks.score(link, 0) < minScore)
+					continue;
+				int edge = builder.addEdge(source, target, false);
+				builder.setEdgeValue(edge, CyNetwork.NAME, String.class,
+						ids.get(protein) + " (pp) " + ids.get(nodeProteins.get(target)));
+				builder.setEdgeValue(edge, CyRootNetwork.SHARED_NAME, String.class,
+						ids.get(protein) + " (pp) " + ids.get(nodeProteins.get(target)));
+				builder.setEdgeValue(edge, CyEdge.INTERACTION, String.class, "pp");
+				builder.setEdgeValue(edge, SharedProperties.SCORE, Double.class, queryLinks.score(link, 0) / 1000.0);
+				for (int channel = 1; channel < queryLinks.channels.length; channel++) {
+					int score = queryLinks.score(link, channel);
+					if (score > 0)
+						builder.setEdgeValue(edge, queryLinks.channels[channel], Double.class, score / 1000.0);
+				}
+			}
+		}
+		return builder.build();
+	}
+
+	private void setNodeValues(StringNetworkPayload.Builder builder, int node, int protein, String term,
+			String species) {
+		String id = ids.get(protein);
+		builder.setNodeValue(node, CyNetwork.NAME, String.class, id);
+		builder.setNodeValue(node, CyRootNetwork.SHARED_NAME, String.class, id);
+		builder.setNodeValue(node, SharedProperties.STRINGID, String.class, id);
+		builder.setNodeValue(node, SharedProperties.ID, String.class, SharedProperties.STRINGDB_NAMESPACE + ":" + id);
+		builder.setNodeValue(node, SharedProperties.NAMESPACE, String.class, SharedProperties.STRINGDB_NAMESPACE);
+		builder.setNodeValue(node, SharedProperties.DISPLAY, String.class, names.get(protein));
+		builder.setNodeValue(node, SharedProperties.CANONICAL, String.class, canonicals.get(protein));
+		builder.setNodeValue(node, SharedProperties.DESCRIPTION, String.class, annotations.get(protein));
+		builder.setNodeValue(node, SharedProperties.SPECIES, String.class, species);
+		builder.setNodeValue(node, SharedProperties.QUERYTERM, String.class, term);
+		builder.setNodeValue(node, SharedProperties.TYPE, String.class, "protein");
+		builder.setNodeValue(node, SharedProperties.STYLE, String.class, SharedProperties.STYLE_STRING_EMPTY);
+	}
+
+	/**
+	 * @param channel The name of a channel in the STRING links file.
+	 * @return The name of the edge column of the channel.
+	 */
+	static String getChannelColumn(String channel) {
+		return SharedProperties.STRINGDB_NAMESPACE + SharedProperties.NAMESPACE_SEPARATOR
+				+ CHANNEL_COLUMNS.getOrDefault(channel, channel);
+	}
+
+	private static ByteBuffer map(File file) throws IOException {
+		if (!file.isFile())
+			throw new IOException("The offline STRING index file " + file + " does not exist.");
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new IOException("The offline STRING index file " + file + " is too large.");
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.capacity() < 8 || buffer.getInt(0) != MAGIC)
+				throw new IOException(file + " is not an offline STRING index file.");
+			return buffer;
+		}
+	}
+
+	private static ByteBuffer slice(ByteBuffer buffer, int position) {
+		ByteBuffer duplicate = buffer.duplicate();
+		duplicate.position(position);
+		return duplicate.slice();
+	}
+
+	/**
+	 * The links of all proteins, with the scores of each link stored next to
+	 * each other. The first channel is the combined score.
+	 */
+	private static class Links {
+		final int proteinCount;
+		final String[] channels;
+		final ByteBuffer offsets;
+		final ByteBuffer neighbors;
+		final ByteBuffer scores;
+
+		Links(ByteBuffer buffer) {
+			this.proteinCount = buffer.getInt(4);
+			MappedStrings channelNames = new MappedStrings(buffer, 8);
+			this.channels = new String[channelNames.size()];
+			for (int i = 0; i < channels.length; i++) {
+				channels[i] = getChannelColumn(channelNames.get(i));
+			}
+			int position = channelNames.end();
+			int linkCount = buffer.getInt(position);
+			position += 4;
+			this.offsets = slice(buffer, position);
+			position += 4 * (proteinCount + 1);
+			this.neighbors = slice(buffer, position);
+			position += 4 * linkCount;
+			this.scores = slice(buffer, position);
+		}
+
+		int offset(int protein) {
+			return offsets.getInt(protein * 4);
+		}
+
+		int neighbor(int link) {
+			return neighbors.getInt(link * 4);
+		}
+
+		int score(int link, int channel) {
+			return scores.getShort((link * channels.length + channel) * 2);
+		}
+	}
+
+	/**
+	 * A sorted or unsorted table of strings, stored as the number of strings,
+	 * the length of the data, the offsets of the strings and their UTF-8 bytes.
+	 */
+	static class MappedStrings {
+		private final ByteBuffer buffer;
+		private final int count;
+		private final int offsets;
+		private final int data;
+		private final int end;
+
+		MappedStrings(ByteBuffer buffer, int position) {
+			this.buffer = buffer;
+			this.count = buffer.getInt(position);
+			int length = buffer.getInt(position + 4);
+			this.offsets = position + 8;
+			this.data = offsets + 4 * (count + 1);
+			this.end = data + length;
+		}
+
+		int size() {
+			return count;
+		}
+
+		/** @return The position right after the table. */
+		int end() {
+			return end;
+		}
+
+		String get(int i) {
+			int start = buffer.getInt(offsets + 4 * i);
+			int stop = buffer.getInt(offsets + 4 * (i + 1));
+			byte[] bytes = new byte[stop - start];
+			ByteBuffer duplicate = buffer.duplicate();
+			duplicate.position(data + start);
+			duplicate.get(bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * Binary search in a sorted table.
+		 * @return The index of the first occurrence of the string, or -1.
+		 */
+		int find(String s) {
+			int low = 0;
+			int high = count;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (get(mid).compareTo(s) < 0)
+					low = mid + 1;
+				else
+					high = mid;
+			}
+			return (low < count && get(low).equals(s)) ? low : -1;
+		}
+	}
+}
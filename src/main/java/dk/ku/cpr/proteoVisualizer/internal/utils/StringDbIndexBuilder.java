@@ -0,0 +1,391 @@
+package dk.ku.cpr.proteoVisualizer.internal.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Indexes the flat files that can be downloaded from STRING for one species
+ * (<code>protein.info</code>, <code>protein.aliases</code>,
+ * <code>protein.links.detailed</code> and optionally
+ * <code>protein.physical.links.detailed</code>, plain or gzipped) into the
+ * binary files read by {@link StringDbIndex}.
+ *
+ * Without the info and links files, only the aliases are indexed, which is
+ * enough to resolve accessions to STRING identifiers locally.
+ *
+ * The links file is read twice: once to count the links of each protein and
+ * once to write them at their final position in a memory-mapped file, such
+ * that the links are never held in memory.
+ */
+public class StringDbIndexBuilder {
+
+	private final File infoFile;
+	private final File aliasesFile;
+	private final File linksFile;
+	private final File physicalLinksFile;
+	private Consumer<String> status;
+
+	// the proteins, sorted by STRING identifier
+	private String[] ids;
+	private String[] names;
+	private String[] canonicals;
+	private String[] annotations;
+	private Map<String, Integer> proteinIndex;
+	private int taxonID;
+
+	/**
+	 * @param infoFile          The <code>protein.info</code> file, or
+	 *                          <code>null</code>.
+	 * @param aliasesFile       The <code>protein.aliases</code> file.
+	 * @param linksFile         The <code>protein.links.detailed</code> file, or
+	 *                          <code>null</code>.
+	 * @param physicalLinksFile The <code>protein.physical.links.detailed</code>
+	 *                          file, or <code>null</code>.
+	 */
+	public StringDbIndexBuilder(File infoFile, File aliasesFile, File linksFile, File physicalLinksFile) {
+		this.infoFile = infoFile;
+		this.aliasesFile = aliasesFile;
+		this.linksFile = linksFile;
+		this.physicalLinksFile = physicalLinksFile;
+		this.status = message -> {
+		};
+	}
+
+	/**
+	 * @param status Receives a message at the beginning of each step.
+	 */
+	public void setStatusListener(Consumer<String> status) {
+		this.status = status;
+	}
+
+	/**
+	 * Indexes the files into a sub-directory of the given directory, named after
+	 * the taxon ID of the proteins. An existing index of the species is
+	 * replaced.
+	 * @param root The root directory of the offline indices.
+	 * @return The directory of the new index.
+	 * @throws IOException If a file cannot be read or written.
+	 */
+	public File build(File root) throws IOException {
+		if (infoFile != null) {
+			status.accept("Reading the proteins from " + infoFile.getName());
+			readProteins();
+		} else {
+			status.accept("Reading the proteins from " + aliasesFile.getName());
+			readProteinsFromAliases();
+		}
+
+		File directory = StringDbIndex.getDirectory(root, taxonID);
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("Could not create the directory " + directory + ".");
+		// the proteins file is written last, an index without it is incomplete
+		Files.deleteIfExists(new File(directory, StringDbIndex.PROTEINS_FILE).toPath());
+		Files.deleteIfExists(new File(directory, StringDbIndex.LINKS_FILE).toPath());
+		Files.deleteIfExists(new File(directory, StringDbIndex.PHYSICAL_LINKS_FILE).toPath());
+
+		status.accept("Indexing the aliases from " + aliasesFile.getName());
+		writeAliases(new File(directory, StringDbIndex.ALIASES_FILE));
+		if (linksFile != null) {
+			status.accept("Indexing the links from " + linksFile.getName());
+			writeLinks(linksFile, new File(directory, StringDbIndex.LINKS_FILE));
+		}
+		if (physicalLinksFile != null) {
+			status.accept("Indexing the physical links from " + physicalLinksFile.getName());
+			writeLinks(physicalLinksFile, new File(directory, StringDbIndex.PHYSICAL_LINKS_FILE));
+		}
+		writeProteins(new File(directory, StringDbIndex.PROTEINS_FILE));
+		return directory;
+	}
+
+	public int getTaxonID() {
+		return taxonID;
+	}
+
+	public int getProteinCount() {
+		return (ids == null) ? 0 : ids.length;
+	}
+
+	private void readProteins() throws IOException {
+		List<String[]> proteins = new ArrayList<String[]>();
+		try (BufferedReader reader = open(infoFile)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.isEmpty() || line.startsWith("#"))
+					continue;
+				String[] fields = line.split("\t", -1);
+				if (fields.length < 2)
+					throw new IOException("Unexpected line in " + infoFile.getName() + ": " + line);
+				proteins.add(fields);
+			}
+		}
+		setProteins(proteins, infoFile);
+	}
+
+	/**
+	 * Takes the proteins from the aliases file, without names and annotations.
+	 */
+	private void readProteinsFromAliases() throws IOException {
+		Map<String, String[]> proteins = new HashMap<String, String[]>();
+		try (BufferedReader reader = open(aliasesFile)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.isEmpty() || line.startsWith("#"))
+					continue;
+				int tab = line.indexOf('\t');
+				String id = (tab < 0) ? line : line.substring(0, tab);
+				proteins.computeIfAbsent(id, k -> new String[] { k, "" });
+			}
+		}
+		setProteins(new ArrayList<String[]>(proteins.values()), aliasesFile);
+	}
+
+	private void setProteins(List<String[]> proteins, File file) throws IOException {
+		if (proteins.isEmpty())
+			throw new IOException("No proteins were found in " + file.getName() + ".");
+		proteins.sort(Comparator.comparing(fields -> fields[0]));
+
+		ids = new String[proteins.size()];
+		names = new String[proteins.size()];
+		canonicals = new String[proteins.size()];
+		annotations = new String[proteins.size()];
+		proteinIndex = new HashMap<String, Integer>();
+		for (int i = 0; i < ids.length; i++) {
+			String[] fields = proteins.get(i);
+			ids[i] = fields[0];
+			names[i] = fields[1];
+			annotations[i] = (fields.length > 3) ? fields[3] : "";
+			if (proteinIndex.put(ids[i], i) != null)
+				throw new IOException("The protein " + ids[i] + " is listed twice in " + file.getName() + ".");
+		}
+
+		String firstID = ids[0];
+		int dot = firstID.indexOf('.');
+		try {
+			taxonID = Integer.parseInt(dot < 0 ? "" : firstID.substring(0, dot));
+		} catch (NumberFormatException e) {
+			throw new IOException("Could not read the taxon ID of " + firstID + ".");
+		}
+	}
+
+	private void writeAliases(File file) throws IOException {
+		List<String> aliases = new ArrayList<String>();
+		List<Integer> aliasProteins = new ArrayList<Integer>();
+		// the preferred names can be queried as well
+		for (int i = 0; i < ids.length; i++) {
+			if (names[i].isEmpty())
+				continue;
+			aliases.add(names[i]);
+			aliasProteins.add(i);
+		}
+		try (BufferedReader reader = open(aliasesFile)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.isEmpty() || line.startsWith("#"))
+					continue;
+				String[] fields = line.split("\t", -1);
+				if (fields.length < 2)
+					continue;
+				Integer protein = proteinIndex.get(fields[0]);
+				if (protein == null || fields[1].isEmpty())
+					continue;
+				aliases.add(fields[1]);
+				aliasProteins.add(protein);
+				// the UniProt accession is the canonical name of the protein
+				if (canonicals[protein] == null && fields.length > 2 && fields[2].endsWith("UniProt_AC"))
+					canonicals[protein] = fields[1];
+			}
+		}
+
+		// sort by alias, then by protein, and drop the duplicates
+		Integer[] order = new Integer[aliases.size()];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, Comparator.<Integer, String>comparing(i -> aliases.get(i))
+				.thenComparing(i -> aliasProteins.get(i)));
+		List<String> sortedAliases = new ArrayList<String>(order.length);
+		List<Integer> sortedProteins = new ArrayList<Integer>(order.length);
+		for (int i : order) {
+			String alias = aliases.get(i);
+			int protein = aliasProteins.get(i);
+			int last = sortedAliases.size() - 1;
+			if (last >= 0 && sortedAliases.get(last).equals(alias) && sortedProteins.get(last) == protein)
+				continue;
+			sortedAliases.add(alias);
+			sortedProteins.add(protein);
+		}
+
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(file.toPath()), 1 << 16))) {
+			out.writeInt(StringDbIndex.MAGIC);
+			writeStrings(out, sortedAliases);
+			for (int protein : sortedProteins) {
+				out.writeInt(protein);
+			}
+		}
+	}
+
+	private void writeProteins(File file) throws IOException {
+		for (int i = 0; i < canonicals.length; i++) {
+			if (canonicals[i] == null)
+				canonicals[i] = "";
+		}
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(file.toPath()), 1 << 16))) {
+			out.writeInt(StringDbIndex.MAGIC);
+			out.writeInt(taxonID);
+			writeStrings(out, Arrays.asList(ids));
+			writeStrings(out, Arrays.asList(names));
+			writeStrings(out, Arrays.asList(canonicals));
+			writeStrings(out, Arrays.asList(annotations));
+		}
+	}
+
+	private void writeLinks(File input, File file) throws IOException {
+		// first pass: read the channels and count the links of each protein
+		List<String> channels = new ArrayList<String>();
+		int[] columns;
+		int[] offsets = new int[ids.length + 1];
+		long linkCount = 0;
+		try (BufferedReader reader = open(input)) {
+			String header = reader.readLine();
+			if (header == null)
+				throw new IOException(input.getName() + " is empty.");
+			String[] headerFields = header.trim().split(" ");
+			int combined = Arrays.asList(headerFields).indexOf("combined_score");
+			if (headerFields.length < 3 || !headerFields[0].equals("protein1") || !headerFields[1].equals("protein2")
+					|| combined < 0)
+				throw new IOException(input.getName() + " is not a STRING links file.");
+			// the combined score is the first channel
+			List<Integer> channelColumns = new ArrayList<Integer>();
+			channels.add("score");
+			channelColumns.add(combined);
+			for (int i = 2; i < headerFields.length; i++) {
+				if (i != combined) {
+					channels.add(headerFields[i]);
+					channelColumns.add(i);
+				}
+			}
+			columns = channelColumns.stream().mapToInt(Integer::intValue).toArray();
+
+			String line;
+			while ((line = reader.readLine()) != null) {
+				int protein = getProtein(line, 0);
+				if (protein < 0 || getProtein(line, 1) < 0)
+					continue;
+				offsets[protein + 1]++;
+				linkCount++;
+			}
+		}
+		for (int i = 0; i < ids.length; i++) {
+			offsets[i + 1] += offsets[i];
+		}
+
+		ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+		DataOutputStream header = new DataOutputStream(headerBytes);
+		header.writeInt(StringDbIndex.MAGIC);
+		header.writeInt(ids.length);
+		writeStrings(header, channels);
+		header.writeInt((int) linkCount);
+		for (int offset : offsets) {
+			header.writeInt(offset);
+		}
+		header.flush();
+		long size = headerBytes.size() + linkCount * 4 + linkCount * channels.size() * 2;
+		if (size > Integer.MAX_VALUE)
+			throw new IOException(input.getName() + " has too many links to be indexed.");
+
+		// second pass: write the links at their position
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+			raf.setLength(0);
+			raf.setLength(size);
+			raf.write(headerBytes.toByteArray());
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			int neighbors = headerBytes.size();
+			int scores = neighbors + (int) linkCount * 4;
+			int[] next = Arrays.copyOf(offsets, ids.length);
+			try (BufferedReader reader = open(input)) {
+				reader.readLine();
+				String line;
+				while ((line = reader.readLine()) != null) {
+					int protein = getProtein(line, 0);
+					int neighbor = getProtein(line, 1);
+					if (protein < 0 || neighbor < 0)
+						continue;
+					int link = next[protein]++;
+					buffer.putInt(neighbors + link * 4, neighbor);
+					String[] fields = line.split(" ");
+					for (int c = 0; c < columns.length; c++) {
+						buffer.putShort(scores + (link * columns.length + c) * 2,
+								(short) Integer.parseInt(fields[columns[c]]));
+					}
+				}
+			}
+			buffer.force();
+		}
+	}
+
+	/**
+	 * @return The index of the protein in the given space-separated field of the
+	 *         line, or -1 if the protein is unknown.
+	 */
+	private int getProtein(String line, int field) {
+		int start = 0;
+		for (int i = 0; i < field; i++) {
+			start = line.indexOf(' ', start) + 1;
+			if (start == 0)
+				return -1;
+		}
+		int end = line.indexOf(' ', start);
+		Integer protein = proteinIndex.get(end < 0 ? line.substring(start) : line.substring(start, end));
+		return (protein == null) ? -1 : protein;
+	}
+
+	/**
+	 * Writes a table of strings, as read by {@link StringDbIndex.MappedStrings}.
+	 */
+	private static void writeStrings(DataOutput out, List<String> strings) throws IOException {
+		int[] offsets = new int[strings.size() + 1];
+		for (int i = 0; i < strings.size(); i++) {
+			long end = (long) offsets[i] + strings.get(i).getBytes(StandardCharsets.UTF_8).length;
+			if (end > Integer.MAX_VALUE)
+				throw new IOException("Too many strings to be indexed.");
+			offsets[i + 1] = (int) end;
+		}
+		out.writeInt(strings.size());
+		out.writeInt(offsets[strings.size()]);
+		for (int offset : offsets) {
+			out.writeInt(offset);
+		}
+		for (String s : strings) {
+			out.write(s.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	private static BufferedReader open(File file) throws IOException {
+		InputStream in = Files.newInputStream(file.toPath());
+		if (file.getName().endsWith(".gz"))
+			in = new GZIPInputStream(in, 1 << 16);
+		return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16);
+	}
+}
@@ -0,0 +1,130 @@
+package dk.ku.cpr.proteoVisualizer.internal.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import dk.ku.cpr.proteoVisualizer.internal.model.StringNetworkPayload;
+import dk.ku.cpr.proteoVisualizer.internal.model.StringQueryKey;
+
+/**
+ * On-disk cache of the networks retrieved from STRING.
+ *
+ * Each payload is stored gzipped in its own file, named after the digest of
+ * its {@link StringQueryKey}. The last modification time of a file is updated
+ * whenever it is read, and the least recently used files are deleted once the
+ * total size of the cache exceeds its bound.
+ */
+public class StringNetworkCache {
+
+	private static final String EXTENSION = ".pvn";
+
+	private final File directory;
+	private final long maxSize;
+
+	/**
+	 * @param directory The directory of the cache, created if needed.
+	 * @param maxSize   The maximum total size of the cache, in bytes.
+	 */
+	public StringNetworkCache(File directory, long maxSize) {
+		this.directory = directory;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * @return The cached payload of the query, or <code>null</code> if the query
+	 *         is not cached.
+	 * @throws IOException If the cached file cannot be read. Corrupted files are
+	 *                     deleted.
+	 */
+	public synchronized StringNetworkPayload get(StringQueryKey key) throws IOException {
+		File file = getFile(key);
+		if (!file.isFile())
+			return null;
+		StringNetworkPayload payload;
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file.toPath()), 1 << 16)))) {
+			payload = StringNetworkPayload.read(in);
+		} catch (IOException e) {
+			file.delete();
+			throw e;
+		}
+		// mark the file as recently used
+		file.setLastModified(System.currentTimeMillis());
+		return payload;
+	}
+
+	/**
+	 * Stores the payload of the query, and evicts the least recently used
+	 * entries if the cache is too large.
+	 * @throws IOException If the payload cannot be written.
+	 */
+	public synchronized void put(StringQueryKey key, StringNetworkPayload payload) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("Could not create the cache directory " + directory + ".");
+		File file = getFile(key);
+		// write to a temporary file first, such that a partially written file is never read
+		File tmpFile = File.createTempFile(key.getDigest(), ".tmp", directory);
+		try {
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(tmpFile.toPath()), 1 << 16)))) {
+				payload.write(out);
+			}
+			Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			tmpFile.delete();
+		}
+		evict(file);
+	}
+
+	/** Deletes all the cached networks. */
+	public synchronized void clear() {
+		for (File file : listFiles()) {
+			file.delete();
+		}
+	}
+
+	private File getFile(StringQueryKey key) {
+		return new File(directory, key.getDigest() + EXTENSION);
+	}
+
+	private List<File> listFiles() {
+		File[] files = directory.listFiles((dir, name) -> name.endsWith(EXTENSION));
+		if (files == null)
+			return new ArrayList<File>();
+		return new ArrayList<File>(Arrays.asList(files));
+	}
+
+	private void evict(File keep) {
+		List<File> files = listFiles();
+		long totalSize = 0;
+		for (File file : files) {
+			totalSize += file.length();
+		}
+		if (totalSize <= maxSize)
+			return;
+		// least recently used first
+		files.sort(Comparator.comparingLong(File::lastModified));
+		for (File file : files) {
+			if (totalSize <= maxSize)
+				break;
+			if (file.equals(keep))
+				continue;
+			long size = file.length();
+			if (file.delete())
+				totalSize -= size;
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package dk.ku.cpr.proteoVisualizer.internal.tasks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import dk.ku.cpr.proteoVisualizer.internal.tasks.ResilientStringCommandExecutor.CircuitOpenException;
+
+public class ResilientStringCommandExecutorTest {
+
+	private static final String COMMAND = "protein query";
+	private static final Map<String, Object> ARGS = Collections.emptyMap();
+
+	private ExecutorService threads;
+	private AtomicLong clock;
+
+	@Before
+	public void setUp() {
+		threads = Executors.newCachedThreadPool();
+		clock = new AtomicLong(0);
+	}
+
+	@After
+	public void tearDown() {
+		threads.shutdownNow();
+	}
+
+	private ResilientStringCommandExecutor create(StubStringCommandExecutor stub) {
+		ResilientStringCommandExecutor executor = new ResilientStringCommandExecutor(stub, threads, clock::get);
+		executor.setBackoff(0, 0);
+		executor.setCircuitBreaker(2, 1000);
+		return executor;
+	}
+
+	@Test
+	public void timeoutHandsOverTheLateResult() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		StubStringCommandExecutor stub = new StubStringCommandExecutor().thenReturn("late").blockUntil(release);
+		ResilientStringCommandExecutor executor = create(stub);
+		LinkedBlockingQueue<Object> lateResults = new LinkedBlockingQueue<Object>();
+		executor.setLateResultHandler(lateResults::add);
+
+		try {
+			executor.execute(COMMAND, ARGS, String.class, 50, 0);
+			fail("The call should time out.");
+		} catch (TimeoutException e) {
+			// expected
+		}
+		assertEquals(1, executor.getMetrics(COMMAND).timeouts);
+		// the attempt is stopped
+		long deadline = System.currentTimeMillis() + 5000;
+		while (stub.getInterrupts() == 0 && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+		assertEquals(1, stub.getInterrupts());
+
+		release.countDown();
+		assertEquals("late", lateResults.poll(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void transientFailuresAreRetried() throws Exception {
+		StubStringCommandExecutor stub = new StubStringCommandExecutor()
+				.thenThrow(new IOException("connection reset"))
+				.thenThrow(new Exception("query failed", new IOException("connection reset")))
+				.thenReturn("network");
+		ResilientStringCommandExecutor executor = create(stub);
+		executor.setCircuitBreaker(3, 1000);
+
+		assertEquals("network", executor.execute(COMMAND, ARGS, String.class, 0, 2));
+		assertEquals(3, stub.getCalls());
+		assertEquals(2, executor.getMetrics(COMMAND).retries);
+		assertEquals(2, executor.getMetrics(COMMAND).failures);
+		assertFalse(executor.isOpen());
+	}
+
+	@Test
+	public void stringAppConnectionFailuresAreRetried() throws Exception {
+		// the stringApp reports that STRING could not be reached as plain task errors
+		StubStringCommandExecutor stub = new StubStringCommandExecutor()
+				.thenThrow(new RuntimeException("No answer from STRING"))
+				.thenThrow(new Exception("Unable to connect to string-db.org"))
+				.thenReturn("network");
+		ResilientStringCommandExecutor executor = create(stub);
+		executor.setCircuitBreaker(3, 1000);
+
+		assertEquals("network", executor.execute(COMMAND, ARGS, String.class, 0, 2));
+		assertEquals(3, stub.getCalls());
+		assertEquals(2, executor.getMetrics(COMMAND).retries);
+		assertFalse(executor.isOpen());
+	}
+
+	@Test
+	public void otherFailuresAreNotRetried() throws Exception {
+		StubStringCommandExecutor stub = new StubStringCommandExecutor()
+				.thenThrow(new IllegalArgumentException("unknown species"))
+				.thenThrow(new IllegalArgumentException("unknown species"))
+				.thenReturn("network");
+		ResilientStringCommandExecutor executor = create(stub);
+
+		for (int call = 0; call < 2; call++) {
+			try {
+				executor.execute(COMMAND, ARGS, String.class, 0, 2);
+				fail("The call should fail.");
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+		assertEquals(2, stub.getCalls());
+		// they do not open the circuit
+		assertFalse(executor.isOpen());
+		assertEquals("network", executor.execute(COMMAND, ARGS, String.class, 0, 0));
+	}
+
+	@Test
+	public void circuitOpensAfterTransientFailures() throws Exception {
+		StubStringCommandExecutor stub = new StubStringCommandExecutor()
+				.thenThrow(new IOException("connection refused"))
+				.thenThrow(new IOException("connection refused"))
+				.thenReturn("network");
+		ResilientStringCommandExecutor executor = create(stub);
+
+		for (int call = 0; call < 2; call++) {
+			try {
+				executor.execute(COMMAND, ARGS, String.class, 0, 0);
+				fail("The call should fail.");
+			} catch (IOException e) {
+				// expected
+			}
+		}
+		assertTrue(executor.isOpen());
+		try {
+			executor.execute(COMMAND, ARGS, String.class, 0, 0);
+			fail("The circuit should be open.");
+		} catch (CircuitOpenException e) {
+			// expected
+		}
+		assertEquals(2, stub.getCalls());
+
+		// a call is tried again once the circuit was open long enough
+		clock.addAndGet(1000);
+		assertFalse(executor.isOpen());
+		assertEquals("network", executor.execute(COMMAND, ARGS, String.class, 0, 0));
+		assertEquals(3, stub.getCalls());
+	}
+}
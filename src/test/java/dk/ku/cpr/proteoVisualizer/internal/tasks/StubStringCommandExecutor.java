@@ -0,0 +1,70 @@
+package dk.ku.cpr.proteoVisualizer.internal.tasks;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A local stub of the stringApp commands, which answers the calls with the
+ * results and failures given in advance, in order.
+ */
+public class StubStringCommandExecutor implements StringCommandExecutor {
+
+	private final Deque<Object> answers = new ArrayDeque<Object>();
+	private final AtomicInteger calls = new AtomicInteger();
+	private final AtomicInteger interrupts = new AtomicInteger();
+	private CountDownLatch latch = null;
+
+	/** The next call returns the result. */
+	public StubStringCommandExecutor thenReturn(Object result) {
+		answers.add(result);
+		return this;
+	}
+
+	/** The next call fails with the exception. */
+	public StubStringCommandExecutor thenThrow(Exception failure) {
+		answers.add(failure);
+		return this;
+	}
+
+	/**
+	 * The calls only answer once the latch is released, e.g. to time out. Like
+	 * the stringApp, they keep waiting when they are interrupted.
+	 */
+	public StubStringCommandExecutor blockUntil(CountDownLatch latch) {
+		this.latch = latch;
+		return this;
+	}
+
+	/** @return The number of calls so far. */
+	public int getCalls() {
+		return calls.get();
+	}
+
+	/** @return The number of times the waiting calls were interrupted. */
+	public int getInterrupts() {
+		return interrupts.get();
+	}
+
+	@Override
+	public <R> R execute(String command, Map<String, Object> args, Class<R> resultType) throws Exception {
+		calls.incrementAndGet();
+		while (latch != null) {
+			try {
+				latch.await();
+				break;
+			} catch (InterruptedException e) {
+				interrupts.incrementAndGet();
+			}
+		}
+		Object answer;
+		synchronized (answers) {
+			answer = answers.poll();
+		}
+		if (answer instanceof Exception)
+			throw (Exception) answer;
+		return resultType.cast(answer);
+	}
+}
@@ -0,0 +1,118 @@
+package dk.ku.cpr.proteoVisualizer.internal.utils;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import dk.ku.cpr.proteoVisualizer.internal.model.ProteinGroupMapping;
+
+/**
+ * Microbenchmark of the parsing of a query of protein groups, comparing the
+ * {@link ProteinGroupParser} with the regular expressions and maps it
+ * replaced. It is not a test, run it with:
+ *
+ * <pre>
+ * mvn test-compile
+ * java -cp target/classes:target/test-classes dk.ku.cpr.proteoVisualizer.internal.utils.ProteinGroupParserBenchmark [lines] [accessions] [runs]
+ * </pre>
+ *
+ * The query has the given number of lines (default 50000), each a protein
+ * group of 1 to 5 accessions drawn from the given number of accessions
+ * (default 20000) and separated by <code>"; "</code>. The best time of the
+ * runs (default 20) is reported, with the bytes allocated by that run.
+ */
+public class ProteinGroupParserBenchmark {
+
+	public static void main(String[] args) {
+		int numLines = (args.length > 0) ? Integer.parseInt(args[0]) : 50000;
+		int numAccessions = (args.length > 1) ? Integer.parseInt(args[1]) : 20000;
+		int numRuns = (args.length > 2) ? Integer.parseInt(args[2]) : 20;
+
+		String query = createQuery(numLines, numAccessions, new Random(42));
+		System.out.println("Query: " + numLines + " lines, " + query.length() + " chars, " + numAccessions
+				+ " accessions, " + numRuns + " runs.");
+
+		// both give the same protein groups, which also keeps the results alive
+		int baselineGroups = run("regex split + strip + HashMaps", numRuns, () -> parseWithRegex(query, ";").size());
+		int parserGroups = run("ProteinGroupParser", numRuns, () -> parseWithParser(query, ";").getProteinGroupCount());
+		if (baselineGroups != parserGroups)
+			throw new IllegalStateException(baselineGroups + " protein groups with the regular expressions, but "
+					+ parserGroups + " with the parser.");
+	}
+
+	private static String createQuery(int numLines, int numAccessions, Random random) {
+		String[] accessions = new String[numAccessions];
+		for (int i = 0; i < numAccessions; i++) {
+			accessions[i] = String.format("%c%05d", (char) ('O' + i % 3), i);
+			if (i % 7 == 0)
+				accessions[i] += "-" + (1 + i % 4);
+		}
+		StringBuilder query = new StringBuilder();
+		for (int line = 0; line < numLines; line++) {
+			int numProteins = 1 + random.nextInt(5);
+			for (int p = 0; p < numProteins; p++) {
+				if (p > 0)
+					query.append("; ");
+				query.append(accessions[random.nextInt(numAccessions)]);
+			}
+			query.append('\n');
+		}
+		return query.toString();
+	}
+
+	private static int run(String name, int numRuns, java.util.function.IntSupplier parse) {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadID = Thread.currentThread().getId();
+		long bestTime = Long.MAX_VALUE;
+		long bestBytes = 0;
+		int result = 0;
+		for (int i = 0; i < numRuns; i++) {
+			long bytes = threads.getThreadAllocatedBytes(threadID);
+			long time = System.nanoTime();
+			result = parse.getAsInt();
+			time = System.nanoTime() - time;
+			bytes = threads.getThreadAllocatedBytes(threadID) - bytes;
+			if (time < bestTime) {
+				bestTime = time;
+				bestBytes = bytes;
+			}
+		}
+		System.out.println(String.format("%-32s %6d ms %6d MB allocated (%d protein groups)", name,
+				bestTime / 1000000, bestBytes / (1024 * 1024), result));
+		return result;
+	}
+
+	private static ProteinGroupMapping parseWithParser(String query, String delimiter) {
+		ProteinGroupParser parser = new ProteinGroupParser(delimiter);
+		parser.parseQuery(query, '\n');
+		return parser.getMapping();
+	}
+
+	// the parsing of the query before the ProteinGroupTokenizer
+	private static Map<String, List<String>> parseWithRegex(String query, String delimiter) {
+		query = query.replaceAll("(?m)^\\s*", "");
+		query = query.replaceAll("(?m)\\s*$", "");
+		Pattern pattern = Pattern.compile(Pattern.quote(delimiter));
+		Map<String, List<String>> proteinsForGroup = new HashMap<String, List<String>>();
+		Map<String, List<String>> groupsForProtein = new HashMap<String, List<String>>();
+		for (String line : query.split("\n")) {
+			String pg = line.strip();
+			if (pg.isEmpty() || proteinsForGroup.containsKey(pg))
+				continue;
+			List<String> proteins = new ArrayList<String>();
+			for (String protein : pattern.split(pg)) {
+				protein = protein.strip();
+				if (protein.isEmpty())
+					continue;
+				proteins.add(protein);
+				groupsForProtein.computeIfAbsent(protein, k -> new ArrayList<String>()).add(pg);
+			}
+			proteinsForGroup.put(pg, proteins);
+		}
+		return proteinsForGroup;
+	}
+}